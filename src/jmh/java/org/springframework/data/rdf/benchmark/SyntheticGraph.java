@@ -0,0 +1,84 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.benchmark;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * <code>SyntheticGraph</code>
+ * 
+ * Deterministic test data for the benchmarks: <code>size / (PREDICATES + 1)</code> subjects, each
+ * with one literal value per predicate plus a link to the next subject, the last linking back
+ * to the first, so PREDICATES + 1 triples per subject.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public final class SyntheticGraph {
+
+	public static final String NS = "http://www.test.com/";
+
+	public static final int PREDICATES = 9;
+
+	public static final String LINK = NS + "link";
+
+	private SyntheticGraph() { }
+
+	public static String subject(int i) {
+		return NS + "s" + i;
+	}
+
+	public static String predicate(int i) {
+		return NS + "p" + i;
+	}
+
+	public static int subjects(int size) {
+		return Math.max(1, size / (PREDICATES + 1));
+	}
+
+	/**
+	 * <code>create</code>
+	 * @param size approximate number of triples
+	 * @return new in-memory model
+	 */
+	public static Model create(int size) {
+		Model model = ModelFactory.createDefaultModel();
+		Graph graph = model.getGraph();
+		Node[] predicates = new Node[PREDICATES];
+		for (int p = 0; p < PREDICATES; p++) {
+			predicates[p] = NodeFactory.createURI(predicate(p));
+		}
+		Node link = NodeFactory.createURI(LINK);
+		int subjects = subjects(size);
+		Node next = NodeFactory.createURI(subject(0));
+		for (int s = 0; s < subjects; s++) {
+			Node subject = next;
+			next = NodeFactory.createURI(subject((s + 1) % subjects));
+			for (int p = 0; p < PREDICATES; p++) {
+				graph.add(new Triple(subject, predicates[p], NodeFactory.createLiteral("value " + s + "/" + p)));
+			}
+			graph.add(new Triple(subject, link, next));
+		}
+		return model;
+	}
+
+}
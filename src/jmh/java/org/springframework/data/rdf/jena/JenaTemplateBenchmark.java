@@ -0,0 +1,133 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.rdf.benchmark.SyntheticGraph;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+/**
+ * <code>JenaTemplateBenchmark</code>
+ * 
+ * Throughput of the JenaTemplate lookups and writes over a SyntheticGraph.  The graph is
+ * rebuilt for every iteration so that adds and removes do not drift its size too far.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JenaTemplateBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int triples;
+
+	private JenaTemplate template;
+
+	private int subjects;
+
+	private int counter;
+
+	private static final int PROBES = 100;
+
+	private final Random random = new Random(42);
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		template = new JenaTemplate();
+		template.setModel(SyntheticGraph.create(triples));
+		subjects = SyntheticGraph.subjects(triples);
+	}
+
+	private int randomSubject() {
+		return random.nextInt(subjects);
+	}
+
+	@Benchmark
+	public boolean existsLiteral() {
+		int s = randomSubject();
+		return template.exists(SyntheticGraph.subject(s), SyntheticGraph.predicate(1), "value " + s + "/1");
+	}
+
+	@Benchmark
+	public boolean existsResource() {
+		int s = randomSubject();
+		return template.exists(SyntheticGraph.subject(s), SyntheticGraph.LINK, SyntheticGraph.subject((s + 1) % subjects));
+	}
+
+	@Benchmark
+	public boolean existsResourceTyped() {
+		int s = randomSubject();
+		return template.exists(SyntheticGraph.subject(s), SyntheticGraph.LINK, ResourceFactory.createResource(SyntheticGraph.subject((s + 1) % subjects)));
+	}
+
+	@Benchmark
+	public boolean[] existsAll() {
+		List<Triple> probes = new ArrayList<Triple>(PROBES);
+		for (int i = 0; i < PROBES; i++) {
+			probes.add(Triple.create(NodeFactory.createURI(SyntheticGraph.subject(randomSubject())),
+					NodeFactory.createURI(SyntheticGraph.predicate(2)), Node.ANY));
+		}
+		return template.existsAll(probes);
+	}
+
+	@Benchmark
+	public boolean existsProperty() {
+		return template.exists(SyntheticGraph.subject(randomSubject()), SyntheticGraph.predicate(2));
+	}
+
+	@Benchmark
+	public void add() {
+		int n = counter++;
+		template.add(SyntheticGraph.subject(subjects + n), SyntheticGraph.predicate(n % SyntheticGraph.PREDICATES), "added " + n);
+	}
+
+	@Benchmark
+	public void setSingleton() {
+		template.setSingleton(SyntheticGraph.subject(randomSubject()), SyntheticGraph.predicate(0), "singleton " + counter++);
+	}
+
+	@Benchmark
+	public void removeResource() {
+		template.removeResource(SyntheticGraph.subject(randomSubject()));
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.mapping;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.rdf.benchmark.SyntheticGraph;
+import org.springframework.data.rdf.jena.JenaTemplate;
+import org.springframework.data.rdf.sparql.SparqlTemplate;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * <code>RdfMappingTemplateBenchmark</code>
+ * 
+ * Throughput of loading and saving mapped entities over a SyntheticGraph, each subject being
+ * one entity of three of its literal values and its link.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RdfMappingTemplateBenchmark {
+
+	public static class Entity {
+		@RdfId
+		private String id;
+		@RdfProperty(SyntheticGraph.NS + "p0")
+		private String p0;
+		@RdfProperty(SyntheticGraph.NS + "p1")
+		private String p1;
+		@RdfProperty(SyntheticGraph.NS + "p2")
+		private String p2;
+		@RdfProperty(SyntheticGraph.LINK)
+		private URI link;
+
+		public String getId() { return id; }
+		public void setId(String id) { this.id = id; }
+		public String getP0() { return p0; }
+		public void setP0(String p0) { this.p0 = p0; }
+		public String getP1() { return p1; }
+		public void setP1(String p1) { this.p1 = p1; }
+		public String getP2() { return p2; }
+		public void setP2(String p2) { this.p2 = p2; }
+		public URI getLink() { return link; }
+		public void setLink(URI link) { this.link = link; }
+	}
+
+	@Param({ "10000", "100000" })
+	public int triples;
+
+	private RdfMappingTemplate template;
+
+	private int subjects;
+
+	private int counter;
+
+	private final Random random = new Random(42);
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		Model model = SyntheticGraph.create(triples);
+		JenaTemplate jenaTemplate = new JenaTemplate();
+		jenaTemplate.setModel(model);
+		template = new RdfMappingTemplate(jenaTemplate, new SparqlTemplate(model));
+		subjects = SyntheticGraph.subjects(triples);
+	}
+
+	@Benchmark
+	public Entity findById() {
+		return template.findById(Entity.class, SyntheticGraph.subject(random.nextInt(subjects)));
+	}
+
+	@Benchmark
+	public void saveChanged() {
+		Entity entity = template.findById(Entity.class, SyntheticGraph.subject(random.nextInt(subjects)));
+		entity.setP1("changed " + counter++);
+		template.save(entity);
+	}
+
+}
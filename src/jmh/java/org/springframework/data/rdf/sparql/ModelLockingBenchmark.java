@@ -0,0 +1,116 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.rdf.benchmark.SyntheticGraph;
+import org.springframework.data.rdf.jena.JenaTemplate;
+
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * <code>ModelLockingBenchmark</code>
+ * 
+ * Throughput of SparqlTemplate lookups from several threads against one model, alone and
+ * with a JenaTemplate writer calling setSingleton, to check that readers share the model's
+ * lock.  Compare <code>-t 1</code> with higher thread counts for the read-only case.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelLockingBenchmark {
+
+	@Param({ "100000" })
+	public int triples;
+
+	private SparqlTemplate sparqlTemplate;
+
+	private JenaTemplate jenaTemplate;
+
+	private int subjects;
+
+	private static final SolutionMapper<String> MAPPER = new SolutionMapper<String>() {
+		public String mapSelect(ResultSet rs, int rowNum) {
+			return rs.nextSolution().get("o").toString();
+		}
+	};
+
+	@State(Scope.Thread)
+	public static class ThreadRandom {
+		final Random random = new Random(Thread.currentThread().getId());
+	}
+
+	@Setup
+	public void setUp() {
+		Model model = SyntheticGraph.create(triples);
+		sparqlTemplate = new SparqlTemplate(model);
+		jenaTemplate = new JenaTemplate();
+		jenaTemplate.setModel(model);
+		subjects = SyntheticGraph.subjects(triples);
+	}
+
+	private List<String> lookup(Random random) {
+		return sparqlTemplate.execSelectList("SELECT ?p ?o WHERE { <"
+				+ SyntheticGraph.subject(random.nextInt(subjects)) + "> ?p ?o }", MAPPER);
+	}
+
+	@Benchmark
+	@Threads(Threads.MAX)
+	public List<String> concurrentReads(ThreadRandom state) {
+		return lookup(state.random);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(3)
+	public List<String> reader(ThreadRandom state) {
+		return lookup(state.random);
+	}
+
+	@Benchmark
+	@Group("readWrite")
+	@GroupThreads(1)
+	public void writer(ThreadRandom state) {
+		jenaTemplate.setSingleton(SyntheticGraph.subject(state.random.nextInt(subjects)), SyntheticGraph.predicate(0),
+				"v" + state.random.nextInt());
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.rdf.benchmark.SyntheticGraph;
+
+/**
+ * <code>PartitionedSelectBenchmark</code>
+ *
+ * A full join over two predicates of a SyntheticGraph, run by execSelectRows and by
+ * execSelectRowsParallel split by subject into <code>partitions</code> sub-queries.  The
+ * speedup of the parallel run is bounded by the cores available, compare the sequential
+ * score with the parallel one for partitions up to the core count.
+ *
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PartitionedSelectBenchmark {
+
+	@Param({ "1000000" })
+	public int triples;
+
+	@Param({ "1", "2", "4", "8" })
+	public int partitions;
+
+	private static final String JOIN = "SELECT ?s ?a ?b WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?a . ?s <"
+			+ SyntheticGraph.predicate(1) + "> ?b }";
+
+	private static final SolutionRowMapper<String> ROW_MAPPER = new SolutionRowMapper<String>() {
+		public String mapRow(SolutionRow row, int rowNum) {
+			return row.getLexicalForm(1);
+		}
+	};
+
+	private SparqlTemplate template;
+
+	private ForkJoinPool pool;
+
+	@Setup
+	public void setUp() {
+		template = new SparqlTemplate(SyntheticGraph.create(triples));
+		pool = new ForkJoinPool(partitions);
+		template.setForkJoinPool(pool);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public List<String> sequential() {
+		return template.execSelectRows(JOIN, ROW_MAPPER);
+	}
+
+	@Benchmark
+	public List<String> parallel() {
+		return template.execSelectRowsParallel(JOIN, "s", ROW_MAPPER);
+	}
+
+}
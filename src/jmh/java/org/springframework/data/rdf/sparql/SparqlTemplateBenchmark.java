@@ -0,0 +1,205 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.riot.Lang;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.rdf.benchmark.SyntheticGraph;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * <code>SparqlTemplateBenchmark</code>
+ * 
+ * Throughput of the SparqlTemplate exec methods over a SyntheticGraph.  The lookups pick a
+ * random subject per invocation, the scan reads a bounded slice of one predicate.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparqlTemplateBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	public int triples;
+
+	private SparqlTemplate template;
+
+	private int subjects;
+
+	private final Random random = new Random(42);
+
+	private static final SolutionMapper<String> MAPPER = new SolutionMapper<String>() {
+		public String mapSelect(ResultSet rs, int rowNum) {
+			QuerySolution sol = rs.nextSolution();
+			return sol.get("o").toString();
+		}
+	};
+
+	private static final SolutionRowMapper<String> ROW_MAPPER = new SolutionRowMapper<String>() {
+		public String mapRow(SolutionRow row, int rowNum) {
+			return row.getLexicalForm(1);
+		}
+	};
+
+	private static final OutputStream NULL_OUTPUT = new OutputStream() {
+		@Override
+		public void write(int b) { }
+
+		@Override
+		public void write(byte[] b, int off, int len) { }
+	};
+
+	private static final int FETCH_SUBJECTS = 100;
+
+	private static final List<String> FETCH_PROPERTIES = Arrays.asList(SyntheticGraph.predicate(0),
+			SyntheticGraph.predicate(1), SyntheticGraph.LINK);
+
+	private static final int PAGE_SIZE = 100;
+
+	private String pageQuery;
+
+	private String deepContinuation;
+
+	@Setup
+	public void setUp() {
+		Model model = SyntheticGraph.create(triples);
+		template = new SparqlTemplate(model);
+		subjects = SyntheticGraph.subjects(triples);
+		// continuation of the page halfway through the scan
+		pageQuery = "SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o } ORDER BY ?s ?o";
+		Page<String> page = template.execSelectPage(pageQuery, subjects / 2, null, ROW_MAPPER);
+		deepContinuation = page.getContinuation();
+	}
+
+	private String randomSubject() {
+		return SyntheticGraph.subject(random.nextInt(subjects));
+	}
+
+	@Benchmark
+	public List<String> execSelectList() {
+		return template.execSelectList("SELECT ?p ?o WHERE { <" + randomSubject() + "> ?p ?o }", MAPPER);
+	}
+
+	@Benchmark
+	public List<String> execSelectListScan() {
+		return template.execSelectList("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o } LIMIT 1000", MAPPER);
+	}
+
+	@Benchmark
+	public List<String> execSelectListScanRowMapper() {
+		return template.execSelectRows("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o } LIMIT 1000", ROW_MAPPER);
+	}
+
+	@Benchmark
+	public List<String> execSelectListFullScan() {
+		return template.execSelectRows("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o }", ROW_MAPPER);
+	}
+
+	@Benchmark
+	public List<String> execSelectListParallelFullScan() {
+		return template.execSelectRowsParallel("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o }", "s", ROW_MAPPER);
+	}
+
+	@Benchmark
+	public Page<String> execSelectPageFirst() {
+		return template.execSelectPage(pageQuery, PAGE_SIZE, null, ROW_MAPPER);
+	}
+
+	@Benchmark
+	public Page<String> execSelectPageDeep() {
+		return template.execSelectPage(pageQuery, PAGE_SIZE, deepContinuation, ROW_MAPPER);
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> execSelectGenericMap() {
+		return template.execSelectGenericMap("SELECT ?p ?o WHERE { <" + randomSubject() + "> ?p ?o }");
+	}
+
+	@Benchmark
+	public List<Map<String, Object>> execSelectGenericMapScan() {
+		return template.execSelectGenericMap("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o } LIMIT 1000");
+	}
+
+	@Benchmark
+	public long execSelectScanJson() throws IOException {
+		return template.execSelect("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o } LIMIT 1000", NULL_OUTPUT, ResultFormat.JSON);
+	}
+
+	@Benchmark
+	public SolutionTable execSelectTableScan() {
+		return template.execSelectTable("SELECT ?s ?o WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o } LIMIT 1000");
+	}
+
+	@Benchmark
+	public ResourceTable execFetch() {
+		List<String> subjects = new ArrayList<String>(FETCH_SUBJECTS);
+		for (int i = 0; i < FETCH_SUBJECTS; i++) {
+			subjects.add(randomSubject());
+		}
+		return template.execFetch(subjects, FETCH_PROPERTIES);
+	}
+
+	@Benchmark
+	public String execSelectString() {
+		return template.execSelectString("SELECT ?o WHERE { <" + randomSubject() + "> <" + SyntheticGraph.predicate(0) + "> ?o }");
+	}
+
+	@Benchmark
+	public Model execConstruct() {
+		String s = randomSubject();
+		return template.execConstruct("CONSTRUCT { <" + s + "> ?p ?o } WHERE { <" + s + "> ?p ?o }");
+	}
+
+	@Benchmark
+	public Model execConstructScan() {
+		return template.execConstruct("CONSTRUCT { ?s <" + SyntheticGraph.predicate(0) + "> ?o } WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o }");
+	}
+
+	@Benchmark
+	public long execConstructScanNTriples() {
+		return template.execConstruct("CONSTRUCT { ?s <" + SyntheticGraph.predicate(0) + "> ?o } WHERE { ?s <" + SyntheticGraph.predicate(0) + "> ?o }",
+				NULL_OUTPUT, Lang.NTRIPLES);
+	}
+
+}
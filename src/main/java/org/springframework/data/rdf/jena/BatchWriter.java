@@ -0,0 +1,234 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphUtil;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.shared.Lock;
+
+/**
+ * <code>BatchWriter</code>
+ * 
+ * Buffers triples written through JenaTemplate and adds them to the underlying graph
+ * in chunks of <code>batchSize</code>, with a single graph event per chunk instead of
+ * a Resource/Property wrapper and an event per triple.
+ * 
+ * Triples are only visible in the model once flushed, either explicitly, when the buffer
+ * fills up, or on close().  A BatchWriter is not thread-safe.
+ * 
+ * <pre>
+ * BatchWriter writer = template.batchWriter(50000);
+ * try {
+ *     writer.add(resource, predicate, value);
+ *     ...
+ * } finally {
+ *     writer.close();
+ * }
+ * </pre>
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class BatchWriter {
+
+	public static final int DEFAULT_BATCH_SIZE = 10000;
+
+	private final JenaTemplate template;
+
+	private final int batchSize;
+
+	private Triple[] buffer;
+
+	private int count;
+
+	private long written;
+
+	private boolean closed;
+
+	private String lastSubject;
+
+	private Node lastSubjectNode;
+
+	/**
+	 * Constructor
+	 * @param template template whose model is written to, each flush is one write operation
+	 * @param batchSize number of triples per flush
+	 */
+	BatchWriter(JenaTemplate template, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.template = template;
+		this.batchSize = batchSize;
+		this.buffer = new Triple[batchSize];
+	}
+
+	/**
+	 * <code>add</code>
+	 * @param resource URI
+	 * @param predicate predicate URI
+	 * @param value value - literal
+	 */
+	public void add(String resource, String predicate, String value) {
+		add(new Triple(subject(resource), predicate(predicate), NodeFactory.createLiteral(value)));
+	}
+
+	/**
+	 * <code>add</code>
+	 * @param resource resource URI
+	 * @param predicate string
+	 * @param d date, stored as an xsd:dateTime in UTC
+	 */
+	public void add(String resource, String predicate, Date d) {
+		Calendar c = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
+		c.setTime(d);
+		add(new Triple(subject(resource), predicate(predicate), ResourceFactory.createTypedLiteral(c).asNode()));
+	}
+
+	/**
+	 * <code>add</code>
+	 * Connect two resources with a predicate using URIs to indicate resources
+	 * @param resource1
+	 * @param predicate
+	 * @param resource2
+	 */
+	public void add(String resource1, String predicate, URI resource2) {
+		connect(resource1, predicate, resource2.toString());
+	}
+
+	/**
+	 * <code>connect</code>
+	 * Connect two resources with a predicate
+	 * @param resource1
+	 * @param predicate
+	 * @param resource2
+	 */
+	public void connect(String resource1, String predicate, String resource2) {
+		add(new Triple(subject(resource1), predicate(predicate), template.uri(resource2)));
+	}
+
+	/**
+	 * <code>add</code>
+	 * Buffers a triple, flushing when the buffer is full
+	 * @param triple
+	 */
+	public void add(Triple triple) {
+		if (closed) {
+			throw new IllegalStateException("BatchWriter is closed");
+		}
+		if (count == batchSize) {
+			// a failed flush left the buffer full, retry it first
+			flush();
+		}
+		buffer[count++] = triple;
+		if (count == batchSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * <code>flush</code>
+	 * Adds all buffered triples to the graph.  If the write fails the triples stay buffered,
+	 * the next flush tries them again
+	 */
+	public void flush() {
+		if (count == 0) {
+			return;
+		}
+		// graph listeners may keep the array they are notified with, so it is handed over, not reused
+		final Triple[] chunk = count == buffer.length ? buffer : Arrays.copyOf(buffer, count);
+		final JenaTemplate.Changes changes = template.getChangeFeed() != null ? new JenaTemplate.Changes() : null;
+		template.execute("batchWriter", Lock.WRITE, new ModelCallback<Void>() {
+			public Void doInModel(Model model) {
+				Graph g = model.getGraph();
+				if (changes == null) {
+					GraphUtil.add(g, chunk);
+				} else {
+					for (Triple t : chunk) {
+						if (!g.contains(t)) {
+							g.add(t);
+							changes.added.add(t);
+						}
+					}
+				}
+				return null;
+			}
+		}, changes);
+		if (chunk == buffer) {
+			buffer = new Triple[batchSize];
+		}
+		count = 0;
+		written += chunk.length;
+	}
+
+	/**
+	 * <code>close</code>
+	 * Flushes any remaining triples, the writer cannot be used afterwards
+	 */
+	public void close() {
+		if (!closed) {
+			flush();
+			closed = true;
+		}
+	}
+
+	/**
+	 * <code>getTripleCount</code>
+	 * @return number of triples flushed to the graph so far
+	 */
+	public long getTripleCount() {
+		return written;
+	}
+
+	/**
+	 * <code>getPendingCount</code>
+	 * @return number of buffered triples not yet flushed
+	 */
+	public int getPendingCount() {
+		return count;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	private Node subject(String uri) {
+		// loads are usually grouped by subject, so remembering the last one avoids most lookups
+		if (!uri.equals(lastSubject)) {
+			lastSubject = uri;
+			lastSubjectNode = template.uri(uri);
+		}
+		return lastSubjectNode;
+	}
+
+	private Node predicate(String uri) {
+		return template.uri(uri);
+	}
+
+}
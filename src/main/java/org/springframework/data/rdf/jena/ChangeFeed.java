@@ -0,0 +1,293 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * <code>ChangeFeed</code>
+ * 
+ * Change data capture for JenaTemplate: every write operation of a template set up with the
+ * feed publishes a ChangeSet once it is committed, numbered in the order the changes were
+ * applied.  Change sets go into a bounded ring buffer and are delivered in batches, in sequence
+ * order, to the subscribed ChangeListeners by a thread of the feed.  Change sets are published
+ * after the model's lock is released, so slow listeners - including ones reading the model -
+ * never hold up readers or writers of the model.  When the buffer is full a writer waits up to
+ * the publish timeout for room, then drops its change set; the gap in the sequence numbers
+ * and getDroppedCount tell listeners about it.
+ * 
+ * Listeners subscribed later only see later changes, the sequence numbers let them tell
+ * where they are.  Changes made through JenaTemplate.execute(ModelCallback), the importer or
+ * directly through the Jena API are not captured.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class ChangeFeed implements DisposableBean {
+
+	private static final Log logger = LogFactory.getLog(ChangeFeed.class);
+
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	public static final long DEFAULT_PUBLISH_TIMEOUT_MILLIS = 10000;
+
+	private static final Comparator<ChangeSet> BY_SEQUENCE = new Comparator<ChangeSet>() {
+		public int compare(ChangeSet a, ChangeSet b) {
+			return a.getSequence() < b.getSequence() ? -1 : a.getSequence() == b.getSequence() ? 0 : 1;
+		}
+	};
+
+	private final BlockingQueue<ChangeSet> buffer;
+
+	private final int batchSize;
+
+	private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final AtomicLong delivered = new AtomicLong();
+
+	private final Set<Long> dropped = new ConcurrentSkipListSet<Long>();
+
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	private volatile long publishTimeoutMillis = DEFAULT_PUBLISH_TIMEOUT_MILLIS;
+
+	private volatile boolean closed;
+
+	private Thread dispatcher;
+
+	public ChangeFeed() {
+		this(DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity number of change sets buffered before writers wait
+	 * @param batchSize maximum number of change sets per listener call
+	 */
+	public ChangeFeed(int capacity, int batchSize) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+		}
+		this.buffer = new ArrayBlockingQueue<ChangeSet>(capacity);
+		this.batchSize = batchSize;
+	}
+
+	public void subscribe(ChangeListener listener) {
+		listeners.add(listener);
+	}
+
+	public void unsubscribe(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * <code>setPublishTimeoutMillis</code>
+	 * @param publishTimeoutMillis how long a writer waits for room in a full buffer before its
+	 * change set is dropped, 0 drops at once
+	 */
+	public void setPublishTimeoutMillis(long publishTimeoutMillis) {
+		if (publishTimeoutMillis < 0) {
+			throw new IllegalArgumentException("publishTimeoutMillis must not be negative: " + publishTimeoutMillis);
+		}
+		this.publishTimeoutMillis = publishTimeoutMillis;
+	}
+
+	public long getPublishTimeoutMillis() {
+		return publishTimeoutMillis;
+	}
+
+	/**
+	 * <code>reserve</code>
+	 * Numbers the next change set, called while the write is still holding the model's lock
+	 * @return the change set's sequence number, to be published
+	 */
+	long reserve() {
+		return sequence.incrementAndGet();
+	}
+
+	/**
+	 * <code>publish</code>
+	 * Buffers a change set numbered by reserve, waiting up to the publish timeout while the
+	 * buffer is full.  The write has been committed, so this never fails: a change set that
+	 * cannot be buffered is dropped and logged
+	 */
+	void publish(long number, String operation, List<Triple> added, List<Triple> removed) {
+		ChangeSet changes = new ChangeSet(number, operation, Collections.unmodifiableList(added),
+				Collections.unmodifiableList(removed));
+		boolean buffered = false;
+		if (closed) {
+			logger.warn("ChangeFeed is closed, dropping " + changes);
+		} else {
+			startDispatcher();
+			try {
+				buffered = buffer.offer(changes, publishTimeoutMillis, TimeUnit.MILLISECONDS);
+				if (!buffered) {
+					logger.warn("ChangeFeed buffer full for " + publishTimeoutMillis + " ms, dropping " + changes);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				logger.warn("Interrupted publishing, dropping " + changes);
+			}
+		}
+		if (!buffered) {
+			dropped.add(number);
+			droppedCount.incrementAndGet();
+		}
+	}
+
+	private synchronized void startDispatcher() {
+		if (dispatcher == null && !closed) {
+			dispatcher = new Thread(new Runnable() {
+				public void run() {
+					dispatch();
+				}
+			}, "jena-change-feed");
+			dispatcher.setDaemon(true);
+			dispatcher.start();
+		}
+	}
+
+	/**
+	 * <code>dispatch</code>
+	 * Writers buffer their change sets after releasing the model's lock, so they may arrive out
+	 * of order; those arriving early wait until the ones before them are delivered or dropped
+	 */
+	private void dispatch() {
+		PriorityQueue<ChangeSet> waiting = new PriorityQueue<ChangeSet>(batchSize, BY_SEQUENCE);
+		List<ChangeSet> arrived = new ArrayList<ChangeSet>(batchSize);
+		long next = 1;
+		while (true) {
+			boolean done = closed && buffer.isEmpty();
+			if (!done) {
+				try {
+					ChangeSet first = buffer.poll(100, TimeUnit.MILLISECONDS);
+					if (first != null) {
+						arrived.add(first);
+						buffer.drainTo(arrived, batchSize - 1);
+						waiting.addAll(arrived);
+						arrived.clear();
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			List<ChangeSet> batch = new ArrayList<ChangeSet>();
+			while (!waiting.isEmpty() && batch.size() < batchSize) {
+				while (dropped.remove(next)) {
+					next++;
+				}
+				long head = waiting.peek().getSequence();
+				if (head == next || done) {
+					// once closed nothing more arrives, gaps are changes that were never published
+					batch.add(waiting.poll());
+					next = head + 1;
+				} else {
+					break;
+				}
+			}
+			if (!batch.isEmpty()) {
+				deliver(Collections.unmodifiableList(batch));
+			} else if (done) {
+				return;
+			}
+		}
+	}
+
+	private void deliver(List<ChangeSet> changes) {
+		for (ChangeListener listener : listeners) {
+			try {
+				listener.changed(changes);
+			} catch (Throwable e) {
+				// a failing listener must not stop the delivery thread
+				logger.error("ChangeListener " + listener + " failed on " + changes, e);
+			}
+		}
+		delivered.addAndGet(changes.size());
+	}
+
+	/**
+	 * @return sequence number of the last change set published
+	 */
+	public long getSequence() {
+		return sequence.get();
+	}
+
+	/**
+	 * @return number of change sets handed to the listeners so far
+	 */
+	public long getDeliveredCount() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return number of change sets dropped because the buffer stayed full or the feed was closed
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return number of change sets waiting in the buffer
+	 */
+	public int getPendingCount() {
+		return buffer.size();
+	}
+
+	/**
+	 * <code>close</code>
+	 * Stops accepting changes, delivers the ones buffered and waits for the delivery thread to finish
+	 */
+	public void close() throws InterruptedException {
+		Thread thread;
+		synchronized (this) {
+			closed = true;
+			thread = dispatcher;
+		}
+		if (thread != null) {
+			thread.join();
+		}
+	}
+
+	public void destroy() throws InterruptedException {
+		close();
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.util.List;
+
+/**
+ * <code>ChangeListener</code>
+ * 
+ * Subscriber of a ChangeFeed
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public interface ChangeListener {
+
+	/**
+	 * <code>changed</code>
+	 * Called from the feed's delivery thread with the change sets published since the last call
+	 * @param changes one or more change sets in sequence order
+	 */
+	void changed(List<ChangeSet> changes);
+
+}
@@ -0,0 +1,74 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * <code>ChangeSet</code>
+ * 
+ * The triples one JenaTemplate write operation added to and removed from the model, as
+ * published to a ChangeFeed.  Only actual changes are listed: adding a triple already in
+ * the model or removing one that is not there does not show up.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class ChangeSet {
+
+	private final long sequence;
+	private final String operation;
+	private final List<Triple> added;
+	private final List<Triple> removed;
+
+	ChangeSet(long sequence, String operation, List<Triple> added, List<Triple> removed) {
+		this.sequence = sequence;
+		this.operation = operation;
+		this.added = added;
+		this.removed = removed;
+	}
+
+	/**
+	 * @return position in the feed, starting at 1 and increasing by one per change set
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return name of the JenaTemplate operation, e.g. setSingleton
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	public List<Triple> getAdded() {
+		return added;
+	}
+
+	public List<Triple> getRemoved() {
+		return removed;
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeSet[" + sequence + " " + operation + ", +" + added.size() + " -" + removed.size() + "]";
+	}
+
+}
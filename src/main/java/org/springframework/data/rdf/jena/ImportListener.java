@@ -0,0 +1,36 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+/**
+ * <code>ImportListener</code>
+ * 
+ * Callback for following the progress and throughput of an RdfImporter run
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public interface ImportListener {
+
+	/**
+	 * <code>progress</code>
+	 * Called from the importing thread roughly every progress interval, and once more when the import completes
+	 * @param statistics current totals
+	 */
+	void progress(ImportStatistics statistics);
+
+}
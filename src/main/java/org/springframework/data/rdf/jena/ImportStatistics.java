@@ -0,0 +1,82 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <code>ImportStatistics</code>
+ * 
+ * Snapshot of the progress of an RdfImporter run
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class ImportStatistics {
+
+	private final long triples;
+	private final long bytes;
+	private final long elapsedNanos;
+	private final boolean finished;
+
+	ImportStatistics(long triples, long bytes, long elapsedNanos, boolean finished) {
+		this.triples = triples;
+		this.bytes = bytes;
+		this.elapsedNanos = elapsedNanos;
+		this.finished = finished;
+	}
+
+	/**
+	 * @return number of triples added to the model so far
+	 */
+	public long getTriples() {
+		return triples;
+	}
+
+	/**
+	 * @return number of bytes read from the resource so far, compressed bytes for gzip
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+	}
+
+	public double getTriplesPerSecond() {
+		return elapsedNanos == 0 ? 0 : triples * 1e9 / elapsedNanos;
+	}
+
+	public double getBytesPerSecond() {
+		return elapsedNanos == 0 ? 0 : bytes * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * @return true for the final statistics of a completed import
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d triples, %d bytes in %d ms (%.0f triples/s)", triples, bytes, getElapsedMillis(),
+				getTriplesPerSecond());
+	}
+
+}
@@ -15,16 +15,35 @@
 */
 package org.springframework.data.rdf.jena;
 
+import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.TimeZone;
 
-import com.hp.hpl.jena.rdf.model.Literal;
+import org.springframework.data.rdf.metrics.MetricsSink;
+import org.springframework.data.rdf.store.TripleStoreProvider;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.ReadWrite;
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.Property;
-import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.shared.Lock;
 
 /**
  * @author Al Baker
@@ -35,11 +54,23 @@ public class JenaTemplate {
 
 	private Model model;
 
+	private MetricsSink metricsSink;
+
+	private boolean locking = true;
+
+	private Dataset dataset;
+
+	private ModelVersionTracker versionTracker;
+
+	private NodeCache nodeCache = new NodeCache();
+
+	private ChangeFeed changeFeed;
+
 	/**
 	 * @return the model
 	 */
 	public Model getModel() {
-		return model;
+		return dataset != null ? dataset.getDefaultModel() : model;
 	}
 
 	/**
@@ -47,78 +78,312 @@ public class JenaTemplate {
 	 */
 	public void setModel(Model model) {
 		this.model = model;
+		this.dataset = null;
+	}
+	
+	/**
+	 * <code>setDataset</code>
+	 * Works on the default model of the dataset.  When the dataset is transactional (e.g. TDB)
+	 * operations join the thread's current transaction, see JenaTransactionManager, and
+	 * outside a transaction each operation runs in a transaction of its own
+	 * @param dataset the dataset to set
+	 */
+	public void setDataset(Dataset dataset) {
+		this.dataset = dataset;
+		this.model = null;
+	}
+	
+	public Dataset getDataset() {
+		return dataset;
+	}
+	
+	/**
+	 * <code>setTripleStoreProvider</code>
+	 * Works on the provider's dataset, see setDataset
+	 * @param provider source of the dataset, e.g. a TdbTripleStoreProvider bean
+	 */
+	public void setTripleStoreProvider(TripleStoreProvider provider) {
+		setDataset(provider.getDataset());
+	}
+	
+	/**
+	 * <code>setMetricsSink</code>
+	 * @param metricsSink sink receiving the latency of every operation, null (the default) disables timing
+	 */
+	public void setMetricsSink(MetricsSink metricsSink) {
+		this.metricsSink = metricsSink;
+	}
+	
+	public MetricsSink getMetricsSink() {
+		return metricsSink;
+	}
+	
+	/**
+	 * <code>setLocking</code>
+	 * Operations run under the model's multiple-reader single-writer lock, READ for lookups and
+	 * WRITE for changes, so each change (e.g. setSingleton's remove and add) is atomic to readers
+	 * and to SparqlTemplate queries on the same model
+	 * @param locking true (the default) to use the model's lock
+	 */
+	public void setLocking(boolean locking) {
+		this.locking = locking;
+	}
+	
+	public boolean isLocking() {
+		return locking;
+	}
+	
+	/**
+	 * <code>setVersionTracker</code>
+	 * @param versionTracker tracker to notify after every write, so that result caches see
+	 * changes to transactional datasets once they are committed
+	 */
+	public void setVersionTracker(ModelVersionTracker versionTracker) {
+		this.versionTracker = versionTracker;
+	}
+	
+	public ModelVersionTracker getVersionTracker() {
+		return versionTracker;
+	}
+	
+	/**
+	 * <code>setNodeCache</code>
+	 * @param nodeCache cache interning the IRIs of every operation, by default one per template;
+	 * share one between templates writing the same vocabulary, null creates a Node per use
+	 */
+	public void setNodeCache(NodeCache nodeCache) {
+		this.nodeCache = nodeCache;
+	}
+	
+	public NodeCache getNodeCache() {
+		return nodeCache;
+	}
+	
+	/**
+	 * <code>setChangeFeed</code>
+	 * @param changeFeed feed to publish the changes of add, connect, disconnect, setSingleton,
+	 * replace, the remove operations and BatchWriter flushes to, null (the default) for none
+	 */
+	public void setChangeFeed(ChangeFeed changeFeed) {
+		this.changeFeed = changeFeed;
+	}
+	
+	public ChangeFeed getChangeFeed() {
+		return changeFeed;
+	}
+	
+	/**
+	 * <code>batchWriter</code>
+	 * @return BatchWriter adding to the model in chunks of BatchWriter.DEFAULT_BATCH_SIZE triples
+	 */
+	public BatchWriter batchWriter() {
+		return batchWriter(BatchWriter.DEFAULT_BATCH_SIZE);
+	}
+	
+	/**
+	 * <code>batchWriter</code>
+	 * For bulk loads - buffers triples and adds them to the model in chunks, taking the
+	 * write lock once per chunk.  Outside a transaction each chunk is committed on its own
+	 * @param batchSize number of triples buffered before they are added to the model
+	 * @return BatchWriter, to be closed by the caller
+	 */
+	public BatchWriter batchWriter(int batchSize) {
+		return new BatchWriter(this, batchSize);
+	}
+	
+	/**
+	 * <code>importResource</code>
+	 * Streams an RDF file into the model, the syntax is taken from the file name
+	 * @param resource Spring resource, e.g. classpath:data.nt or file:/data/dump.nt.gz
+	 * @return statistics of the import
+	 * @throws IOException if the resource cannot be read
+	 */
+	public ImportStatistics importResource(org.springframework.core.io.Resource resource) throws IOException {
+		return importer().importResource(resource);
+	}
+	
+	/**
+	 * <code>importer</code>
+	 * @return RdfImporter for this template's model, for configuring threads, progress reporting, etc.
+	 */
+	public RdfImporter importer() {
+		return new RdfImporter(this);
+	}
+	
+	/**
+	 * <code>execute</code>
+	 * Runs the callback against the model under the write lock, all of its changes
+	 * appear to readers at once
+	 * @param action callback working with the model
+	 * @return the callback's result
+	 */
+	public <T> T execute(ModelCallback<T> action) {
+		return execute("execute", Lock.WRITE, action);
+	}
+	
+	/**
+	 * <code>executeRead</code>
+	 * Runs a read-only callback against the model under the read lock, concurrently with other readers
+	 * @param action callback reading the model
+	 * @return the callback's result
+	 */
+	public <T> T executeRead(ModelCallback<T> action) {
+		return execute("executeRead", Lock.READ, action);
+	}
+	
+	/**
+	 * <code>execute</code>
+	 * Runs the callback under the model's lock in the given mode, in a transaction of its own
+	 * if the dataset is transactional and none is active on this thread
+	 */
+	<T> T execute(String operation, boolean lockMode, ModelCallback<T> action) {
+		return execute(operation, lockMode, action, null);
+	}
+	
+	/**
+	 * <code>execute</code>
+	 * Write variant publishing the changes the callback records to the change feed once they are
+	 * committed.  The change set is numbered before the lock is released, so that change sets are
+	 * numbered in the order applied, and handed to the feed after, so that a full feed never holds
+	 * up readers or other writers of the model
+	 */
+	<T> T execute(String operation, boolean lockMode, ModelCallback<T> action, Changes changes) {
+		MetricsSink sink = metricsSink;
+		long start = sink == null ? 0 : System.nanoTime();
+		boolean failed = true;
+		Dataset ds = dataset;
+		boolean transactional = ds != null && ds.supportsTransactions();
+		boolean autocommit = transactional && !ds.isInTransaction();
+		// transactions isolate readers from writers themselves, the lock is only needed without them
+		Lock lock = locking && !transactional ? (ds != null ? ds.getLock() : model.getLock()) : null;
+		ChangeFeed feed = changes != null ? changeFeed : null;
+		long sequence = 0;
+		if (autocommit) {
+			ds.begin(lockMode == Lock.WRITE ? ReadWrite.WRITE : ReadWrite.READ);
+		} else if (lock != null) {
+			lock.enterCriticalSection(lockMode);
+		}
+		try {
+			// the default model of a transactional dataset is bound to the active transaction
+			T result = action.doInModel(ds != null ? ds.getDefaultModel() : model);
+			if (autocommit && lockMode == Lock.WRITE) {
+				ds.commit();
+			}
+			failed = false;
+			if (feed != null && !changes.isEmpty()) {
+				if (transactional && !autocommit) {
+					publishOnCommit(feed, operation, changes);
+				} else {
+					sequence = feed.reserve();
+				}
+			}
+			return result;
+		} finally {
+			if (autocommit) {
+				if (failed && lockMode == Lock.WRITE) {
+					ds.abort();
+				}
+				ds.end();
+			} else if (lock != null) {
+				lock.leaveCriticalSection();
+			}
+			if (sequence != 0) {
+				feed.publish(sequence, operation, changes.added, changes.removed);
+			}
+			if (lockMode == Lock.WRITE && versionTracker != null) {
+				versionTracker.changed();
+			}
+			if (sink != null) {
+				sink.recordOperation(operation, System.nanoTime() - start, failed);
+			}
+		}
 	}
 	
 	/**
 	 * <code>exists</code>
+	 * Probes the graph's indexes directly, without creating Resources, Properties or Literals.
+	 * With three arguments the object is looked for as a plain literal and then as a resource,
+	 * the typed overloads need only one probe.  With one argument the resource is looked for as
+	 * subject, object or predicate.
 	 * @param args resource, predicate, object - tests if any of those exist
 	 * @return boolean
 	 */
 	public boolean exists(String... args) {
-		
-		if (args == null) {
+		if (args == null || args.length == 0 || args[0] == null) {
 			return false;
 		}
-		
-		if (args.length == 0) {
-			return false;
-		}
-		String resource = null;
-		String property = null;
-		String object = null;
-		
-		int index = 0;
-		for (String arg : args) {
-				
-				switch (index) {
-				case 0: 
-					resource = arg;
-					break;
-				case 1: 
-					property = arg;
-					break;
-				case 2: 
-					object = arg;
-					break;
+		final Node s = uri(args[0]);
+		final Node p = args.length > 1 && args[1] != null ? uri(args[1]) : null;
+		final String o = args.length > 2 ? args[2] : null;
+		return execute("exists", Lock.READ, new ModelCallback<Boolean>() {
+			public Boolean doInModel(Model model) {
+				Graph g = model.getGraph();
+				if (p == null) {
+					return g.contains(s, Node.ANY, Node.ANY) || g.contains(Node.ANY, Node.ANY, s)
+							|| g.contains(Node.ANY, s, Node.ANY);
+				} else if (o == null) {
+					return g.contains(s, p, Node.ANY);
 				}
-			 
-			index++;
-		}
- 		
-		Resource r = null;
-		Property p = null;
-		Literal l = null;
-		Resource r2 = null;
-		
-		if (object != null) {
-			r = model.createResource(resource);
-			p = model.createProperty(property);
-			l = model.createLiteral(object);
-			r2 = model.createResource(object);
-			
-			if (model.contains(r, p, l)) {
-				return true;
-			} else if (model.contains(r, p, r2)) {
-				return true;
-			} else {
-				return false;
+				// the object may well be a literal value, so it is kept out of the node cache
+				return g.contains(s, p, NodeFactory.createLiteral(o)) || g.contains(s, p, NodeFactory.createURI(o));
 			}
-		} else if (property != null) {
-			r = model.createResource(resource);
-			p = model.createProperty(property);
-			if (model.contains(r, p)) { 
-				return true;
-			} else {
-				return false;
+		});
+	}
+	
+	/**
+	 * <code>exists</code>
+	 * @param object Resource or Literal, e.g. from ResourceFactory.createTypedLiteral, null for any object
+	 * @return true if the statement is in the model
+	 */
+	public boolean exists(String resource, String predicate, RDFNode object) {
+		return exists(uri(resource), predicate == null ? null : uri(predicate), object == null ? null : object.asNode());
+	}
+	
+	public boolean exists(URI resource, String predicate, URI object) {
+		return exists(uri(resource.toString()), predicate == null ? null : uri(predicate), object == null ? null : uri(object.toString()));
+	}
+	
+	/**
+	 * <code>exists</code>
+	 * Single probe of the graph, null or Node.ANY match anything
+	 * @return true if a matching triple is in the model
+	 */
+	public boolean exists(Node subject, Node predicate, Node object) {
+		final Triple t = Triple.createMatch(subject, predicate, object);
+		return execute("exists", Lock.READ, new ModelCallback<Boolean>() {
+			public Boolean doInModel(Model model) {
+				return model.getGraph().contains(t);
 			}
-		} else  {
-			r = model.createResource(resource);
-			if (model.containsResource(r)) {
-				return true;
-			} else {
-				return false;
+		});
+	}
+	
+	/**
+	 * <code>existsAll</code>
+	 * Runs many probes under one lock acquisition or transaction
+	 * @param probes triples to look for, Node.ANY matching anything
+	 * @return for every probe, in order, whether a matching triple is in the model
+	 */
+	public boolean[] existsAll(final List<Triple> probes) {
+		return execute("existsAll", Lock.READ, new ModelCallback<boolean[]>() {
+			public boolean[] doInModel(Model model) {
+				Graph g = model.getGraph();
+				boolean[] found = new boolean[probes.size()];
+				int i = 0;
+				for (Triple t : probes) {
+					found[i++] = g.contains(t);
+				}
+				return found;
 			}
-		}
+		});
+	}
+	
+	/**
+	 * <code>uri</code>
+	 * @return the URI node of the string, shared through the node cache
+	 */
+	Node uri(String uri) {
+		NodeCache cache = nodeCache;
+		return cache != null ? cache.createURI(uri) : NodeFactory.createURI(uri);
 	}
 	
 	/**
@@ -127,12 +392,8 @@ public class JenaTemplate {
 	 * @param predicate predicate URI
 	 * @param value value - literal
 	 */
-	public void add(String resource, String predicate, String value) {
-		
-		Resource r = model.createResource(resource);
-		
-		r.addProperty(model.createProperty(predicate), value);
-		
+	public void add(final String resource, final String predicate, final String value) {
+		update("add", null, Triple.create(uri(resource), uri(predicate), NodeFactory.createLiteral(value)));
 	}
 	
 	/**
@@ -141,12 +402,14 @@ public class JenaTemplate {
 	 * @param predicate string
 	 * @param date
 	 */
-	public void add(String resource, String predicate, Date d) {
+	public void add(final String resource, final String predicate, final Date d) {
+		update("add", null, Triple.create(uri(resource), uri(predicate), dateLiteral(d)));
+	}
+	
+	private static Node dateLiteral(Date d) {
 		Calendar c = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
 		c.setTime(d);
-		Literal dateLiteral = model.createTypedLiteral(c);	
-		Resource r = model.createResource(resource);
-		r.addProperty(model.createProperty(predicate), dateLiteral);
+		return ResourceFactory.createTypedLiteral(c).asNode();
 	}
 	
 	/**
@@ -157,9 +420,7 @@ public class JenaTemplate {
 	 * @param resource2
 	 */
 	public void add(URI resource1, String predicate, URI resource2) {
-		Resource r = model.createResource(resource1.toString());
-		Resource r2 = model.createResource(resource2.toString());
-		r.addProperty(model.createProperty(predicate), r2);
+		connect(resource1.toString(), predicate, resource2.toString());
 	}
 	
 	/**
@@ -170,9 +431,7 @@ public class JenaTemplate {
 	 * @param resource2
 	 */
 	public void add(String resource1, String predicate, URI resource2) {
-		Resource r = model.createResource(resource1);
-		Resource r2 = model.createResource(resource2.toString());
-		r.addProperty(model.createProperty(predicate), r2);
+		connect(resource1, predicate, resource2.toString());
 	}
 	
 	/**
@@ -182,12 +441,10 @@ public class JenaTemplate {
 	 * @param predicate
 	 * @param value
 	 */
-	public void setSingleton(String resource, String predicate, String value) {
-		Resource r = model.createResource(resource);
-		Property p = model.createProperty(predicate);
-		model.removeAll(r, p, null);
-		
-		r.addProperty(p, value);
+	public void setSingleton(final String resource, final String predicate, final String value) {
+		Node s = uri(resource);
+		Node p = uri(predicate);
+		update("setSingleton", Triple.createMatch(s, p, null), Triple.create(s, p, NodeFactory.createLiteral(value)));
 	}
 	
 	/**
@@ -197,20 +454,18 @@ public class JenaTemplate {
 	 * @param predicate
 	 * @param value
 	 */
-	public void setSingleton(String resource, String predicate, Date value) {
-		Resource r = model.createResource(resource);
-		Property p = model.createProperty(predicate);
-		model.removeAll(r, p, null);
-		add(resource, predicate, value);
+	public void setSingleton(final String resource, final String predicate, final Date value) {
+		Node s = uri(resource);
+		Node p = uri(predicate);
+		update("setSingleton", Triple.createMatch(s, p, null), Triple.create(s, p, dateLiteral(value)));
 	}
 	
 	/**
 	 * <code>removeResource</code>
 	 * @param uri
 	 */
-	public void removeResource(String uri) {
-		Resource r = model.createResource(uri);
-		model.removeAll(r, null, null);
+	public void removeResource(final String uri) {
+		update("removeResource", Triple.createMatch(uri(uri), null, null), null);
 	}
 	
 	/**
@@ -219,10 +474,8 @@ public class JenaTemplate {
 	 * @param uri of the resource
 	 * @param property resource
 	 */
-	public void removeProperty(String uri, String property) {
-		Resource r = model.createResource(uri);
-		Property p = model.createProperty(property);
-		model.removeAll(r, p, null);
+	public void removeProperty(final String uri, final String property) {
+		update("removeProperty", Triple.createMatch(uri(uri), uri(property), null), null);
 	}
 	
 	/**
@@ -232,11 +485,8 @@ public class JenaTemplate {
 	 * @param property
 	 * @param value
 	 */
-	public void removePropertyValue(String uri, String property, String value) {
-		Resource r = model.createResource(uri);
-		Property p = model.createProperty(property);
-		Literal l = model.createLiteral(value);
-		model.removeAll(r, p, l);		
+	public void removePropertyValue(final String uri, final String property, final String value) {
+		update("removePropertyValue", Triple.createMatch(uri(uri), uri(property), NodeFactory.createLiteral(value)), null);
 	}
 	
 	/**
@@ -246,10 +496,8 @@ public class JenaTemplate {
 	 * @param predicate
 	 * @param resource2
 	 */
-	public void connect(String resource1, String predicate, String resource2) {
-		Resource r = model.createResource(resource1);
-		Resource r2 = model.createResource(resource2);
-		r.addProperty(model.createProperty(predicate), r2);
+	public void connect(final String resource1, final String predicate, final String resource2) {
+		update("connect", null, Triple.create(uri(resource1), uri(predicate), uri(resource2)));
 	}
 	
 	/**
@@ -259,11 +507,130 @@ public class JenaTemplate {
 	 * @param predicate
 	 * @param resource2
 	 */
-	public void disconnect(String resource1, String predicate, String resource2) {
-		Resource r = model.createResource(resource1);
-		Resource r2 = model.createResource(resource2);
-		Property p = model.createProperty(predicate);
-		model.removeAll(r, p, r2);
+	public void disconnect(final String resource1, final String predicate, final String resource2) {
+		update("disconnect", Triple.createMatch(uri(resource1), uri(predicate), uri(resource2)), null);
+	}
+	
+	/**
+	 * <code>replace</code>
+	 * Removes every triple matching the patterns and adds the triples, as one write operation.
+	 * Only triples that actually change are touched: matching triples that are also to be added
+	 * stay, e.g. when saving the properties of a resource of which few have changed.
+	 * @param patterns triples to remove, Node.ANY matching anything
+	 * @param triples triples to add
+	 */
+	public void replace(List<Triple> patterns, List<Triple> triples) {
+		update("replace", patterns, triples);
+	}
+	
+	/**
+	 * <code>update</code>
+	 * Removes the triples matching the pattern and adds the triple.  Without a change feed there
+	 * is no delta to compute, so the graph is changed directly
+	 */
+	private void update(String operation, final Triple pattern, final Triple triple) {
+		if (changeFeed != null) {
+			update(operation, pattern == null ? Collections.<Triple>emptyList() : Collections.singletonList(pattern),
+					triple == null ? Collections.<Triple>emptyList() : Collections.singletonList(triple));
+			return;
+		}
+		execute(operation, Lock.WRITE, new ModelCallback<Void>() {
+			public Void doInModel(Model model) {
+				Graph g = model.getGraph();
+				if (pattern != null) {
+					g.remove(pattern.getSubject(), pattern.getPredicate(), pattern.getObject());
+				}
+				if (triple != null) {
+					g.add(triple);
+				}
+				return null;
+			}
+		});
+	}
+	
+	/**
+	 * <code>update</code>
+	 * Applies the difference between the triples matching the patterns and the triples to add,
+	 * recording it when there is a change feed.  Used by replace, and by the single triple
+	 * operations only when there is a change feed
+	 */
+	private void update(String operation, final List<Triple> patterns, final List<Triple> triples) {
+		final Changes changes = changeFeed != null ? new Changes() : null;
+		execute(operation, Lock.WRITE, new ModelCallback<Void>() {
+			public Void doInModel(Model model) {
+				Graph g = model.getGraph();
+				Collection<Triple> wanted = triples.size() > 1 ? new HashSet<Triple>(triples) : triples;
+				Set<Triple> kept = new HashSet<Triple>();
+				Set<Triple> removed = new LinkedHashSet<Triple>();
+				for (Triple pattern : patterns) {
+					for (Triple t : g.find(pattern).toList()) {
+						if (wanted.contains(t)) {
+							kept.add(t);
+						} else {
+							removed.add(t);
+						}
+					}
+				}
+				Set<Triple> added = new LinkedHashSet<Triple>();
+				for (Triple t : triples) {
+					// a value-equal triple matching a pattern is removed, so t is added regardless
+					if (!kept.contains(t) && (matches(patterns, t) || !g.contains(t))) {
+						added.add(t);
+					}
+				}
+				for (Triple t : removed) {
+					g.delete(t);
+				}
+				for (Triple t : added) {
+					g.add(t);
+				}
+				if (changes != null) {
+					changes.removed.addAll(removed);
+					changes.added.addAll(added);
+				}
+				return null;
+			}
+		}, changes);
+	}
+	
+	private static boolean matches(List<Triple> patterns, Triple t) {
+		for (Triple pattern : patterns) {
+			if (pattern.matches(t)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * <code>publishOnCommit</code>
+	 * Hands the changes to the feed once the Spring managed transaction joined commits, or at once
+	 * when there is no transaction synchronization
+	 */
+	private static void publishOnCommit(final ChangeFeed feed, final String operation, final Changes changes) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					feed.publish(feed.reserve(), operation, changes.added, changes.removed);
+				}
+			});
+		} else {
+			feed.publish(feed.reserve(), operation, changes.added, changes.removed);
+		}
+	}
+	
+	/**
+	 * <code>Changes</code>
+	 * Triples a write operation added and removed
+	 */
+	static final class Changes {
+		final List<Triple> added = new ArrayList<Triple>();
+		final List<Triple> removed = new ArrayList<Triple>();
+		
+		boolean isEmpty() {
+			return added.isEmpty() && removed.isEmpty();
+		}
 	}
 	
 }
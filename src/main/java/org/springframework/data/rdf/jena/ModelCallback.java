@@ -0,0 +1,39 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * <code>ModelCallback<T></code>
+ * 
+ * Callback for working with the model of a JenaTemplate directly, with the template
+ * taking care of instrumentation around it.  Inspired by Spring's StatementCallback.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public interface ModelCallback<T> {
+
+	/**
+	 * <code>doInModel</code>
+	 * @param model the template's model
+	 * @return a result, or null
+	 */
+	T doInModel(Model model);
+
+}
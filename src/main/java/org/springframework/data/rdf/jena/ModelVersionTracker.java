@@ -0,0 +1,132 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphListener;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * <code>ModelVersionTracker</code>
+ * 
+ * Version counter of a model, incremented on every change.  Caches of query results remember
+ * the version they were filled at and drop their entries once it has moved on.
+ * 
+ * Changes are seen in two ways: as a listener on the model's graph, for writes made directly
+ * through the Jena API, and through JenaTemplate and JenaTransactionManager, which increment
+ * the version once a write is committed or its lock released.  Graphs of transactional
+ * datasets such as TDB are views bound to a transaction and do not deliver events to each
+ * other, so writes to them must go through a JenaTemplate or JenaTransactionManager set up
+ * with the tracker.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class ModelVersionTracker implements GraphListener {
+
+	private final AtomicLong version = new AtomicLong();
+
+	public ModelVersionTracker() { }
+
+	/**
+	 * Constructor - tracks the model's graph
+	 * @param model
+	 */
+	public ModelVersionTracker(Model model) {
+		track(model);
+	}
+
+	/**
+	 * <code>track</code>
+	 * Registers the tracker as a listener of the model's graph
+	 */
+	public void track(Model model) {
+		model.getGraph().getEventManager().register(this);
+	}
+
+	public void untrack(Model model) {
+		model.getGraph().getEventManager().unregister(this);
+	}
+
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * <code>changed</code>
+	 * Records a change made outside the tracked graphs, e.g. a committed transaction
+	 */
+	public void changed() {
+		version.incrementAndGet();
+	}
+
+	public void notifyAddTriple(Graph g, Triple t) {
+		changed();
+	}
+
+	public void notifyAddArray(Graph g, Triple[] triples) {
+		changed();
+	}
+
+	public void notifyAddList(Graph g, List<Triple> triples) {
+		changed();
+	}
+
+	public void notifyAddIterator(Graph g, Iterator<Triple> it) {
+		changed();
+	}
+
+	public void notifyAddGraph(Graph g, Graph added) {
+		changed();
+	}
+
+	public void notifyDeleteTriple(Graph g, Triple t) {
+		changed();
+	}
+
+	public void notifyDeleteList(Graph g, List<Triple> triples) {
+		changed();
+	}
+
+	public void notifyDeleteArray(Graph g, Triple[] triples) {
+		changed();
+	}
+
+	public void notifyDeleteIterator(Graph g, Iterator<Triple> it) {
+		changed();
+	}
+
+	public void notifyDeleteGraph(Graph g, Graph removed) {
+		changed();
+	}
+
+	public void notifyEvent(Graph source, Object value) {
+		// removeAll and bulk events
+		changed();
+	}
+
+	@Override
+	public String toString() {
+		return "ModelVersionTracker[version=" + getVersion() + "]";
+	}
+
+}
@@ -0,0 +1,208 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+
+/**
+ * <code>NodeCache</code>
+ * 
+ * Bounded, thread-safe interning cache of URI Nodes, so that the IRIs a template sees over
+ * and over share one Node instead of a new one per call, and triples stored from them share
+ * it too.
+ * 
+ * IRIs registered up front, typically the predicates of a vocabulary, are kept for good.
+ * Any other IRI goes into a fixed number of slots chosen by its hash, replacing the IRI that
+ * was there: lookups never lock or allocate on a hit and the cache never grows, at the cost
+ * of a miss when two frequent IRIs share a slot.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class NodeCache {
+
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	private final ConcurrentHashMap<String, Node> registered = new ConcurrentHashMap<String, Node>();
+
+	// Nodes are immutable, a slot may be read while another thread replaces it
+	private final Node[] slots;
+
+	private final int mask;
+
+	/**
+	 * Hit and miss counts of each stripe, 8 longs apart so that threads counting in different
+	 * stripes do not share a cache line; threads pick a stripe by their id and reads sum them
+	 */
+	private static final int STRIDE = 8;
+	private static final int HIT = 0;
+	private static final int MISS = 1;
+	private static final int STRIPES = stripes();
+
+	private final AtomicLongArray counts = new AtomicLongArray(STRIPES * STRIDE);
+
+	public NodeCache() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity number of slots for IRIs not registered, rounded up to a power of two
+	 */
+	public NodeCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new Node[size];
+		this.mask = size - 1;
+	}
+
+	/**
+	 * <code>createURI</code>
+	 * @param uri IRI
+	 * @return the shared URI Node of the IRI
+	 */
+	public Node createURI(String uri) {
+		Node n = registered.get(uri);
+		if (n != null) {
+			count(HIT);
+			return n;
+		}
+		int h = uri.hashCode();
+		int slot = (h ^ (h >>> 16)) & mask;
+		n = slots[slot];
+		if (n != null && n.getURI().equals(uri)) {
+			count(HIT);
+			return n;
+		}
+		count(MISS);
+		n = NodeFactory.createURI(uri);
+		slots[slot] = n;
+		return n;
+	}
+
+	private void count(int counter) {
+		int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+		counts.incrementAndGet(stripe * STRIDE + counter);
+	}
+
+	private long sum(int counter) {
+		long sum = 0;
+		for (int stripe = 0; stripe < STRIPES; stripe++) {
+			sum += counts.get(stripe * STRIDE + counter);
+		}
+		return sum;
+	}
+
+	/**
+	 * @return power of two of at least twice the number of processors, at most 64
+	 */
+	private static int stripes() {
+		int n = Math.min(64, 2 * Runtime.getRuntime().availableProcessors());
+		return Integer.highestOneBit(n) < n ? Integer.highestOneBit(n) << 1 : n;
+	}
+
+	/**
+	 * <code>register</code>
+	 * Keeps the IRIs in the cache for good
+	 */
+	public void register(String... uris) {
+		for (String uri : uris) {
+			if (!registered.containsKey(uri)) {
+				registered.putIfAbsent(uri, NodeFactory.createURI(uri));
+			}
+		}
+	}
+
+	/**
+	 * <code>register</code>
+	 * Registers the URI Resources, Properties and Nodes held in the public static fields of a
+	 * vocabulary class, e.g. RDF.class, RDFS.class or a schemagen generated one
+	 * @param vocabulary class to read the constants of
+	 */
+	public void register(Class<?> vocabulary) {
+		for (Field field : vocabulary.getFields()) {
+			if (!Modifier.isStatic(field.getModifiers())) {
+				continue;
+			}
+			Object value;
+			try {
+				value = field.get(null);
+			} catch (IllegalAccessException e) {
+				throw new IllegalArgumentException("Cannot read " + field, e);
+			}
+			Node n = value instanceof Resource ? ((Resource) value).asNode() : value instanceof Node ? (Node) value : null;
+			if (n != null && n.isURI()) {
+				registered.putIfAbsent(n.getURI(), n);
+			}
+		}
+	}
+
+	public int getRegisteredCount() {
+		return registered.size();
+	}
+
+	public int getCapacity() {
+		return slots.length;
+	}
+
+	/**
+	 * <code>clear</code>
+	 * Empties the slots, registered IRIs and statistics are kept
+	 */
+	public void clear() {
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = null;
+		}
+	}
+
+	public long getHitCount() {
+		return sum(HIT);
+	}
+
+	public long getMissCount() {
+		return sum(MISS);
+	}
+
+	/**
+	 * <code>getHitRate</code>
+	 * @return ratio of hits to lookups, 1.0 when nothing has been looked up yet
+	 */
+	public double getHitRate() {
+		long h = getHitCount();
+		long total = h + getMissCount();
+		return total == 0 ? 1.0 : (double) h / total;
+	}
+
+	@Override
+	public String toString() {
+		return "NodeCache[registered=" + getRegisteredCount() + ", capacity=" + getCapacity() + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + "]";
+	}
+
+}
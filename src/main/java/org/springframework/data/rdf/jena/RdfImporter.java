@@ -0,0 +1,387 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.jena;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.atlas.lib.Tuple;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotReader;
+import org.apache.jena.riot.lang.LabelToNode;
+import org.apache.jena.riot.lang.LangRIOT;
+import org.apache.jena.riot.system.StreamRDF;
+import org.springframework.core.io.Resource;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+
+/**
+ * <code>RdfImporter</code>
+ * 
+ * Streams an RDF file from a Spring Resource (classpath:, file:, url:, optionally gzipped)
+ * into the model of a JenaTemplate without building an intermediate model.
+ * 
+ * N-Triples and N-Quads have one statement per line, so with more than one thread they are
+ * split into chunks of lines that are parsed concurrently while the calling thread adds the
+ * results through a BatchWriter.  At most two chunks per thread are in flight, which bounds the
+ * memory used regardless of the file size.  Other syntaxes are parsed on the calling thread.
+ * 
+ * Quads are added to the model as triples, the graph name is dropped.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class RdfImporter {
+
+	public static final int DEFAULT_CHUNK_LINES = 10000;
+
+	public static final long DEFAULT_PROGRESS_INTERVAL = 1000000;
+
+	private static final String GZIP_SUFFIX = ".gz";
+
+	private final JenaTemplate template;
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+
+	private int chunkLines = DEFAULT_CHUNK_LINES;
+
+	private int batchSize = BatchWriter.DEFAULT_BATCH_SIZE;
+
+	private long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+
+	private ImportListener listener;
+
+	RdfImporter(JenaTemplate template) {
+		this.template = template;
+	}
+
+	/**
+	 * <code>setThreads</code>
+	 * @param threads number of parser threads for line based syntaxes, 1 parses on the calling thread
+	 */
+	public RdfImporter setThreads(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("threads must be positive: " + threads);
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * <code>setChunkLines</code>
+	 * @param chunkLines number of lines handed to a parser thread at a time
+	 */
+	public RdfImporter setChunkLines(int chunkLines) {
+		if (chunkLines <= 0) {
+			throw new IllegalArgumentException("chunkLines must be positive: " + chunkLines);
+		}
+		this.chunkLines = chunkLines;
+		return this;
+	}
+
+	/**
+	 * <code>setBatchSize</code>
+	 * @param batchSize number of triples per BatchWriter flush
+	 */
+	public RdfImporter setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	/**
+	 * <code>setListener</code>
+	 * @param listener notified of progress, may be null
+	 * @param progressInterval number of triples between notifications
+	 */
+	public RdfImporter setListener(ImportListener listener, long progressInterval) {
+		this.listener = listener;
+		this.progressInterval = progressInterval;
+		return this;
+	}
+
+	/**
+	 * <code>importResource</code>
+	 * Imports the resource, guessing the syntax from its file name
+	 * @param resource Spring resource, a trailing .gz means gzip compressed
+	 * @return final statistics
+	 * @throws IOException if the resource cannot be read
+	 */
+	public ImportStatistics importResource(Resource resource) throws IOException {
+		String name = baseName(resource);
+		Lang lang = name == null ? null : RDFLanguages.filenameToLang(name);
+		if (lang == null) {
+			throw new IllegalArgumentException("Cannot determine the RDF syntax of " + resource.getDescription());
+		}
+		return importResource(resource, lang);
+	}
+
+	/**
+	 * <code>importResource</code>
+	 * @param resource Spring resource, a trailing .gz means gzip compressed
+	 * @param lang RDF syntax of the (uncompressed) content
+	 * @return final statistics
+	 * @throws IOException if the resource cannot be read
+	 */
+	public ImportStatistics importResource(Resource resource, Lang lang) throws IOException {
+		String filename = resource.getFilename();
+		CountingInputStream in = new CountingInputStream(resource.getInputStream());
+		try {
+			InputStream content = filename != null && filename.endsWith(GZIP_SUFFIX) ? new GZIPInputStream(in, 65536) : in;
+			return importStream(content, in, lang, baseUri(resource));
+		} finally {
+			in.close();
+		}
+	}
+
+	private ImportStatistics importStream(InputStream content, CountingInputStream counter, Lang lang, String base)
+			throws IOException {
+		Progress progress = new Progress(counter);
+		// one seed per import keeps blank node labels consistent across chunks but distinct between files
+		UUID seed = UUID.randomUUID();
+		BatchWriter writer = template.batchWriter(batchSize);
+		try {
+			boolean lineBased = RDFLanguages.sameLang(lang, RDFLanguages.NTRIPLES)
+					|| RDFLanguages.sameLang(lang, RDFLanguages.NQUADS);
+			if (lineBased && threads > 1) {
+				importChunks(content, lang, base, seed, writer, progress);
+			} else {
+				LangRIOT parser = RiotReader.createParser(content, lang, base, new WriterSink(writer, progress));
+				parser.getProfile().setLabelToNode(LabelToNode.createScopeByDocumentHash(seed));
+				parser.parse();
+			}
+		} finally {
+			writer.close();
+		}
+		progress.triples = writer.getTripleCount();
+		ImportStatistics statistics = progress.snapshot(true);
+		if (listener != null) {
+			listener.progress(statistics);
+		}
+		return statistics;
+	}
+
+	private void importChunks(InputStream content, Lang lang, String base, UUID seed, BatchWriter writer,
+			Progress progress) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "rdf-import");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		LinkedList<Future<List<Triple>>> pending = new LinkedList<Future<List<Triple>>>();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(content, "UTF-8"), 65536);
+			StringBuilder chunk = new StringBuilder();
+			int lines = 0;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				chunk.append(line).append('\n');
+				if (++lines == chunkLines) {
+					pending.add(executor.submit(new ChunkParser(chunk.toString(), lang, base, seed)));
+					chunk.setLength(0);
+					lines = 0;
+					if (pending.size() >= threads * 2) {
+						drain(pending.removeFirst(), writer, progress);
+					}
+				}
+			}
+			if (lines > 0) {
+				pending.add(executor.submit(new ChunkParser(chunk.toString(), lang, base, seed)));
+			}
+			while (!pending.isEmpty()) {
+				drain(pending.removeFirst(), writer, progress);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void drain(Future<List<Triple>> future, BatchWriter writer, Progress progress) throws IOException {
+		List<Triple> triples;
+		try {
+			triples = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Import interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		for (Triple t : triples) {
+			writer.add(t);
+		}
+		progress.added(triples.size());
+	}
+
+	private class Progress {
+		final CountingInputStream counter;
+		final long start = System.nanoTime();
+		long triples;
+		long nextReport = progressInterval;
+
+		Progress(CountingInputStream counter) {
+			this.counter = counter;
+		}
+
+		void added(long n) {
+			triples += n;
+			if (listener != null && triples >= nextReport) {
+				nextReport = triples + progressInterval;
+				listener.progress(snapshot(false));
+			}
+		}
+
+		ImportStatistics snapshot(boolean finished) {
+			return new ImportStatistics(triples, counter.count, System.nanoTime() - start, finished);
+		}
+	}
+
+	private static class ChunkParser implements Callable<List<Triple>> {
+		private final String chunk;
+		private final Lang lang;
+		private final String base;
+		private final UUID seed;
+
+		ChunkParser(String chunk, Lang lang, String base, UUID seed) {
+			this.chunk = chunk;
+			this.lang = lang;
+			this.base = base;
+			this.seed = seed;
+		}
+
+		public List<Triple> call() {
+			final List<Triple> triples = new ArrayList<Triple>();
+			LangRIOT parser = RiotReader.createParser(new StringReader(chunk), lang, base, new TripleSink() {
+				@Override
+				public void triple(Triple triple) {
+					triples.add(triple);
+				}
+			});
+			parser.getProfile().setLabelToNode(LabelToNode.createScopeByDocumentHash(seed));
+			parser.parse();
+			return triples;
+		}
+	}
+
+	private static class WriterSink extends TripleSink {
+		private final BatchWriter writer;
+		private final Progress progress;
+
+		WriterSink(BatchWriter writer, Progress progress) {
+			this.writer = writer;
+			this.progress = progress;
+		}
+
+		@Override
+		public void triple(Triple triple) {
+			writer.add(triple);
+			progress.added(1);
+		}
+	}
+
+	/**
+	 * StreamRDF that reduces quads to triples and ignores everything else
+	 */
+	private abstract static class TripleSink implements StreamRDF {
+		public void start() { }
+
+		public abstract void triple(Triple triple);
+
+		public void quad(Quad quad) {
+			triple(quad.asTriple());
+		}
+
+		public void tuple(Tuple<Node> tuple) { }
+
+		public void base(String base) { }
+
+		public void prefix(String prefix, String iri) { }
+
+		public void finish() { }
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		volatile long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+	private static String baseName(Resource resource) {
+		String filename = resource.getFilename();
+		if (filename != null && filename.endsWith(GZIP_SUFFIX)) {
+			return filename.substring(0, filename.length() - GZIP_SUFFIX.length());
+		}
+		return filename;
+	}
+
+	private static String baseUri(Resource resource) {
+		try {
+			return resource.getURI().toString();
+		} catch (IOException e) {
+			// not every resource has a URI (e.g. byte arrays), relative IRIs then stay unresolved
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,398 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.mapping;
+
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.springframework.beans.BeanInstantiationException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.dao.TypeMismatchDataAccessException;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.NumberUtils;
+import org.springframework.util.ReflectionUtils;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDateTime;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * <code>EntityMapping<T></code>
+ * 
+ * Mapping metadata of one class annotated with RdfId and RdfProperty, computed once by
+ * RdfMappingContext.  Fields are read and written through method handles on the getters and
+ * setters, and instances are created through a method handle on the no-argument constructor,
+ * so no reflective lookup is involved once the mapping exists.  Unlike generated accessor
+ * classes, method handles need no access to java.lang internals on recent JDKs.
+ * 
+ * Values are held as an Object[] in property order, position 0 being the id.  Supported
+ * field types are String, java.net.URI, java.util.Date, boolean and the number types,
+ * primitive or not.  Each property is single-valued: when the resource has several values,
+ * the last one read wins.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public final class EntityMapping<T> {
+
+	private static final Set<Class<?>> NUMBER_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(Byte.class,
+			Short.class, Integer.class, Long.class, Float.class, Double.class, BigInteger.class, BigDecimal.class));
+
+	private final Class<T> type;
+
+	private final Node rdfType;
+
+	private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+
+	private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private final MethodHandle constructor;
+
+	private final MethodHandle[] getters;
+
+	private final MethodHandle[] setters;
+
+	private final String[] names;
+
+	private final Class<?>[] types;
+
+	private final Node[] predicates;
+
+	private final Object[] defaults;
+
+	private final Map<Node, Integer> positions = new HashMap<Node, Integer>();
+
+	EntityMapping(Class<T> type) {
+		this.type = type;
+		RdfType typeAnnotation = type.getAnnotation(RdfType.class);
+		this.rdfType = typeAnnotation == null ? null : NodeFactory.createURI(typeAnnotation.value());
+		
+		Field id = null;
+		List<Field> fields = new ArrayList<Field>();
+		for (Class<?> c = type; c != Object.class && c != null; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				if (field.isAnnotationPresent(RdfId.class)) {
+					if (id != null) {
+						throw new IllegalArgumentException(type.getName() + " has more than one @RdfId field");
+					}
+					id = field;
+				} else if (field.isAnnotationPresent(RdfProperty.class)) {
+					fields.add(field);
+				}
+			}
+		}
+		if (id == null) {
+			throw new IllegalArgumentException(type.getName() + " has no @RdfId field");
+		}
+		if (id.getType() != String.class) {
+			throw new IllegalArgumentException("@RdfId field " + id.getName() + " of " + type.getName() + " must be a String");
+		}
+		fields.add(0, id);
+		
+		int n = fields.size();
+		names = new String[n];
+		types = new Class<?>[n];
+		predicates = new Node[n];
+		defaults = new Object[n];
+		getters = new MethodHandle[n];
+		setters = new MethodHandle[n];
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		for (int i = 0; i < n; i++) {
+			Field field = fields.get(i);
+			PropertyDescriptor pd = BeanUtils.getPropertyDescriptor(type, field.getName());
+			if (pd == null || pd.getReadMethod() == null || pd.getWriteMethod() == null) {
+				throw new IllegalArgumentException("Mapped field " + field.getName() + " of " + type.getName()
+						+ " needs a public getter and setter");
+			}
+			if (!isSupported(field.getType())) {
+				throw new IllegalArgumentException("Mapped field " + field.getName() + " of " + type.getName()
+						+ " has unsupported type " + field.getType().getName());
+			}
+			names[i] = field.getName();
+			types[i] = field.getType();
+			getters[i] = unreflect(lookup, pd.getReadMethod()).asType(GETTER);
+			setters[i] = unreflect(lookup, pd.getWriteMethod()).asType(SETTER);
+			if (i > 0) {
+				predicates[i] = NodeFactory.createURI(field.getAnnotation(RdfProperty.class).value());
+				if (positions.put(predicates[i], i) != null) {
+					throw new IllegalArgumentException(type.getName() + " maps " + predicates[i].getURI() + " more than once");
+				}
+			}
+			if (types[i].isPrimitive()) {
+				defaults[i] = types[i] == boolean.class ? Boolean.FALSE
+						: NumberUtils.convertNumberToTargetClass(0, ClassUtils.resolvePrimitiveIfNecessary(types[i]).asSubclass(Number.class));
+			}
+		}
+		Constructor<T> ctor = ClassUtils.getConstructorIfAvailable(type);
+		if (ctor == null || Modifier.isAbstract(type.getModifiers())) {
+			throw new IllegalArgumentException(type.getName() + " needs a public no-argument constructor");
+		}
+		try {
+			ReflectionUtils.makeAccessible(ctor);
+			this.constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access the constructor of " + type.getName(), e);
+		}
+	}
+
+	private static MethodHandle unreflect(MethodHandles.Lookup lookup, Method method) {
+		try {
+			// public accessors of a class that is not itself public
+			ReflectionUtils.makeAccessible(method);
+			return lookup.unreflect(method);
+		} catch (IllegalAccessException e) {
+			throw new IllegalArgumentException("Cannot access " + method, e);
+		}
+	}
+
+	private static boolean isSupported(Class<?> c) {
+		Class<?> wrapper = ClassUtils.resolvePrimitiveIfNecessary(c);
+		return wrapper == String.class || wrapper == URI.class || wrapper == Date.class || wrapper == Boolean.class
+				|| NUMBER_TYPES.contains(wrapper);
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	/**
+	 * <code>getRdfType</code>
+	 * @return the class from RdfType, null when the type is not annotated
+	 */
+	public Node getRdfType() {
+		return rdfType;
+	}
+
+	/**
+	 * <code>getPredicates</code>
+	 * @return the mapped properties in field order
+	 */
+	public List<Node> getPredicates() {
+		return Collections.unmodifiableList(Arrays.asList(predicates).subList(1, predicates.length));
+	}
+
+	/**
+	 * <code>getValues</code>
+	 * @param entity instance of the mapped type
+	 * @return the id followed by the mapped field values, in property order
+	 */
+	public Object[] getValues(T entity) {
+		Object[] values = new Object[getters.length];
+		try {
+			for (int i = 0; i < getters.length; i++) {
+				values[i] = (Object) getters[i].invokeExact((Object) entity);
+			}
+		} catch (Throwable e) {
+			ReflectionUtils.rethrowRuntimeException(e);
+		}
+		return values;
+	}
+
+	/**
+	 * <code>newValues</code>
+	 * @param uri id of the entity
+	 * @return values for an entity with only its id set, primitives holding their zero value
+	 */
+	Object[] newValues(String uri) {
+		Object[] values = defaults.clone();
+		values[0] = uri;
+		return values;
+	}
+
+	/**
+	 * <code>setValue</code>
+	 * Converts the object to the type of the field mapped to the predicate, if any
+	 * @return false when the predicate is not mapped
+	 */
+	boolean setValue(Object[] values, Node predicate, Node object) {
+		Integer i = positions.get(predicate);
+		if (i == null) {
+			return false;
+		}
+		values[i] = fromNode(object, i);
+		return true;
+	}
+
+	/**
+	 * <code>newInstance</code>
+	 * @param values the id followed by the mapped field values
+	 * @return new entity with every mapped field set
+	 */
+	public T newInstance(Object[] values) {
+		T entity;
+		try {
+			entity = type.cast((Object) constructor.invokeExact());
+		} catch (Throwable e) {
+			throw new BeanInstantiationException(type, "Constructor threw exception", e);
+		}
+		try {
+			for (int i = 0; i < setters.length; i++) {
+				setters[i].invokeExact((Object) entity, values[i]);
+			}
+		} catch (Throwable e) {
+			ReflectionUtils.rethrowRuntimeException(e);
+		}
+		return entity;
+	}
+
+	/**
+	 * <code>patterns</code>
+	 * @param subject resource of the entity
+	 * @return patterns matching every triple the mapping owns: the mapped properties and the rdf:type
+	 */
+	List<Triple> patterns(Node subject) {
+		List<Triple> patterns = new ArrayList<Triple>(predicates.length);
+		if (rdfType != null) {
+			patterns.add(Triple.create(subject, RDF.type.asNode(), rdfType));
+		}
+		for (int i = 1; i < predicates.length; i++) {
+			patterns.add(Triple.create(subject, predicates[i], Node.ANY));
+		}
+		return patterns;
+	}
+
+	/**
+	 * <code>triples</code>
+	 * @param subject resource of the entity
+	 * @param values as returned by getValues()
+	 * @return the rdf:type and a triple for every non-null value
+	 */
+	List<Triple> triples(Node subject, Object[] values) {
+		List<Triple> triples = new ArrayList<Triple>(predicates.length);
+		if (rdfType != null) {
+			triples.add(Triple.create(subject, RDF.type.asNode(), rdfType));
+		}
+		for (int i = 1; i < predicates.length; i++) {
+			if (values[i] != null) {
+				triples.add(Triple.create(subject, predicates[i], toNode(values[i])));
+			}
+		}
+		return triples;
+	}
+
+	/**
+	 * <code>selectQuery</code>
+	 * Builds the one query loading entities: the property and object of every mapped triple,
+	 * and the subject too when it is not bound.  With an RdfType only resources of that type match,
+	 * whether ?s is bound or not
+	 * @param all true to select every resource of the RdfType, false for ?s bound by the caller
+	 */
+	String selectQuery(boolean all) {
+		StringBuilder sparql = new StringBuilder(all ? "SELECT ?s ?p ?o WHERE { " : "SELECT ?p ?o WHERE { ");
+		if (rdfType != null) {
+			sparql.append("?s <").append(RDF.type.getURI()).append("> <").append(rdfType.getURI()).append("> . ");
+		}
+		sparql.append("VALUES ?p {");
+		if (rdfType != null) {
+			// the rdf:type row makes an entity without property values load too
+			sparql.append(" <").append(RDF.type.getURI()).append('>');
+		}
+		for (int i = 1; i < predicates.length; i++) {
+			sparql.append(" <").append(predicates[i].getURI()).append('>');
+		}
+		return sparql.append(" } ?s ?p ?o }").toString();
+	}
+
+	private static Node toNode(Object value) {
+		if (value instanceof String) {
+			return NodeFactory.createLiteral((String) value);
+		}
+		if (value instanceof URI) {
+			return NodeFactory.createURI(value.toString());
+		}
+		if (value instanceof Date) {
+			Calendar c = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
+			c.setTime((Date) value);
+			return ResourceFactory.createTypedLiteral(c).asNode();
+		}
+		return ResourceFactory.createTypedLiteral(value).asNode();
+	}
+
+	private Object fromNode(Node node, int i) {
+		Class<?> target = ClassUtils.resolvePrimitiveIfNecessary(types[i]);
+		if (!node.isLiteral()) {
+			String uri = node.isURI() ? node.getURI() : node.getBlankNodeLabel();
+			if (target == String.class) {
+				return uri;
+			}
+			if (target == URI.class && node.isURI()) {
+				return URI.create(uri);
+			}
+			throw new TypeMismatchDataAccessException("Cannot map resource " + node + " to field " + names[i]
+					+ " of type " + types[i].getName());
+		}
+		String lexical = node.getLiteralLexicalForm();
+		try {
+			if (target == String.class) {
+				return lexical;
+			}
+			if (target == URI.class) {
+				return URI.create(lexical);
+			}
+			Object value = node.getLiteralValue();
+			if (target == Date.class && value instanceof XSDDateTime) {
+				return ((XSDDateTime) value).asCalendar().getTime();
+			}
+			if (target == Boolean.class) {
+				return value instanceof Boolean ? value : Boolean.valueOf(lexical.trim());
+			}
+			if (Number.class.isAssignableFrom(target)) {
+				Class<? extends Number> numberType = target.asSubclass(Number.class);
+				return value instanceof Number ? NumberUtils.convertNumberToTargetClass((Number) value, numberType)
+						: NumberUtils.parseNumber(lexical.trim(), numberType);
+			}
+		} catch (RuntimeException e) {
+			throw new TypeMismatchDataAccessException("Cannot map " + node + " to field " + names[i]
+					+ " of type " + types[i].getName(), e);
+		}
+		throw new TypeMismatchDataAccessException("Cannot map " + node + " to field " + names[i]
+				+ " of type " + types[i].getName());
+	}
+
+	@Override
+	public String toString() {
+		return "EntityMapping[" + type.getName() + ", properties=" + Arrays.asList(names).subList(1, names.length) + "]";
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.mapping;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <code>RdfMappingContext</code>
+ * 
+ * Thread-safe registry of EntityMappings, computing the mapping of a class on first use.
+ * Generating the accessors is the expensive part, so one context is meant to be shared by
+ * every RdfMappingTemplate of an application.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class RdfMappingContext {
+
+	private final ConcurrentMap<Class<?>, EntityMapping<?>> mappings = new ConcurrentHashMap<Class<?>, EntityMapping<?>>();
+
+	/**
+	 * <code>getMapping</code>
+	 * @param type class annotated with RdfId and RdfProperty
+	 * @return the mapping of the class
+	 * @throws IllegalArgumentException when the class is not a valid mapped entity
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> EntityMapping<T> getMapping(Class<T> type) {
+		EntityMapping<?> mapping = mappings.get(type);
+		if (mapping == null) {
+			// a concurrent first use only costs a second generation
+			mapping = new EntityMapping<T>(type);
+			EntityMapping<?> existing = mappings.putIfAbsent(type, mapping);
+			if (existing != null) {
+				mapping = existing;
+			}
+		}
+		return (EntityMapping<T>) mapping;
+	}
+
+	public int size() {
+		return mappings.size();
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.mapping;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.data.rdf.jena.JenaTemplate;
+import org.springframework.data.rdf.jena.NodeCache;
+import org.springframework.data.rdf.sparql.PreparedQuery;
+import org.springframework.data.rdf.sparql.SolutionIterator;
+import org.springframework.data.rdf.sparql.SolutionRow;
+import org.springframework.data.rdf.sparql.SolutionRowMapper;
+import org.springframework.data.rdf.sparql.SparqlTemplate;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+/**
+ * <code>RdfMappingTemplate</code>
+ * 
+ * Loads and saves objects annotated with RdfType, RdfId and RdfProperty, reading through a
+ * SparqlTemplate and writing through a JenaTemplate.
+ * 
+ * Loading runs one prepared SELECT per call, whatever the number of entities or properties.
+ * Saving is one JenaTemplate.replace() of the mapped triples, which only touches the
+ * triples whose values changed; triples of properties that are not mapped are left alone.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class RdfMappingTemplate {
+
+	private final JenaTemplate jenaTemplate;
+
+	private final SparqlTemplate sparqlTemplate;
+
+	private RdfMappingContext mappingContext = new RdfMappingContext();
+
+	private final ConcurrentMap<Class<?>, PreparedQuery> findByIdQueries = new ConcurrentHashMap<Class<?>, PreparedQuery>();
+
+	private final ConcurrentMap<Class<?>, PreparedQuery> findAllQueries = new ConcurrentHashMap<Class<?>, PreparedQuery>();
+
+	/**
+	 * Constructor
+	 * @param jenaTemplate template to write the entities with
+	 * @param sparqlTemplate template to read the entities with, usually over the same model
+	 */
+	public RdfMappingTemplate(JenaTemplate jenaTemplate, SparqlTemplate sparqlTemplate) {
+		this.jenaTemplate = jenaTemplate;
+		this.sparqlTemplate = sparqlTemplate;
+	}
+
+	public RdfMappingContext getMappingContext() {
+		return mappingContext;
+	}
+
+	/**
+	 * <code>setMappingContext</code>
+	 * @param mappingContext context to share with other templates, by default each template has its own
+	 */
+	public void setMappingContext(RdfMappingContext mappingContext) {
+		this.mappingContext = mappingContext;
+		findByIdQueries.clear();
+		findAllQueries.clear();
+	}
+
+	/**
+	 * <code>findById</code>
+	 * When the class is annotated with RdfType the resource must have that rdf:type, even if it
+	 * has mapped properties, so a resource of another class is not loaded as this one
+	 * @param type mapped class
+	 * @param uri URI of the resource
+	 * @return the entity, null when the resource lacks the RdfType, or, for a class without
+	 * RdfType, has no mapped property
+	 */
+	public <T> T findById(Class<T> type, String uri) {
+		EntityMapping<T> mapping = mappingContext.getMapping(type);
+		QuerySolutionMap bindings = new QuerySolutionMap();
+		bindings.add("s", ResourceFactory.createResource(uri));
+		EntityLoader<T> loader = new EntityLoader<T>(mapping, uri);
+		load(query(findByIdQueries, mapping, false), bindings, loader);
+		List<T> entities = loader.getEntities();
+		return entities.isEmpty() ? null : entities.get(0);
+	}
+
+	/**
+	 * <code>findAll</code>
+	 * @param type mapped class, annotated with RdfType
+	 * @return every resource of the type, in no particular order
+	 */
+	public <T> List<T> findAll(Class<T> type) {
+		EntityMapping<T> mapping = mappingContext.getMapping(type);
+		if (mapping.getRdfType() == null) {
+			throw new IllegalArgumentException(type.getName() + " has no @RdfType to find all entities by");
+		}
+		EntityLoader<T> loader = new EntityLoader<T>(mapping, null);
+		load(query(findAllQueries, mapping, true), null, loader);
+		return loader.getEntities();
+	}
+
+	/**
+	 * <code>save</code>
+	 * Writes the entity's mapped fields, a null field removing the property
+	 * @param entity entity with its RdfId set
+	 */
+	public void save(Object entity) {
+		List<Triple> patterns = new ArrayList<Triple>();
+		List<Triple> triples = new ArrayList<Triple>();
+		diff(entity, patterns, triples);
+		jenaTemplate.replace(patterns, triples);
+	}
+
+	/**
+	 * <code>saveAll</code>
+	 * Writes the entities as one operation
+	 * @param entities entities with their RdfId set
+	 */
+	public void saveAll(Collection<?> entities) {
+		List<Triple> patterns = new ArrayList<Triple>();
+		List<Triple> triples = new ArrayList<Triple>();
+		for (Object entity : entities) {
+			diff(entity, patterns, triples);
+		}
+		jenaTemplate.replace(patterns, triples);
+	}
+
+	/**
+	 * <code>delete</code>
+	 * Removes the entity's mapped properties and RdfType, other triples of the resource stay
+	 * @param entity entity with its RdfId set
+	 */
+	public void delete(Object entity) {
+		List<Triple> patterns = new ArrayList<Triple>();
+		diff(entity, patterns, null);
+		jenaTemplate.replace(patterns, new ArrayList<Triple>());
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> void diff(T entity, List<Triple> patterns, List<Triple> triples) {
+		EntityMapping<T> mapping = mappingContext.getMapping((Class<T>) entity.getClass());
+		Object[] values = mapping.getValues(entity);
+		if (values[0] == null) {
+			throw new IllegalArgumentException("Cannot save or delete " + entity + " without an @RdfId");
+		}
+		Node subject = uri((String) values[0]);
+		patterns.addAll(mapping.patterns(subject));
+		if (triples != null) {
+			triples.addAll(mapping.triples(subject, values));
+		}
+	}
+
+	private Node uri(String uri) {
+		NodeCache cache = jenaTemplate.getNodeCache();
+		return cache == null ? NodeFactory.createURI(uri) : cache.createURI(uri);
+	}
+
+	private PreparedQuery query(ConcurrentMap<Class<?>, PreparedQuery> queries, EntityMapping<?> mapping, boolean all) {
+		PreparedQuery query = queries.get(mapping.getType());
+		if (query == null) {
+			query = sparqlTemplate.prepare(mapping.selectQuery(all));
+			queries.putIfAbsent(mapping.getType(), query);
+		}
+		return query;
+	}
+
+	private <T> void load(PreparedQuery query, QuerySolutionMap bindings, EntityLoader<T> loader) {
+		SolutionIterator<Void> rows = sparqlTemplate.execSelectRowIterator(query, bindings, loader);
+		try {
+			while (rows.hasNext()) {
+				rows.next();
+			}
+		} finally {
+			rows.close();
+		}
+	}
+
+	/**
+	 * Collects the values of each subject, row by row, and builds the entities at the end
+	 */
+	private static final class EntityLoader<T> implements SolutionRowMapper<Void> {
+
+		private final EntityMapping<T> mapping;
+
+		private final String subject;
+
+		private final Map<String, Object[]> values = new LinkedHashMap<String, Object[]>();
+
+		EntityLoader(EntityMapping<T> mapping, String subject) {
+			this.mapping = mapping;
+			this.subject = subject;
+		}
+
+		public Void mapRow(SolutionRow row, int rowNum) {
+			int p = row.size() - 2;
+			String s = subject != null ? subject : row.getURI(0);
+			if (s == null) {
+				return null;
+			}
+			Object[] entity = values.get(s);
+			if (entity == null) {
+				entity = mapping.newValues(s);
+				values.put(s, entity);
+			}
+			mapping.setValue(entity, row.get(p), row.get(p + 1));
+			return null;
+		}
+
+		List<T> getEntities() {
+			List<T> entities = new ArrayList<T>(values.size());
+			for (Object[] entity : values.values()) {
+				entities.add(mapping.newInstance(entity));
+			}
+			return entities;
+		}
+
+	}
+
+}
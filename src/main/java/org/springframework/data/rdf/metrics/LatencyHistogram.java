@@ -0,0 +1,91 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <code>LatencyHistogram</code>
+ * 
+ * Lock-free histogram of nanosecond latencies in power-of-two buckets, good to within a
+ * factor of two for percentiles, which is enough to tell microseconds from seconds.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class LatencyHistogram {
+
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(nanos) - (nanos == 0 ? 0 : 1));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long m = max.get();
+		while (nanos > m && !max.compareAndSet(m, nanos)) {
+			m = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getTotalNanos() {
+		return total.get();
+	}
+
+	public long getMaxNanos() {
+		return max.get();
+	}
+
+	public double getMeanNanos() {
+		long c = count.get();
+		return c == 0 ? 0 : (double) total.get() / c;
+	}
+
+	/**
+	 * <code>getPercentileNanos</code>
+	 * @param percentile between 0 and 100
+	 * @return upper bound of the bucket holding the percentile
+	 */
+	public long getPercentileNanos(double percentile) {
+		long c = count.get();
+		if (c == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(c * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1, max.get());
+			}
+		}
+		return max.get();
+	}
+
+}
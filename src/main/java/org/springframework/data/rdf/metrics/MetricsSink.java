@@ -0,0 +1,47 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.metrics;
+
+/**
+ * <code>MetricsSink</code>
+ * 
+ * Receives timings from SparqlTemplate and JenaTemplate when set on them.  Templates without
+ * a sink do no timing at all.  Implementations are called on the thread running the operation
+ * and must be thread-safe; adapt this interface to Micrometer, Dropwizard Metrics, JMX, etc.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public interface MetricsSink {
+
+	/**
+	 * <code>recordQuery</code>
+	 * Called once per SparqlTemplate query, after its results have been consumed
+	 * @param metrics stage timings and row count of the query
+	 */
+	void recordQuery(QueryMetrics metrics);
+
+	/**
+	 * <code>recordOperation</code>
+	 * Called once per JenaTemplate operation
+	 * @param operation name of the template method, e.g. "add"
+	 * @param nanos elapsed time
+	 * @param failed true if the operation threw an exception
+	 */
+	void recordOperation(String operation, long nanos, boolean failed);
+
+}
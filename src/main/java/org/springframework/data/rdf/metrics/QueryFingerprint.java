@@ -0,0 +1,143 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.metrics;
+
+/**
+ * <code>QueryFingerprint</code>
+ * 
+ * Normalizes query text so that queries differing only in their constants are reported together:
+ * IRIs become &lt;?&gt;, string literals '?' and numbers ?, comments are dropped and whitespace
+ * is collapsed.  Prefixed names and variables are kept, they usually identify the query shape.
+ * 
+ * <pre>
+ * SELECT ?o WHERE { &lt;urn:a&gt; ?p ?o } LIMIT 10   =&gt;   SELECT ?o WHERE { &lt;?&gt; ?p ?o } LIMIT ?
+ * </pre>
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public final class QueryFingerprint {
+
+	private QueryFingerprint() { }
+
+	/**
+	 * <code>of</code>
+	 * @param sparql query text
+	 * @return fingerprint, null for null
+	 */
+	public static String of(String sparql) {
+		if (sparql == null) {
+			return null;
+		}
+		int n = sparql.length();
+		StringBuilder out = new StringBuilder(n);
+		boolean space = false;
+		int i = 0;
+		while (i < n) {
+			char c = sparql.charAt(i);
+			if (Character.isWhitespace(c)) {
+				space = true;
+				i++;
+				continue;
+			}
+			if (c == '#') {
+				while (i < n && sparql.charAt(i) != '\n') {
+					i++;
+				}
+				space = true;
+				continue;
+			}
+			if (space && out.length() > 0) {
+				out.append(' ');
+			}
+			space = false;
+			int end;
+			if (c == '<' && (end = iriEnd(sparql, i)) > 0) {
+				out.append("<?>");
+				i = end;
+			} else if (c == '"' || c == '\'') {
+				out.append("'?'");
+				i = stringEnd(sparql, i);
+			} else if (Character.isDigit(c) && !partOfName(out)) {
+				out.append('?');
+				while (i < n && (Character.isDigit(sparql.charAt(i)) || sparql.charAt(i) == '.'
+						|| sparql.charAt(i) == 'e' || sparql.charAt(i) == 'E')) {
+					if (sparql.charAt(i) == '.' && (i + 1 == n || !Character.isDigit(sparql.charAt(i + 1)))) {
+						break;
+					}
+					i++;
+				}
+			} else {
+				out.append(c);
+				i++;
+			}
+		}
+		return out.toString();
+	}
+
+	/**
+	 * @return index just past the closing &gt; of an IRI starting at i, or -1 if it is a less-than operator
+	 */
+	private static int iriEnd(String s, int i) {
+		for (int j = i + 1; j < s.length(); j++) {
+			char c = s.charAt(j);
+			if (c == '>') {
+				return j + 1;
+			}
+			if (Character.isWhitespace(c) || c == '<' || c == '"' || c == '{' || c == '}') {
+				return -1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index just past the end of the string literal starting at i, including long ('''...''') forms
+	 */
+	private static int stringEnd(String s, int i) {
+		char quote = s.charAt(i);
+		int n = s.length();
+		boolean isLong = i + 2 < n && s.charAt(i + 1) == quote && s.charAt(i + 2) == quote;
+		int j = isLong ? i + 3 : i + 1;
+		while (j < n) {
+			char c = s.charAt(j);
+			if (c == '\\') {
+				j += 2;
+				continue;
+			}
+			if (c == quote) {
+				if (!isLong) {
+					return j + 1;
+				}
+				if (j + 2 < n && s.charAt(j + 1) == quote && s.charAt(j + 2) == quote) {
+					return j + 3;
+				}
+			}
+			j++;
+		}
+		return n;
+	}
+
+	private static boolean partOfName(StringBuilder out) {
+		if (out.length() == 0) {
+			return false;
+		}
+		char prev = out.charAt(out.length() - 1);
+		return Character.isLetterOrDigit(prev) || prev == '_' || prev == ':' || prev == '?' || prev == '$' || prev == '-';
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.metrics;
+
+/**
+ * <code>QueryMetrics</code>
+ * 
+ * Timings of a single SparqlTemplate query, split into the stages of the template method:
+ * 
+ *   - parse: QueryFactory parsing or the QueryCache lookup, 0 for prepared queries
+ *   - execute: creating the QueryExecution and calling execSelect / execConstruct
+ *   - first row: waiting for the first solution
+ *   - iteration: waiting for the remaining solutions
+ *   - map: time spent in the SolutionMapper and the template's own bookkeeping
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class QueryMetrics {
+
+	private final String operation;
+	private final String sparql;
+	private final long parseNanos;
+	private final long executeNanos;
+	private final long firstRowNanos;
+	private final long iterationNanos;
+	private final long mapNanos;
+	private final long rows;
+	private final boolean failed;
+
+	private String fingerprint;
+
+	public QueryMetrics(String operation, String sparql, long parseNanos, long executeNanos, long firstRowNanos,
+			long iterationNanos, long mapNanos, long rows, boolean failed) {
+		this.operation = operation;
+		this.sparql = sparql;
+		this.parseNanos = parseNanos;
+		this.executeNanos = executeNanos;
+		this.firstRowNanos = firstRowNanos;
+		this.iterationNanos = iterationNanos;
+		this.mapNanos = mapNanos;
+		this.rows = rows;
+		this.failed = failed;
+	}
+
+	/**
+	 * @return name of the template method, e.g. "execSelectList"
+	 */
+	public String getOperation() {
+		return operation;
+	}
+
+	/**
+	 * @return the query text as given to the template
+	 */
+	public String getSparql() {
+		return sparql;
+	}
+
+	/**
+	 * <code>getFingerprint</code>
+	 * @return normalized query text, see QueryFingerprint
+	 */
+	public String getFingerprint() {
+		if (fingerprint == null) {
+			fingerprint = QueryFingerprint.of(sparql);
+		}
+		return fingerprint;
+	}
+
+	public long getParseNanos() {
+		return parseNanos;
+	}
+
+	public long getExecuteNanos() {
+		return executeNanos;
+	}
+
+	public long getFirstRowNanos() {
+		return firstRowNanos;
+	}
+
+	public long getIterationNanos() {
+		return iterationNanos;
+	}
+
+	public long getMapNanos() {
+		return mapNanos;
+	}
+
+	public long getTotalNanos() {
+		return parseNanos + executeNanos + firstRowNanos + iterationNanos + mapNanos;
+	}
+
+	/**
+	 * @return number of solutions read, or triples returned for CONSTRUCT
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public boolean isFailed() {
+		return failed;
+	}
+
+	@Override
+	public String toString() {
+		return operation + " rows=" + rows + " total=" + getTotalNanos() / 1000 + "us (parse=" + parseNanos / 1000
+				+ "us, execute=" + executeNanos / 1000 + "us, firstRow=" + firstRowNanos / 1000 + "us, iteration="
+				+ iterationNanos / 1000 + "us, map=" + mapNanos / 1000 + "us)" + (failed ? " FAILED" : "");
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <code>SimpleMetricsSink</code>
+ * 
+ * In-memory MetricsSink keeping counters and latency histograms per template operation and
+ * per query fingerprint, e.g. for exposing through JMX or a diagnostics endpoint.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class SimpleMetricsSink implements MetricsSink {
+
+	private final ConcurrentMap<String, QueryStatistics> queries = new ConcurrentHashMap<String, QueryStatistics>();
+
+	private final ConcurrentMap<String, OperationStatistics> operations = new ConcurrentHashMap<String, OperationStatistics>();
+
+	public void recordQuery(QueryMetrics metrics) {
+		String key = metrics.getOperation() + " " + metrics.getFingerprint();
+		QueryStatistics stats = queries.get(key);
+		if (stats == null) {
+			QueryStatistics created = new QueryStatistics(metrics.getOperation(), metrics.getFingerprint());
+			stats = queries.putIfAbsent(key, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		stats.record(metrics);
+		operation(metrics.getOperation()).record(metrics.getTotalNanos(), metrics.isFailed());
+	}
+
+	public void recordOperation(String operation, long nanos, boolean failed) {
+		operation(operation).record(nanos, failed);
+	}
+
+	private OperationStatistics operation(String name) {
+		OperationStatistics stats = operations.get(name);
+		if (stats == null) {
+			OperationStatistics created = new OperationStatistics(name);
+			stats = operations.putIfAbsent(name, created);
+			if (stats == null) {
+				stats = created;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * <code>getOperationStatistics</code>
+	 * @param operation template method name
+	 * @return statistics or null if the operation has not been recorded
+	 */
+	public OperationStatistics getOperationStatistics(String operation) {
+		return operations.get(operation);
+	}
+
+	public List<OperationStatistics> getOperationStatistics() {
+		return new ArrayList<OperationStatistics>(operations.values());
+	}
+
+	/**
+	 * <code>getTopQueries</code>
+	 * @param limit maximum number of entries
+	 * @return query statistics ordered by total time spent, the most expensive first
+	 */
+	public List<QueryStatistics> getTopQueries(int limit) {
+		List<QueryStatistics> list = new ArrayList<QueryStatistics>(queries.values());
+		Collections.sort(list, new Comparator<QueryStatistics>() {
+			public int compare(QueryStatistics a, QueryStatistics b) {
+				long x = a.getTotal().getTotalNanos();
+				long y = b.getTotal().getTotalNanos();
+				return x < y ? 1 : (x == y ? 0 : -1);
+			}
+		});
+		return list.size() > limit ? list.subList(0, limit) : list;
+	}
+
+	public void reset() {
+		queries.clear();
+		operations.clear();
+	}
+
+	/**
+	 * Counters and latency of one template operation
+	 */
+	public static class OperationStatistics {
+		private final String operation;
+		private final AtomicLong failures = new AtomicLong();
+		private final LatencyHistogram latency = new LatencyHistogram();
+
+		OperationStatistics(String operation) {
+			this.operation = operation;
+		}
+
+		void record(long nanos, boolean failed) {
+			latency.record(nanos);
+			if (failed) {
+				failures.incrementAndGet();
+			}
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public long getCount() {
+			return latency.getCount();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+	}
+
+	/**
+	 * Counters and per-stage latency of the queries sharing a fingerprint
+	 */
+	public static class QueryStatistics {
+		private final String operation;
+		private final String fingerprint;
+		private final AtomicLong rows = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final LatencyHistogram parse = new LatencyHistogram();
+		private final LatencyHistogram execute = new LatencyHistogram();
+		private final LatencyHistogram firstRow = new LatencyHistogram();
+		private final LatencyHistogram iteration = new LatencyHistogram();
+		private final LatencyHistogram map = new LatencyHistogram();
+		private final LatencyHistogram total = new LatencyHistogram();
+
+		QueryStatistics(String operation, String fingerprint) {
+			this.operation = operation;
+			this.fingerprint = fingerprint;
+		}
+
+		void record(QueryMetrics m) {
+			rows.addAndGet(m.getRows());
+			if (m.isFailed()) {
+				failures.incrementAndGet();
+			}
+			parse.record(m.getParseNanos());
+			execute.record(m.getExecuteNanos());
+			firstRow.record(m.getFirstRowNanos());
+			iteration.record(m.getIterationNanos());
+			map.record(m.getMapNanos());
+			total.record(m.getTotalNanos());
+		}
+
+		public String getOperation() {
+			return operation;
+		}
+
+		public String getFingerprint() {
+			return fingerprint;
+		}
+
+		public long getCount() {
+			return total.getCount();
+		}
+
+		public long getRows() {
+			return rows.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public LatencyHistogram getParse() {
+			return parse;
+		}
+
+		public LatencyHistogram getExecute() {
+			return execute;
+		}
+
+		public LatencyHistogram getFirstRow() {
+			return firstRow;
+		}
+
+		public LatencyHistogram getIteration() {
+			return iteration;
+		}
+
+		public LatencyHistogram getMap() {
+			return map;
+		}
+
+		public LatencyHistogram getTotal() {
+			return total;
+		}
+
+		@Override
+		public String toString() {
+			return operation + " x" + getCount() + " total=" + total.getTotalNanos() / 1000000 + "ms p99="
+					+ total.getPercentileNanos(99) / 1000 + "us rows=" + rows.get() + " : " + fingerprint;
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * <code>SlowQueryLogger</code>
+ * 
+ * MetricsSink logging queries and operations slower than a threshold at WARN level, optionally
+ * passing everything on to another sink.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class SlowQueryLogger implements MetricsSink {
+
+	private static final Log logger = LogFactory.getLog(SlowQueryLogger.class);
+
+	private final long thresholdNanos;
+
+	private final MetricsSink delegate;
+
+	public SlowQueryLogger(long thresholdMillis) {
+		this(thresholdMillis, null);
+	}
+
+	/**
+	 * Constructor
+	 * @param thresholdMillis queries taking longer are logged
+	 * @param delegate sink receiving all metrics, may be null
+	 */
+	public SlowQueryLogger(long thresholdMillis, MetricsSink delegate) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.delegate = delegate;
+	}
+
+	public void recordQuery(QueryMetrics metrics) {
+		if (metrics.getTotalNanos() >= thresholdNanos && logger.isWarnEnabled()) {
+			logger.warn("Slow query: " + metrics + "\n" + metrics.getSparql());
+		}
+		if (delegate != null) {
+			delegate.recordQuery(metrics);
+		}
+	}
+
+	public void recordOperation(String operation, long nanos, boolean failed) {
+		if (nanos >= thresholdNanos && logger.isWarnEnabled()) {
+			logger.warn("Slow operation: " + operation + " took " + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms");
+		}
+		if (delegate != null) {
+			delegate.recordOperation(operation, nanos, failed);
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import com.hp.hpl.jena.query.QuerySolutionMap;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+
+/**
+ * <code>Bindings</code>
+ * 
+ * QuerySolutionMap with typed, chainable setters for binding the variables of a PreparedQuery
+ * 
+ * <pre>
+ * template.execSelectList(query, new Bindings().uri("s", uri).literal("name", name), mapper);
+ * </pre>
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class Bindings extends QuerySolutionMap {
+
+	/**
+	 * <code>uri</code>
+	 * @param var variable name, without the leading ?
+	 * @param uri resource URI
+	 * @return this
+	 */
+	public Bindings uri(String var, String uri) {
+		add(var, ResourceFactory.createResource(uri));
+		return this;
+	}
+
+	/**
+	 * <code>literal</code>
+	 * @param var variable name, without the leading ?
+	 * @param value plain literal value
+	 * @return this
+	 */
+	public Bindings literal(String var, String value) {
+		add(var, ResourceFactory.createPlainLiteral(value));
+		return this;
+	}
+
+	/**
+	 * <code>literal</code>
+	 * @param var variable name, without the leading ?
+	 * @param value value mapped to its XSD datatype, e.g. Integer to xsd:int
+	 * @return this
+	 */
+	public Bindings literal(String var, Object value) {
+		add(var, ResourceFactory.createTypedLiteral(value));
+		return this;
+	}
+
+	/**
+	 * <code>literal</code>
+	 * Binds a date as an xsd:dateTime in UTC, as JenaTemplate stores dates
+	 * @param var variable name, without the leading ?
+	 * @param value date
+	 * @return this
+	 */
+	public Bindings literal(String var, Date value) {
+		Calendar c = GregorianCalendar.getInstance(TimeZone.getTimeZone("UTC"));
+		c.setTime(value);
+		add(var, ResourceFactory.createTypedLiteral(c));
+		return this;
+	}
+
+	/**
+	 * <code>node</code>
+	 * @param var variable name, without the leading ?
+	 * @param node any RDF node
+	 * @return this
+	 */
+	public Bindings node(String var, RDFNode node) {
+		add(var, node);
+		return this;
+	}
+
+}
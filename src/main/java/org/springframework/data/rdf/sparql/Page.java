@@ -0,0 +1,80 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * <code>Page<T></code>
+ * 
+ * One page of mapped SELECT results, returned by SparqlTemplate.execSelectPage() together
+ * with the continuation to pass back for the next page.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class Page<T> implements Iterable<T> {
+
+	private final List<T> content;
+
+	private final String continuation;
+
+	Page(List<T> content, String continuation) {
+		this.content = Collections.unmodifiableList(content);
+		this.continuation = continuation;
+	}
+
+	/**
+	 * <code>getContent</code>
+	 * @return the mapped rows of this page
+	 */
+	public List<T> getContent() {
+		return content;
+	}
+
+	public int size() {
+		return content.size();
+	}
+
+	/**
+	 * <code>hasNext</code>
+	 * @return true when there are rows after this page
+	 */
+	public boolean hasNext() {
+		return continuation != null;
+	}
+
+	/**
+	 * <code>getContinuation</code>
+	 * @return opaque token to fetch the next page with, e.g. in a URL, null on the last page
+	 */
+	public String getContinuation() {
+		return continuation;
+	}
+
+	public Iterator<T> iterator() {
+		return content.iterator();
+	}
+
+	@Override
+	public String toString() {
+		return "Page[size=" + content.size() + ", hasNext=" + hasNext() + "]";
+	}
+
+}
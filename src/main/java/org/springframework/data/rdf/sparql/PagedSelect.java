@@ -0,0 +1,382 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.riot.out.NodeFmtLib;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingComparator;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.expr.Expr;
+import com.hp.hpl.jena.sparql.expr.ExprEvalException;
+import com.hp.hpl.jena.sparql.expr.ExprFunctionN;
+import com.hp.hpl.jena.sparql.expr.ExprList;
+import com.hp.hpl.jena.sparql.expr.ExprVar;
+import com.hp.hpl.jena.sparql.expr.NodeValue;
+import com.hp.hpl.jena.sparql.function.FunctionEnv;
+import com.hp.hpl.jena.sparql.syntax.ElementFilter;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.syntax.PatternVars;
+import com.hp.hpl.jena.sparql.util.NodeFactoryExtra;
+
+/**
+ * <code>PagedSelect</code>
+ * 
+ * Builds the query of each page of a paged SELECT and the continuation leading to the next.
+ * 
+ * Ordered queries are paged by keyset: the continuation holds the ORDER BY key of the last
+ * row, and the next page filters the solutions down to those sorting at or after it, skipping
+ * the rows of that key already returned.  ARQ breaks ORDER BY ties by comparing the whole
+ * solutions, so rows of equal key come in the same order on every page and the skip is exact.
+ * A page then costs the same wherever it is, where OFFSET has ARQ enumerate and sort every
+ * earlier row again.
+ * 
+ * Other queries, and those whose keys cannot be filtered on (aggregates, unprojected or
+ * computed ORDER BY variables, blank node keys, remote endpoints), fall back to OFFSET.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+class PagedSelect {
+
+	private final Query query;
+
+	private final String fingerprint;
+
+	private final List<SortCondition> keys;
+
+	private final List<Var> keyVars;
+
+	private final long offset;
+
+	private final long limit;
+
+	/**
+	 * Constructor
+	 * @param seekable false to always page by OFFSET, e.g. for remote endpoints that cannot evaluate the keyset filter
+	 */
+	PagedSelect(Query query, String sparql, QuerySolution bindings, boolean seekable) {
+		if (!query.isSelectType()) {
+			throw new IllegalArgumentException("Only SELECT queries can be paged");
+		}
+		this.query = query;
+		this.fingerprint = Integer.toHexString(ResultCache.key("SELECT", sparql, bindings).hashCode());
+		this.offset = query.hasOffset() ? query.getOffset() : 0;
+		this.limit = query.hasLimit() ? query.getLimit() : Query.NOLIMIT;
+		List<Var> vars = seekable ? keyVars(query) : null;
+		this.keys = vars == null ? null : query.getOrderBy();
+		this.keyVars = vars;
+	}
+
+	/**
+	 * <code>keyVars</code>
+	 * @return the variables of the ORDER BY, null when the query cannot be paged by keyset
+	 */
+	private static List<Var> keyVars(Query query) {
+		if (!query.isOrdered() || query.hasGroupBy() || query.hasAggregators() || query.hasHaving()) {
+			return null;
+		}
+		Set<Var> vars = new LinkedHashSet<Var>();
+		for (SortCondition condition : query.getOrderBy()) {
+			vars.addAll(condition.getExpression().getVarsMentioned());
+		}
+		// the key is read from the result rows and filtered on in the pattern
+		if (!query.getProjectVars().containsAll(vars) || !PatternVars.vars(query.getQueryPattern()).containsAll(vars)) {
+			return null;
+		}
+		return new ArrayList<Var>(vars);
+	}
+
+	boolean isKeyset() {
+		return keys != null;
+	}
+
+	/**
+	 * <code>parse</code>
+	 * @param token continuation from a previous page, null for the first page
+	 * @throws IllegalArgumentException if the token is malformed or belongs to another query
+	 */
+	Continuation parse(String token) {
+		if (token == null) {
+			return new Continuation(0, 0, null);
+		}
+		try {
+			String[] lines = new String(unhex(token), "UTF-8").split("\n");
+			if (lines.length < 3 || !lines[0].equals(fingerprint)) {
+				throw new IllegalArgumentException("Continuation does not belong to this query");
+			}
+			long delivered = Long.parseLong(lines[1]);
+			if (lines[2].equals("-")) {
+				return new Continuation(delivered, 0, null);
+			}
+			if (keys == null || lines.length != 3 + keyVars.size()) {
+				throw new IllegalArgumentException("Continuation does not belong to this query");
+			}
+			BindingMap key = BindingFactory.create();
+			for (int i = 0; i < keyVars.size(); i++) {
+				String value = lines[3 + i];
+				if (!value.equals("UNDEF")) {
+					key.add(keyVars.get(i), NodeFactoryExtra.parseNode(value));
+				}
+			}
+			return new Continuation(delivered, Long.parseLong(lines[2]), key);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		} catch (RuntimeException e) {
+			if (e instanceof IllegalArgumentException && e.getMessage() != null && e.getMessage().startsWith("Continuation")) {
+				throw e;
+			}
+			throw new IllegalArgumentException("Invalid continuation: " + token, e);
+		}
+	}
+
+	/**
+	 * <code>page</code>
+	 * @return query of the page after the continuation, fetching one row more than the page
+	 * to tell whether another follows; null when the LIMIT of the query has been reached
+	 */
+	Query page(Continuation from, int pageSize) {
+		long fetch = pageSize + 1L;
+		if (limit != Query.NOLIMIT) {
+			fetch = Math.min(fetch, limit - from.delivered);
+			if (fetch <= 0) {
+				return null;
+			}
+		}
+		Query q = query.cloneQuery();
+		if (from.key != null) {
+			ElementGroup group = new ElementGroup();
+			group.addElement(q.getQueryPattern());
+			group.addElementFilter(new ElementFilter(new E_After(keys, keyVars, from.key)));
+			q.setQueryPattern(group);
+			q.setOffset(from.ties > 0 ? from.ties : Query.NOLIMIT);
+		} else {
+			long skip = offset + from.delivered;
+			q.setOffset(skip > 0 ? skip : Query.NOLIMIT);
+		}
+		q.setLimit(fetch);
+		q.setResultVars();
+		return q;
+	}
+
+	/**
+	 * <code>sameKey</code>
+	 * @return true when the rows sort equal on the ORDER BY
+	 */
+	boolean sameKey(Binding a, Binding b) {
+		return compareKeys(keys, a, b, null) == 0;
+	}
+
+	/**
+	 * <code>next</code>
+	 * @param from continuation of the page
+	 * @param rows number of rows on the page
+	 * @param last last row of the page
+	 * @param ties number of rows at the end of the page sharing the key of the last one
+	 * @return continuation of the page after
+	 */
+	String next(Continuation from, int rows, Binding last, long ties) {
+		StringBuilder token = new StringBuilder(fingerprint).append('\n').append(from.delivered + rows).append('\n');
+		List<String> values = keys == null ? null : new ArrayList<String>(keyVars.size());
+		if (values != null) {
+			for (Var var : keyVars) {
+				Node n = last.get(var);
+				if (n != null && n.isBlank()) {
+					// blank node labels do not survive a round trip
+					values = null;
+					break;
+				}
+				values.add(n == null ? "UNDEF" : NodeFmtLib.str(n));
+			}
+		}
+		if (values == null) {
+			token.append('-');
+		} else {
+			if (from.key != null && sameKey(last, from.key)) {
+				ties += from.ties;
+			}
+			token.append(ties);
+			for (String value : values) {
+				token.append('\n').append(value);
+			}
+		}
+		try {
+			return hex(token.toString().getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * <code>compareKeys</code>
+	 * Compares two solutions on the ORDER BY conditions only, as ARQ does before it breaks ties
+	 */
+	static int compareKeys(List<SortCondition> conditions, Binding a, Binding b, FunctionEnv env) {
+		for (SortCondition condition : conditions) {
+			int c = BindingComparator.compareNodesRaw(eval(condition.getExpression(), a, env),
+					eval(condition.getExpression(), b, env));
+			if (c != 0) {
+				return condition.getDirection() == Query.ORDER_DESCENDING ? -c : c;
+			}
+		}
+		return 0;
+	}
+
+	private static NodeValue eval(Expr expr, Binding binding, FunctionEnv env) {
+		try {
+			return expr.eval(binding, env);
+		} catch (ExprEvalException e) {
+			// unbound or in error, sorted first like ARQ does
+			return null;
+		}
+	}
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	private static byte[] unhex(String s) {
+		if (s.length() % 2 != 0) {
+			throw new IllegalArgumentException("Odd length");
+		}
+		byte[] bytes = new byte[s.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int hi = Character.digit(s.charAt(2 * i), 16);
+			int lo = Character.digit(s.charAt(2 * i + 1), 16);
+			if (hi < 0 || lo < 0) {
+				throw new IllegalArgumentException("Not hexadecimal");
+			}
+			bytes[i] = (byte) (hi << 4 | lo);
+		}
+		return bytes;
+	}
+
+	/**
+	 * <code>Continuation</code>
+	 * Position after a page: rows returned so far and, for keyset paging, the key of the last
+	 * row with the number of rows of that key already returned
+	 */
+	static final class Continuation {
+		final long delivered;
+		final long ties;
+		final Binding key;
+
+		Continuation(long delivered, long ties, Binding key) {
+			this.delivered = delivered;
+			this.ties = ties;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * <code>E_After</code>
+	 * Filter expression true for the solutions sorting at or after the key on the ORDER BY
+	 */
+	static final class E_After extends ExprFunctionN {
+		private final List<SortCondition> conditions;
+		private final List<Var> vars;
+		private final Binding key;
+		private final Binding fixed;
+
+		E_After(List<SortCondition> conditions, List<Var> vars, Binding key) {
+			this(conditions, vars, key, args(vars), null);
+		}
+
+		private E_After(List<SortCondition> conditions, List<Var> vars, Binding key, ExprList args, Binding fixed) {
+			super("after", args);
+			this.conditions = conditions;
+			this.vars = vars;
+			this.key = key;
+			this.fixed = fixed;
+		}
+
+		private static ExprList args(List<Var> vars) {
+			ExprList args = new ExprList();
+			for (Var var : vars) {
+				args.add(new ExprVar(var));
+			}
+			return args;
+		}
+
+		@Override
+		protected NodeValue evalSpecial(Binding binding, FunctionEnv env) {
+			Binding b = binding;
+			if (fixed != null) {
+				BindingMap merged = BindingFactory.create(binding);
+				for (Iterator<Var> it = fixed.vars(); it.hasNext(); ) {
+					Var var = it.next();
+					if (!binding.contains(var)) {
+						merged.add(var, fixed.get(var));
+					}
+				}
+				b = merged;
+			}
+			return NodeValue.booleanReturn(compareKeys(conditions, b, key, env) >= 0);
+		}
+
+		@Override
+		protected NodeValue eval(List<NodeValue> args) {
+			throw new UnsupportedOperationException("after() is evaluated on the whole solution");
+		}
+
+		@Override
+		protected Expr copy(ExprList newArgs) {
+			// variables substituted by initial bindings become constants, keep their values
+			BindingMap substituted = fixed == null ? BindingFactory.create() : BindingFactory.create(fixed);
+			boolean any = fixed != null;
+			for (int i = 0; i < vars.size() && i < newArgs.size(); i++) {
+				Expr arg = newArgs.get(i);
+				if (arg.isConstant() && !substituted.contains(vars.get(i))) {
+					substituted.add(vars.get(i), arg.getConstant().asNode());
+					any = true;
+				}
+			}
+			return new E_After(conditions, vars, key, newArgs, any ? substituted : null);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * super.hashCode() + key.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof E_After && super.equals(other) && ((E_After) other).key.equals(key);
+		}
+	}
+
+}
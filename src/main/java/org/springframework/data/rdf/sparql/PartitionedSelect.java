@@ -0,0 +1,586 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.SortCondition;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.shared.Lock;
+import com.hp.hpl.jena.sparql.core.ResultBinding;
+import com.hp.hpl.jena.sparql.core.TriplePath;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingComparator;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.syntax.Element;
+import com.hp.hpl.jena.sparql.syntax.ElementData;
+import com.hp.hpl.jena.sparql.syntax.ElementFilter;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.syntax.ElementPathBlock;
+import com.hp.hpl.jena.sparql.syntax.ElementTriplesBlock;
+import com.hp.hpl.jena.sparql.syntax.PatternVars;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * <code>PartitionedSelect<T></code>
+ * 
+ * Runs a SELECT as several sub-queries on a ForkJoinPool and merges the mapped results.
+ * One triple pattern of the query binding the partition variable is matched up front, its
+ * solutions are dealt into one bucket per partition by the hash of the variable's value,
+ * and each sub-query gets its bucket as a VALUES block in place of the pattern, so every
+ * partition only evaluates its own share of the solutions.  Ordered queries are merged by
+ * their ORDER BY, LIMIT and OFFSET are applied to the merged result.
+ * 
+ * The buckets hold each solution of the pattern once and all solutions with one value of
+ * the variable together, so the partitions are disjoint in the variable and together give
+ * the results of the original query.  Queries for which that does not hold are rejected:
+ * aggregates must group by the partition variable and DISTINCT queries must project it.  The
+ * pattern is taken from the basic graph pattern leading the WHERE clause; a query without
+ * one binding the variable, or with the variable bound by the caller, runs as a single
+ * partition, as does any query on a pool of one thread.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+class PartitionedSelect<T> {
+
+	private final SparqlTemplate template;
+
+	private final Query query;
+
+	private final QuerySolution bindings;
+
+	private final Var var;
+
+	private final int partitions;
+
+	private final long offset;
+
+	private final long limit;
+
+	private final BindingComparator order;
+
+	/**
+	 * Constructor
+	 * @param template template to run the sub-queries with, its cancellation handle is cancelled on failure
+	 * @param varName partition variable, with or without the leading ?
+	 * @throws IllegalArgumentException if the query cannot be partitioned by the variable
+	 */
+	PartitionedSelect(SparqlTemplate template, Query query, QuerySolution bindings, String varName, int partitions) {
+		if (partitions < 1) {
+			throw new IllegalArgumentException("partitions must be positive: " + partitions);
+		}
+		if (!query.isSelectType()) {
+			throw new IllegalArgumentException("Only SELECT queries can be partitioned");
+		}
+		Var var = Var.alloc(varName.startsWith("?") ? varName.substring(1) : varName);
+		if (!PatternVars.vars(query.getQueryPattern()).contains(var)) {
+			throw new IllegalArgumentException("Partition variable " + var + " is not in the query pattern");
+		}
+		if ((query.hasGroupBy() || query.hasAggregators()) && !query.getGroupBy().getVars().contains(var)) {
+			throw new IllegalArgumentException("Aggregate queries must group by the partition variable " + var);
+		}
+		if (query.isDistinct() && !query.getProjectVars().contains(var)) {
+			throw new IllegalArgumentException("DISTINCT queries must project the partition variable " + var);
+		}
+		if (query.isOrdered()) {
+			// partitions are merged on their projected solutions
+			for (SortCondition condition : query.getOrderBy()) {
+				if (!query.getProjectVars().containsAll(condition.getExpression().getVarsMentioned())) {
+					throw new IllegalArgumentException("ORDER BY of a partitioned query must use projected variables only: "
+							+ condition.getExpression());
+				}
+			}
+			this.order = new BindingComparator(query.getOrderBy());
+		} else {
+			this.order = null;
+		}
+		this.template = template;
+		this.query = query;
+		this.bindings = bindings;
+		this.var = var;
+		this.partitions = partitions;
+		this.offset = query.hasOffset() ? query.getOffset() : 0;
+		this.limit = query.hasLimit() ? query.getLimit() : Query.NOLIMIT;
+	}
+
+	/**
+	 * <code>splitPattern</code>
+	 * @return the triple pattern of the leading basic graph pattern that binds the partition
+	 * variable with the most constant terms, null when the query is not split
+	 */
+	Triple splitPattern() {
+		if (partitions == 1 || (bindings != null && bindings.contains(var.getVarName()))
+				|| !(query.getQueryPattern() instanceof ElementGroup)) {
+			return null;
+		}
+		Triple best = null;
+		int bestConstants = -1;
+		for (Element element : ((ElementGroup) query.getQueryPattern()).getElements()) {
+			if (element instanceof ElementFilter) {
+				continue;
+			}
+			List<Triple> triples = triples(element);
+			if (triples == null) {
+				// only patterns ahead of any OPTIONAL, UNION or the like can be moved to the front
+				break;
+			}
+			for (Triple t : triples) {
+				if (!vars(t).contains(var) || repeatsVariable(t)) {
+					continue;
+				}
+				int constants = (t.getSubject().isConcrete() ? 1 : 0) + (t.getPredicate().isConcrete() ? 1 : 0)
+						+ (t.getObject().isConcrete() ? 1 : 0);
+				if (constants > bestConstants) {
+					best = t;
+					bestConstants = constants;
+				}
+			}
+		}
+		return best;
+	}
+
+	private static List<Triple> triples(Element element) {
+		if (element instanceof ElementTriplesBlock) {
+			return ((ElementTriplesBlock) element).getPattern().getList();
+		}
+		if (!(element instanceof ElementPathBlock)) {
+			return null;
+		}
+		List<Triple> triples = new ArrayList<Triple>();
+		for (TriplePath path : ((ElementPathBlock) element).getPattern()) {
+			if (path.isTriple()) {
+				triples.add(path.asTriple());
+			}
+		}
+		return triples;
+	}
+
+	private static Set<Var> vars(Triple t) {
+		Set<Var> vars = new LinkedHashSet<Var>();
+		for (Node n : new Node[] { t.getSubject(), t.getPredicate(), t.getObject() }) {
+			if (n.isVariable()) {
+				vars.add(Var.alloc(n));
+			}
+		}
+		return vars;
+	}
+
+	private static boolean repeatsVariable(Triple t) {
+		Node s = t.getSubject(), p = t.getPredicate(), o = t.getObject();
+		return (s.isVariable() && (s.equals(p) || s.equals(o))) || (p.isVariable() && p.equals(o));
+	}
+
+	/**
+	 * <code>split</code>
+	 * Matches the split pattern once and deals its solutions into buckets by the hash of the
+	 * partition variable's value, so all solutions with one value are in the same bucket
+	 * @return the non-empty buckets, a single empty one when nothing matches
+	 */
+	List<List<Binding>> split(Triple pattern) {
+		List<List<Binding>> buckets = new ArrayList<List<Binding>>(partitions);
+		for (int i = 0; i < partitions; i++) {
+			buckets.add(new ArrayList<Binding>());
+		}
+		Model model = template.getDataset() == null ? template.getModel() : null;
+		if (model == null || bindings != null || query.hasDatasetDescription()) {
+			select(pattern, buckets);
+		} else {
+			find(model, pattern, buckets);
+		}
+		List<List<Binding>> split = new ArrayList<List<Binding>>(partitions);
+		for (List<Binding> bucket : buckets) {
+			if (!bucket.isEmpty()) {
+				split.add(bucket);
+			}
+		}
+		return split.isEmpty() ? Collections.singletonList(Collections.<Binding>emptyList()) : split;
+	}
+
+	/**
+	 * <code>find</code>
+	 * Matches the pattern with one find() on the model's graph, under the model's lock
+	 */
+	private void find(Model model, Triple pattern, List<List<Binding>> buckets) {
+		Lock lock = template.isLocking() ? model.getLock() : null;
+		if (lock != null) {
+			lock.enterCriticalSection(Lock.READ);
+		}
+		try {
+			ExtendedIterator<Triple> it = model.getGraph().find(concrete(pattern.getSubject()),
+					concrete(pattern.getPredicate()), concrete(pattern.getObject()));
+			try {
+				while (it.hasNext()) {
+					Triple t = it.next();
+					BindingMap row = BindingFactory.create();
+					bind(row, pattern.getSubject(), t.getSubject());
+					bind(row, pattern.getPredicate(), t.getPredicate());
+					bind(row, pattern.getObject(), t.getObject());
+					deal(row, buckets);
+				}
+			} finally {
+				it.close();
+			}
+		} finally {
+			if (lock != null) {
+				lock.leaveCriticalSection();
+			}
+		}
+	}
+
+	private static Node concrete(Node node) {
+		return node.isVariable() ? Node.ANY : node;
+	}
+
+	private static void bind(BindingMap row, Node term, Node value) {
+		if (term.isVariable()) {
+			row.add(Var.alloc(term), value);
+		}
+	}
+
+	/**
+	 * <code>select</code>
+	 * Matches the pattern with a query over the query's dataset, for datasets and bound variables
+	 */
+	private void select(Triple pattern, List<List<Binding>> buckets) {
+		Query q = new Query();
+		q.setQuerySelectType();
+		Set<Var> vars = vars(pattern);
+		for (Var v : vars) {
+			q.addResultVar(v);
+		}
+		q.setPrefixMapping(query.getPrefixMapping());
+		for (String uri : query.getGraphURIs()) {
+			q.addGraphURI(uri);
+		}
+		for (String uri : query.getNamedGraphURIs()) {
+			q.addNamedGraphURI(uri);
+		}
+		ElementTriplesBlock block = new ElementTriplesBlock();
+		block.addTriple(pattern);
+		ElementGroup group = new ElementGroup();
+		group.addElement(block);
+		q.setQueryPattern(group);
+		QueryExecution qe = template.createQueryExecution(q, bindings);
+		try {
+			for (ResultSet rs = qe.execSelect(); rs.hasNext(); ) {
+				// copied, the nodes of a store's bindings may not outlive its transaction
+				Binding binding = rs.nextBinding();
+				BindingMap row = BindingFactory.create();
+				for (Var v : vars) {
+					Node value = binding.get(v);
+					if (value != null) {
+						row.add(v, value);
+					}
+				}
+				deal(row, buckets);
+			}
+		} catch (RuntimeException e) {
+			throw SparqlTemplate.translate(e, template.getCancellation());
+		} finally {
+			template.release(qe);
+		}
+	}
+
+	private void deal(Binding row, List<List<Binding>> buckets) {
+		int h = row.get(var).hashCode();
+		h ^= h >>> 16;
+		buckets.get((h & Integer.MAX_VALUE) % buckets.size()).add(row);
+	}
+
+	/**
+	 * <code>partition</code>
+	 * @param pattern the split pattern, null for the whole query
+	 * @param rows the solutions of the pattern this partition evaluates
+	 * @return the sub-query over the rows, returning up to OFFSET + LIMIT rows
+	 */
+	Query partition(Triple pattern, List<Binding> rows) {
+		Query q = query.cloneQuery();
+		if (pattern != null) {
+			ElementData data = new ElementData();
+			for (Var v : vars(pattern)) {
+				data.add(v);
+			}
+			for (Binding row : rows) {
+				data.add(row);
+			}
+			// the rows replace the pattern and lead the group, so each is substituted into the patterns that follow
+			ElementGroup group = new ElementGroup();
+			group.addElement(data);
+			boolean removed = false;
+			for (Element element : ((ElementGroup) q.getQueryPattern()).getElements()) {
+				List<Triple> triples = removed ? null : triples(element);
+				if (triples == null || !triples.contains(pattern)) {
+					group.addElement(element);
+				} else {
+					Element rest = without(element, pattern);
+					if (rest != null) {
+						group.addElement(rest);
+					}
+					removed = true;
+				}
+			}
+			q.setQueryPattern(group);
+		}
+		q.setOffset(Query.NOLIMIT);
+		if (limit != Query.NOLIMIT) {
+			q.setLimit(offset + limit);
+		}
+		q.setResultVars();
+		return q;
+	}
+
+	/**
+	 * <code>without</code>
+	 * @return the triples block less one occurrence of the pattern, null when nothing is left
+	 */
+	private static Element without(Element element, Triple pattern) {
+		boolean removed = false;
+		if (element instanceof ElementTriplesBlock) {
+			ElementTriplesBlock rest = new ElementTriplesBlock();
+			for (Triple t : ((ElementTriplesBlock) element).getPattern()) {
+				if (!removed && t.equals(pattern)) {
+					removed = true;
+				} else {
+					rest.addTriple(t);
+				}
+			}
+			return rest.isEmpty() ? null : rest;
+		}
+		ElementPathBlock rest = new ElementPathBlock();
+		for (TriplePath path : ((ElementPathBlock) element).getPattern()) {
+			if (!removed && path.isTriple() && path.asTriple().equals(pattern)) {
+				removed = true;
+			} else {
+				rest.addTriplePath(path);
+			}
+		}
+		return rest.isEmpty() ? null : rest;
+	}
+
+	/**
+	 * <code>execute</code>
+	 * 
+	 * Runs the partitions and waits for all of them.  When one fails the others are cancelled
+	 * and its exception is rethrown.
+	 * 
+	 * @param mapper mapper shared by the partitions, used when rowMapper is null
+	 * @param rowMapper row mapper, adapted once per partition
+	 * @return merged results
+	 */
+	List<T> execute(ForkJoinPool pool, SolutionMapper<T> mapper, SolutionRowMapper<T> rowMapper) {
+		Triple pattern = splitPattern();
+		List<List<Binding>> split = pattern == null ? Collections.<List<Binding>>singletonList(null) : split(pattern);
+		List<Partition> tasks = new ArrayList<Partition>(split.size());
+		for (List<Binding> rows : split) {
+			Partition task = new Partition(pattern, rows, rowMapper == null ? mapper : new RowMapperAdapter<T>(rowMapper));
+			tasks.add(task);
+			pool.execute(task);
+		}
+		RuntimeException failure = null;
+		for (Partition task : tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new IllegalStateException(e.getCause());
+					template.getCancellation().cancel();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				template.getCancellation().cancel();
+				throw new SparqlQueryCancelledException("Interrupted waiting for partitioned query", e);
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		return order == null ? concatenate(tasks) : merge(tasks);
+	}
+
+	private List<T> concatenate(List<Partition> tasks) {
+		List<T> results = new ArrayList<T>();
+		for (Partition task : tasks) {
+			results.addAll(task.values);
+		}
+		int from = (int) Math.min(offset, results.size());
+		int to = limit == Query.NOLIMIT ? results.size() : (int) Math.min(offset + limit, results.size());
+		return from == 0 && to == results.size() ? results : new ArrayList<T>(results.subList(from, to));
+	}
+
+	/**
+	 * <code>merge</code>
+	 * K-way merge of the sorted partitions, ties are taken in partition order
+	 */
+	private List<T> merge(List<Partition> tasks) {
+		PriorityQueue<Cursor> heads = new PriorityQueue<Cursor>(tasks.size(), new Comparator<Cursor>() {
+			public int compare(Cursor a, Cursor b) {
+				int c = order.compare(a.key(), b.key());
+				return c != 0 ? c : a.partition - b.partition;
+			}
+		});
+		for (int i = 0; i < tasks.size(); i++) {
+			if (!tasks.get(i).values.isEmpty()) {
+				heads.add(new Cursor(i, tasks.get(i)));
+			}
+		}
+		List<T> results = new ArrayList<T>();
+		long skip = offset;
+		while (!heads.isEmpty() && (limit == Query.NOLIMIT || results.size() < limit)) {
+			Cursor head = heads.poll();
+			if (skip > 0) {
+				skip--;
+			} else {
+				results.add(head.value());
+			}
+			if (head.advance()) {
+				heads.add(head);
+			}
+		}
+		return results;
+	}
+
+	private final class Cursor {
+		final int partition;
+		final Partition task;
+		int position;
+
+		Cursor(int partition, Partition task) {
+			this.partition = partition;
+			this.task = task;
+		}
+
+		Binding key() {
+			return task.keys.get(position);
+		}
+
+		T value() {
+			return task.values.get(position);
+		}
+
+		boolean advance() {
+			return ++position < task.values.size();
+		}
+	}
+
+	/**
+	 * <code>Partition</code>
+	 * One sub-query, built, run and mapped on a pool thread, which also takes and releases its read lock or transaction
+	 */
+	private final class Partition extends RecursiveTask<Void> {
+		private static final long serialVersionUID = 1L;
+
+		private final Triple pattern;
+		private final List<Binding> rows;
+		private final SolutionMapper<T> mapper;
+		final List<T> values = new ArrayList<T>();
+		final List<Binding> keys = order == null ? Collections.<Binding>emptyList() : new ArrayList<Binding>();
+
+		Partition(Triple pattern, List<Binding> rows, SolutionMapper<T> mapper) {
+			this.pattern = pattern;
+			this.rows = rows;
+			this.mapper = mapper;
+		}
+
+		@Override
+		protected Void compute() {
+			QueryExecution qe = template.createQueryExecution(partition(pattern, rows), bindings);
+			try {
+				if (order == null) {
+					for (ResultSet rs = qe.execSelect(); rs.hasNext(); ) {
+						values.add(mapper.mapSelect(rs, rs.getRowNumber()));
+					}
+				} else {
+					for (RecordingResultSet rs = new RecordingResultSet(qe.execSelect()); rs.hasNext(); ) {
+						values.add(mapper.mapSelect(rs, rs.getRowNumber()));
+						keys.add(rs.last);
+					}
+				}
+			} catch (RuntimeException e) {
+				throw SparqlTemplate.translate(e, template.getCancellation());
+			} finally {
+				template.release(qe);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * <code>RecordingResultSet</code>
+	 * Keeps the last binding handed to the mapper as the row's merge key
+	 */
+	private static final class RecordingResultSet implements ResultSet {
+		private final ResultSet rs;
+		Binding last;
+
+		RecordingResultSet(ResultSet rs) {
+			this.rs = rs;
+		}
+
+		public boolean hasNext() {
+			return rs.hasNext();
+		}
+
+		public QuerySolution next() {
+			return nextSolution();
+		}
+
+		public QuerySolution nextSolution() {
+			return new ResultBinding(rs.getResourceModel(), nextBinding());
+		}
+
+		public Binding nextBinding() {
+			last = rs.nextBinding();
+			return last;
+		}
+
+		public int getRowNumber() {
+			return rs.getRowNumber();
+		}
+
+		public List<String> getResultVars() {
+			return rs.getResultVars();
+		}
+
+		public Model getResourceModel() {
+			return rs.getResourceModel();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("SPARQL results are read-only");
+		}
+	}
+
+}
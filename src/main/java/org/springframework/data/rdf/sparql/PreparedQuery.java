@@ -0,0 +1,89 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.syntax.PatternVars;
+
+/**
+ * <code>PreparedQuery</code>
+ * 
+ * A SPARQL query parsed once by SparqlTemplate.prepare() and executed many times with
+ * different variable bindings, similar to the JDBC PreparedStatement.
+ * 
+ * Instances are immutable and can be shared between threads and templates.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class PreparedQuery {
+
+	private final String sparql;
+
+	private final Query query;
+
+	private volatile Set<String> varNames;
+
+	PreparedQuery(String sparql, Query query) {
+		this.sparql = sparql;
+		this.query = query;
+	}
+
+	/**
+	 * <code>getSparql</code>
+	 * @return the query text this was prepared from
+	 */
+	public String getSparql() {
+		return sparql;
+	}
+
+	/**
+	 * <code>getQuery</code>
+	 * @return the parsed query, shared and not to be modified
+	 */
+	public Query getQuery() {
+		return query;
+	}
+
+	/**
+	 * <code>getVarNames</code>
+	 * @return names of all the variables mentioned in the query pattern, i.e. those that can be bound
+	 */
+	public Set<String> getVarNames() {
+		Set<String> names = varNames;
+		if (names == null) {
+			names = new LinkedHashSet<String>();
+			for (Var var : PatternVars.vars(query.getQueryPattern())) {
+				names.add(var.getVarName());
+			}
+			names = Collections.unmodifiableSet(names);
+			varNames = names;
+		}
+		return names;
+	}
+
+	@Override
+	public String toString() {
+		return sparql;
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.Syntax;
+
+/**
+ * <code>QueryCache</code>
+ *
+ * Bounded, thread-safe cache of parsed ARQ <code>Query</code> objects, keyed by the query
+ * text and the syntax it was parsed with.  Only the parse is cached, ARQ compiles the algebra
+ * of every execution.
+ *
+ * Queries handed out by the cache are shared between callers and threads, so they
+ * must be treated as read-only.
+ *
+ * Eviction is least-recently-used by default; with <code>accessOrder</code> set to false
+ * the oldest entry is evicted first regardless of use.
+ *
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class QueryCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+	private final int maximumSize;
+
+	private final Map<Key, Query> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public QueryCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public QueryCache(int maximumSize) {
+		this(maximumSize, true);
+	}
+
+	/**
+	 * Constructor
+	 * @param maximumSize maximum number of queries held before evicting
+	 * @param accessOrder true for least-recently-used eviction, false for first-in first-out
+	 */
+	public QueryCache(final int maximumSize, boolean accessOrder) {
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.entries = new LinkedHashMap<Key, Query>(16, 0.75f, accessOrder) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Query> eldest) {
+				if (size() > maximumSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * <code>getQuery</code>
+	 *
+	 * Returns the parsed query for the text and syntax, parsing and caching it on a miss
+	 *
+	 * @param sparql query text
+	 * @param syntax ARQ syntax to parse with
+	 * @return shared, parsed Query
+	 */
+	public Query getQuery(String sparql, Syntax syntax) {
+		Key key = new Key(sparql, syntax);
+		Query query;
+		synchronized (entries) {
+			query = entries.get(key);
+		}
+		if (query != null) {
+			hits.incrementAndGet();
+			return query;
+		}
+		misses.incrementAndGet();
+		// parse outside the lock, a concurrent miss on the same text only costs a second parse
+		query = QueryFactory.create(sparql, syntax);
+		query.setResultVars();
+		synchronized (entries) {
+			Query existing = entries.get(key);
+			if (existing != null) {
+				return existing;
+			}
+			entries.put(key, query);
+		}
+		return query;
+	}
+
+	/**
+	 * <code>clear</code>
+	 * Removes every cached query, statistics are kept
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * <code>getHitRate</code>
+	 * @return ratio of hits to lookups, 1.0 when nothing has been looked up yet
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 1.0 : (double) h / total;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryCache[size=" + size() + ", maximumSize=" + maximumSize + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	private static final class Key {
+		private final String sparql;
+		private final Syntax syntax;
+		private final int hash;
+
+		Key(String sparql, Syntax syntax) {
+			this.sparql = sparql;
+			this.syntax = syntax;
+			this.hash = 31 * sparql.hashCode() + (syntax == null ? 0 : syntax.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hash == other.hash && sparql.equals(other.sparql)
+					&& (syntax == null ? other.syntax == null : syntax.equals(other.syntax));
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.hp.hpl.jena.query.QueryExecution;
+
+/**
+ * <code>QueryCancellation</code>
+ * 
+ * Handle for cancelling queries from another thread.  Pass it to SparqlTemplate.withCancellation()
+ * and call cancel() to abort every query running under it; they fail with a
+ * SparqlQueryCancelledException, as does any query started after cancel().
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class QueryCancellation {
+
+	private final Set<QueryExecution> running = new HashSet<QueryExecution>();
+
+	private final QueryCancellation parent;
+
+	private volatile boolean cancelled;
+
+	public QueryCancellation() {
+		this(null);
+	}
+
+	/**
+	 * Constructor - handle that is also cancelled when its parent is
+	 * @param parent enclosing handle, may be null
+	 */
+	QueryCancellation(QueryCancellation parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * <code>cancel</code>
+	 * Aborts the running queries and rejects new ones
+	 */
+	public void cancel() {
+		synchronized (running) {
+			cancelled = true;
+			for (QueryExecution qe : running) {
+				qe.abort();
+			}
+		}
+	}
+
+	public boolean isCancelled() {
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+
+	/**
+	 * @return false if already cancelled, in which case the execution is not registered
+	 */
+	boolean register(QueryExecution qe) {
+		if (parent != null && !parent.register(qe)) {
+			return false;
+		}
+		synchronized (running) {
+			if (!cancelled) {
+				running.add(qe);
+				return true;
+			}
+		}
+		if (parent != null) {
+			parent.unregister(qe);
+		}
+		return false;
+	}
+
+	void unregister(QueryExecution qe) {
+		synchronized (running) {
+			running.remove(qe);
+		}
+		if (parent != null) {
+			parent.unregister(qe);
+		}
+	}
+
+}
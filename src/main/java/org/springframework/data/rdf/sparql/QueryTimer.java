@@ -0,0 +1,157 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.List;
+
+import org.springframework.data.rdf.metrics.MetricsSink;
+import org.springframework.data.rdf.metrics.QueryMetrics;
+
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+
+/**
+ * <code>QueryTimer</code>
+ * 
+ * Collects the stage timings of one SparqlTemplate call and hands them to the MetricsSink.
+ * Only created when a sink is configured.  Iteration is timed by wrapping the ResultSet;
+ * whatever is left of the elapsed time after the first row is attributed to mapping.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+final class QueryTimer {
+
+	private final MetricsSink sink;
+	private final String operation;
+	private final String sparql;
+
+	private final long start = System.nanoTime();
+	private long parseNanos;
+	private long executeNanos;
+	private long firstRowNanos = -1;
+	private long iterationNanos;
+	private long executed;
+	private long rows;
+	private boolean failed;
+	private boolean completed;
+
+	QueryTimer(MetricsSink sink, String operation, String sparql) {
+		this.sink = sink;
+		this.operation = operation;
+		this.sparql = sparql;
+	}
+
+	void parsed() {
+		parseNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Marks the end of the execute stage for CONSTRUCT and other non-iterating calls
+	 */
+	void executed() {
+		executed = System.nanoTime();
+		executeNanos = executed - start - parseNanos;
+	}
+
+	/**
+	 * Marks the end of the execute stage and returns a ResultSet timing its iteration
+	 */
+	ResultSet executed(ResultSet rs) {
+		executed();
+		return new TimedResultSet(rs);
+	}
+
+	void rows(long count) {
+		rows = count;
+	}
+
+	void failed() {
+		failed = true;
+	}
+
+	void complete() {
+		if (completed) {
+			return;
+		}
+		completed = true;
+		long end = System.nanoTime();
+		if (executed == 0) {
+			// failed before or during execution
+			executeNanos = end - start - parseNanos;
+			executed = end;
+		}
+		long first = firstRowNanos < 0 ? 0 : firstRowNanos;
+		long map = Math.max(0, end - executed - first - iterationNanos);
+		sink.recordQuery(new QueryMetrics(operation, sparql, parseNanos, executeNanos, first, iterationNanos, map,
+				rows, failed));
+	}
+
+	private class TimedResultSet implements ResultSet {
+		private final ResultSet rs;
+
+		TimedResultSet(ResultSet rs) {
+			this.rs = rs;
+		}
+
+		public boolean hasNext() {
+			long t = System.nanoTime();
+			boolean more = rs.hasNext();
+			long elapsed = System.nanoTime() - t;
+			if (firstRowNanos < 0) {
+				firstRowNanos = elapsed;
+			} else {
+				iterationNanos += elapsed;
+			}
+			return more;
+		}
+
+		public QuerySolution next() {
+			rows++;
+			return rs.next();
+		}
+
+		public QuerySolution nextSolution() {
+			rows++;
+			return rs.nextSolution();
+		}
+
+		public Binding nextBinding() {
+			rows++;
+			return rs.nextBinding();
+		}
+
+		public int getRowNumber() {
+			return rs.getRowNumber();
+		}
+
+		public List<String> getResultVars() {
+			return rs.getResultVars();
+		}
+
+		public Model getResourceModel() {
+			return rs.getResourceModel();
+		}
+
+		public void remove() {
+			rs.remove();
+		}
+	}
+
+}
@@ -0,0 +1,540 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.util.EntityUtils;
+import org.apache.jena.atlas.lib.Closeable;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RiotReader;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.ARQ;
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.engine.binding.BindingMap;
+import com.hp.hpl.jena.sparql.engine.http.QueryExceptionHTTP;
+import com.hp.hpl.jena.sparql.resultset.JSONInput;
+import com.hp.hpl.jena.sparql.resultset.TSVInput;
+import com.hp.hpl.jena.sparql.resultset.XMLInput;
+import com.hp.hpl.jena.sparql.syntax.ElementData;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.util.Context;
+import com.hp.hpl.jena.util.FileManager;
+
+/**
+ * <code>RemoteQueryExecution</code>
+ * 
+ * QueryExecution sending one query to a SparqlEndpoint through its pooled HttpClient.
+ * 
+ * The first result timeout bounds the wait for data from the service, the overall timeout
+ * aborts the request when it expires; either way, as after abort(), reading fails with
+ * ARQ's QueryCancelledException like a local query.  Closing the execution before the
+ * response is fully read drops the connection rather than reading the rest of the response.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+class RemoteQueryExecution implements QueryExecution {
+
+	/** URLs longer than this are sent as POST */
+	private static final int GET_LENGTH_LIMIT = 2000;
+
+	private static final Timer TIMEOUTS = new Timer("sparql-endpoint-timeouts", true);
+
+	private final SparqlEndpoint endpoint;
+	private Query query;
+	private final Context context = ARQ.getContext().copy();
+
+	private long timeout1 = -1;
+	private long timeout2 = -1;
+
+	private volatile HttpRequestBase request;
+	private volatile boolean aborted;
+	private TrackingInputStream content;
+	private String contentType;
+	private TimerTask timeoutTask;
+	private Iterator<Triple> triples;
+
+	RemoteQueryExecution(SparqlEndpoint endpoint, Query query) {
+		this.endpoint = endpoint;
+		this.query = query;
+	}
+
+	public ResultSet execSelect() {
+		try {
+			InputStream in = send(endpoint.getSelectContentType());
+			String type = responseType(endpoint.getSelectContentType());
+			ResultSet rs;
+			if (type.equals(WebContent.contentTypeTextTSV)) {
+				rs = ResultSetFactory.fromTSV(in);
+			} else if (type.equals(WebContent.contentTypeResultsJSON)) {
+				rs = ResultSetFactory.fromJSON(in);
+			} else if (type.equals(WebContent.contentTypeResultsXML) || type.endsWith("/xml")) {
+				rs = ResultSetFactory.fromXML(in);
+			} else {
+				throw new QueryExceptionHTTP("Unsupported SELECT result format: " + type, null);
+			}
+			return new RemoteResultSet(rs);
+		} catch (RuntimeException e) {
+			throw translate(e);
+		}
+	}
+
+	public boolean execAsk() {
+		try {
+			InputStream in = send(endpoint.getAskContentType());
+			String type = responseType(endpoint.getAskContentType());
+			if (type.equals(WebContent.contentTypeTextTSV)) {
+				return TSVInput.booleanFromTSV(in);
+			} else if (type.equals(WebContent.contentTypeResultsJSON)) {
+				return JSONInput.booleanFromJSON(in);
+			}
+			return XMLInput.booleanFromXML(in);
+		} catch (RuntimeException e) {
+			throw translate(e);
+		}
+	}
+
+	public Model execConstruct() {
+		return execConstruct(ModelFactory.createDefaultModel());
+	}
+
+	public Model execConstruct(Model model) {
+		return readModel(model);
+	}
+
+	public Iterator<Triple> execConstructTriples() {
+		return execTriples();
+	}
+
+	public Model execDescribe() {
+		return execDescribe(ModelFactory.createDefaultModel());
+	}
+
+	public Model execDescribe(Model model) {
+		return readModel(model);
+	}
+
+	public Iterator<Triple> execDescribeTriples() {
+		return execTriples();
+	}
+
+	private Model readModel(Model model) {
+		execTriples(StreamRDFLib.graph(model.getGraph()));
+		return model;
+	}
+
+	/**
+	 * <code>execTriples</code>
+	 * Parses the triples of a CONSTRUCT or DESCRIBE into the sink as they arrive
+	 */
+	void execTriples(StreamRDF sink) {
+		try {
+			InputStream in = send(endpoint.getModelContentType());
+			RDFDataMgr.parse(sink, in, responseLang());
+		} catch (RuntimeException e) {
+			throw translate(e);
+		}
+	}
+
+	/**
+	 * <code>execTriples</code>
+	 * Parses the triples of a CONSTRUCT or DESCRIBE as the returned iterator is advanced:
+	 * N-Triples on the caller's thread, other syntaxes on a RIOT parser thread through a
+	 * bounded pipe
+	 */
+	private Iterator<Triple> execTriples() {
+		try {
+			InputStream in = send(endpoint.getModelContentType());
+			final Iterator<Triple> parsed = RiotReader.createIteratorTriples(in, responseLang(), null);
+			triples = parsed;
+			return new Iterator<Triple>() {
+				public boolean hasNext() {
+					try {
+						return parsed.hasNext();
+					} catch (RuntimeException e) {
+						throw translate(e);
+					}
+				}
+
+				public Triple next() {
+					try {
+						return parsed.next();
+					} catch (RuntimeException e) {
+						throw translate(e);
+					}
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		} catch (RuntimeException e) {
+			throw translate(e);
+		}
+	}
+
+	private Lang responseLang() {
+		Lang lang = RDFLanguages.contentTypeToLang(responseType(endpoint.getModelContentType()));
+		return lang != null ? lang : RDFLanguages.contentTypeToLang(endpoint.getModelContentType());
+	}
+
+	/**
+	 * <code>send</code>
+	 * Sends the query and returns the response body, positioned at the start of the results
+	 */
+	private InputStream send(String accept) {
+		if (aborted) {
+			throw new QueryCancelledException();
+		}
+		String sparql = query.toString();
+		String url = endpoint.getServiceUrl();
+		HttpRequestBase req;
+		try {
+			String get = url + (url.indexOf('?') < 0 ? "?" : "&") + "query=" + URLEncoder.encode(sparql, "UTF-8");
+			if (get.length() <= GET_LENGTH_LIMIT) {
+				req = new HttpGet(get);
+			} else {
+				HttpPost post = new HttpPost(url);
+				List<NameValuePair> form = Collections.<NameValuePair>singletonList(new BasicNameValuePair("query", sparql));
+				post.setEntity(new UrlEncodedFormEntity(form, "UTF-8"));
+				req = post;
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		req.setHeader("Accept", accept);
+		if (endpoint.isAllowGZip()) {
+			req.setHeader("Accept-Encoding", "gzip");
+		}
+		int connectTimeout = endpoint.getConnectTimeout();
+		if (connectTimeout >= 0) {
+			HttpConnectionParams.setConnectionTimeout(req.getParams(), connectTimeout);
+		}
+		long readTimeout = timeout1 >= 0 ? timeout1 : endpoint.getReadTimeout();
+		if (readTimeout >= 0) {
+			HttpConnectionParams.setSoTimeout(req.getParams(), (int) readTimeout);
+		}
+		request = req;
+		if (timeout2 >= 0) {
+			timeoutTask = new TimerTask() {
+				public void run() {
+					abort();
+				}
+			};
+			TIMEOUTS.schedule(timeoutTask, timeout2);
+		}
+		try {
+			HttpResponse response = endpoint.getHttpClient().execute(req);
+			HttpEntity entity = response.getEntity();
+			int status = response.getStatusLine().getStatusCode();
+			if (status >= 300) {
+				EntityUtils.consumeQuietly(entity);
+				throw new QueryExceptionHTTP(status, response.getStatusLine().getReasonPhrase());
+			}
+			if (entity == null) {
+				throw new QueryExceptionHTTP(status, "No response body");
+			}
+			contentType = ContentType.getOrDefault(entity).getMimeType();
+			InputStream in = entity.getContent();
+			Header encoding = entity.getContentEncoding();
+			if (encoding != null && encoding.getValue().contains("gzip")) {
+				in = new GZIPInputStream(in);
+			}
+			content = new TrackingInputStream(in);
+			return content;
+		} catch (IOException e) {
+			throw new QueryExceptionHTTP(e);
+		}
+	}
+
+	/**
+	 * <code>responseType</code>
+	 * @return the media type of the response, or the requested one if the service did not say
+	 */
+	private String responseType(String requested) {
+		return contentType == null || contentType.equals("application/octet-stream") ? requested : contentType;
+	}
+
+	/**
+	 * <code>translate</code>
+	 * Failures caused by abort() or a timeout become QueryCancelledException, as in local queries
+	 */
+	private RuntimeException translate(RuntimeException e) {
+		if (e instanceof QueryCancelledException) {
+			return e;
+		}
+		if (aborted) {
+			return cancelled(e);
+		}
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof InterruptedIOException) {
+				return cancelled(e);
+			}
+		}
+		return e;
+	}
+
+	private static QueryCancelledException cancelled(Throwable cause) {
+		QueryCancelledException cancelled = new QueryCancelledException();
+		cancelled.initCause(cause);
+		return cancelled;
+	}
+
+	public void abort() {
+		aborted = true;
+		HttpRequestBase req = request;
+		if (req != null) {
+			req.abort();
+		}
+	}
+
+	public void close() {
+		if (timeoutTask != null) {
+			timeoutTask.cancel();
+		}
+		if (content != null) {
+			if (content.eof) {
+				// fully read, the connection goes back to the pool
+				try {
+					content.close();
+				} catch (IOException e) {
+					request.abort();
+				}
+			} else {
+				request.abort();
+			}
+		}
+		if (triples instanceof Closeable) {
+			// stops a parser thread blocked on a full pipe
+			((Closeable) triples).close();
+		}
+	}
+
+	public void setFileManager(FileManager fm) { }
+
+	/**
+	 * <code>setInitialBinding</code>
+	 * The service cannot take initial bindings, they are sent as a VALUES block, see bind
+	 */
+	public void setInitialBinding(QuerySolution binding) {
+		query = bind(query, binding);
+	}
+
+	/**
+	 * <code>bind</code>
+	 * Restricts the query to the bound values by joining its pattern with a VALUES block of
+	 * them, e.g. SELECT ?z WHERE { VALUES (?p) { (&lt;urn:p&gt;) } { ?x ?p ?z } }.  Unlike
+	 * replacing the variables in the query text this keeps queries projecting a bound variable
+	 * valid.  Blank nodes cannot be sent as values.
+	 * @return a copy of the query, or the query itself when nothing is bound
+	 */
+	static Query bind(Query query, QuerySolution bindings) {
+		ElementData data = new ElementData();
+		BindingMap values = BindingFactory.create();
+		for (Iterator<String> names = bindings.varNames(); names.hasNext(); ) {
+			String name = names.next();
+			RDFNode value = bindings.get(name);
+			if (value == null) {
+				continue;
+			}
+			if (value.isAnon()) {
+				throw new IllegalArgumentException("Blank node bound to ?" + name + " cannot be sent to an endpoint");
+			}
+			Var var = Var.alloc(name);
+			data.add(var);
+			values.add(var, value.asNode());
+		}
+		if (values.isEmpty()) {
+			return query;
+		}
+		data.add(values);
+		Query bound = query.cloneQuery();
+		ElementGroup pattern = new ElementGroup();
+		pattern.addElement(data);
+		if (bound.getQueryPattern() != null) {
+			pattern.addElement(bound.getQueryPattern());
+		}
+		bound.setQueryPattern(pattern);
+		return bound;
+	}
+
+	public Dataset getDataset() {
+		return null;
+	}
+
+	public Context getContext() {
+		return context;
+	}
+
+	public Query getQuery() {
+		return query;
+	}
+
+	public void setTimeout(long timeout, TimeUnit timeoutUnits) {
+		setTimeout(-1, TimeUnit.MILLISECONDS, timeout, timeoutUnits);
+	}
+
+	public void setTimeout(long timeout) {
+		setTimeout(-1, timeout);
+	}
+
+	public void setTimeout(long timeout1, TimeUnit timeUnit1, long timeout2, TimeUnit timeUnit2) {
+		setTimeout(timeout1 < 0 ? -1 : timeUnit1.toMillis(timeout1), timeout2 < 0 ? -1 : timeUnit2.toMillis(timeout2));
+	}
+
+	public void setTimeout(long timeout1, long timeout2) {
+		this.timeout1 = timeout1;
+		this.timeout2 = timeout2;
+	}
+
+	public long getTimeout1() {
+		return timeout1;
+	}
+
+	public long getTimeout2() {
+		return timeout2;
+	}
+
+	/**
+	 * <code>TrackingInputStream</code>
+	 * Notes whether the response was read to the end
+	 */
+	private static final class TrackingInputStream extends FilterInputStream {
+		volatile boolean eof;
+
+		TrackingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b < 0) {
+				eof = true;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n < 0) {
+				eof = true;
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * <code>RemoteResultSet</code>
+	 * Streams rows from the response, translating failures caused by abort() or a timeout
+	 */
+	private final class RemoteResultSet implements ResultSet {
+		private final ResultSet rs;
+
+		RemoteResultSet(ResultSet rs) {
+			this.rs = rs;
+		}
+
+		public boolean hasNext() {
+			try {
+				return rs.hasNext();
+			} catch (RuntimeException e) {
+				throw translate(e);
+			}
+		}
+
+		public QuerySolution next() {
+			return nextSolution();
+		}
+
+		public QuerySolution nextSolution() {
+			try {
+				return rs.nextSolution();
+			} catch (RuntimeException e) {
+				throw translate(e);
+			}
+		}
+
+		public Binding nextBinding() {
+			try {
+				return rs.nextBinding();
+			} catch (RuntimeException e) {
+				throw translate(e);
+			}
+		}
+
+		public int getRowNumber() {
+			return rs.getRowNumber();
+		}
+
+		public List<String> getResultVars() {
+			return rs.getResultVars();
+		}
+
+		public Model getResourceModel() {
+			return rs.getResourceModel();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("SPARQL results are read-only");
+		}
+	}
+
+}
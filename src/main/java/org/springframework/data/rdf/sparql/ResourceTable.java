@@ -0,0 +1,291 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+
+/**
+ * <code>ResourceTable</code>
+ * 
+ * Property values of many resources, as returned by SparqlTemplate.execFetch().  Values are
+ * grouped per subject and per property, subjects in the order they were requested.
+ * 
+ * Storage is one array of cells per subject that has values, a cell holding a single Node,
+ * a pair of them or, from three values on, a list, so that the usual single-valued properties
+ * cost no list per value and many-valued ones grow in amortized constant time.
+ * Instances are not thread-safe while being filled and read-only afterwards.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public final class ResourceTable {
+
+	private final String[] subjects;
+
+	private final Node[] subjectNodes;
+
+	private final Map<String, Integer> subjectIndex;
+
+	private final List<String> properties = new ArrayList<String>();
+
+	private final Map<Node, Integer> propertyIndex = new HashMap<Node, Integer>();
+
+	private final boolean allProperties;
+
+	private final Object[][] cells;
+
+	private int valueCount;
+
+	/**
+	 * Constructor
+	 * @param subjects URIs of the resources, duplicates are kept once
+	 * @param properties URIs of the properties, null or empty to collect every property found
+	 */
+	ResourceTable(Collection<String> subjects, List<String> properties) {
+		subjectIndex = new LinkedHashMap<String, Integer>(subjects.size() * 2);
+		for (String subject : subjects) {
+			if (!subjectIndex.containsKey(subject)) {
+				subjectIndex.put(subject, subjectIndex.size());
+			}
+		}
+		this.subjects = subjectIndex.keySet().toArray(new String[subjectIndex.size()]);
+		this.subjectNodes = new Node[this.subjects.length];
+		for (int i = 0; i < subjectNodes.length; i++) {
+			subjectNodes[i] = NodeFactory.createURI(this.subjects[i]);
+		}
+		this.cells = new Object[this.subjects.length][];
+		this.allProperties = properties == null || properties.isEmpty();
+		if (!allProperties) {
+			for (String property : properties) {
+				property(NodeFactory.createURI(property));
+			}
+		}
+	}
+
+	Node getSubjectNode(int subject) {
+		return subjectNodes[subject];
+	}
+
+	boolean isAllProperties() {
+		return allProperties;
+	}
+
+	/**
+	 * @return the property nodes, in column order
+	 */
+	List<Node> getPropertyNodes() {
+		List<Node> nodes = new ArrayList<Node>(properties.size());
+		for (String property : properties) {
+			nodes.add(NodeFactory.createURI(property));
+		}
+		return nodes;
+	}
+
+	private int property(Node predicate) {
+		Integer index = propertyIndex.get(predicate);
+		if (index == null) {
+			index = properties.size();
+			properties.add(predicate.getURI());
+			propertyIndex.put(predicate, index);
+		}
+		return index;
+	}
+
+	/**
+	 * Adds a value, ignoring subjects and, unless collecting all of them, properties not asked for
+	 */
+	void add(int subject, Node predicate, Node object) {
+		int p;
+		if (allProperties) {
+			p = property(predicate);
+		} else {
+			Integer index = propertyIndex.get(predicate);
+			if (index == null) {
+				return;
+			}
+			p = index;
+		}
+		Object[] row = cells[subject];
+		if (row == null) {
+			row = new Object[Math.max(properties.size(), 4)];
+			cells[subject] = row;
+		} else if (p >= row.length) {
+			row = Arrays.copyOf(row, Math.max(p + 1, row.length * 2));
+			cells[subject] = row;
+		}
+		Object cell = row[p];
+		if (cell == null) {
+			row[p] = object;
+		} else if (cell instanceof Node) {
+			row[p] = new Node[] { (Node) cell, object };
+		} else if (cell instanceof Node[]) {
+			Node[] pair = (Node[]) cell;
+			List<Node> values = new ArrayList<Node>(4);
+			values.add(pair[0]);
+			values.add(pair[1]);
+			values.add(object);
+			row[p] = values;
+		} else {
+			@SuppressWarnings("unchecked")
+			List<Node> values = (List<Node>) cell;
+			values.add(object);
+		}
+		valueCount++;
+	}
+
+	void add(Node subject, Node predicate, Node object) {
+		if (subject != null && subject.isURI()) {
+			Integer index = subjectIndex.get(subject.getURI());
+			if (index != null) {
+				add(index, predicate, object);
+			}
+		}
+	}
+
+	/**
+	 * <code>size</code>
+	 * @return number of subjects, with or without values
+	 */
+	public int size() {
+		return subjects.length;
+	}
+
+	public List<String> getSubjects() {
+		return Collections.unmodifiableList(Arrays.asList(subjects));
+	}
+
+	/**
+	 * <code>getProperties</code>
+	 * @return the properties asked for, or those found when fetching all of them
+	 */
+	public List<String> getProperties() {
+		return Collections.unmodifiableList(properties);
+	}
+
+	/**
+	 * <code>getValueCount</code>
+	 * @return number of values over all subjects and properties
+	 */
+	public int getValueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * <code>indexOf</code>
+	 * @return position of the subject, -1 if it was not requested
+	 */
+	public int indexOf(String subject) {
+		Integer index = subjectIndex.get(subject);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * <code>contains</code>
+	 * @return true when the subject has a value for at least one of the properties
+	 */
+	public boolean contains(String subject) {
+		int i = indexOf(subject);
+		return i >= 0 && cells[i] != null;
+	}
+
+	private Object cell(String subject, String property) {
+		int i = indexOf(subject);
+		if (i < 0 || cells[i] == null) {
+			return null;
+		}
+		Integer p = propertyIndex.get(NodeFactory.createURI(property));
+		return p == null || p >= cells[i].length ? null : cells[i][p];
+	}
+
+	/**
+	 * <code>getNode</code>
+	 * @return the first value of the property, null if none
+	 */
+	public Node getNode(String subject, String property) {
+		Object cell = cell(subject, property);
+		return cell == null || cell instanceof Node ? (Node) cell : nodes(cell).get(0);
+	}
+
+	/**
+	 * <code>getNodes</code>
+	 * @return every value of the property, empty if none
+	 */
+	public List<Node> getNodes(String subject, String property) {
+		return nodes(cell(subject, property));
+	}
+
+	/**
+	 * <code>getValue</code>
+	 * @return Java value of the first value of the property when it is a literal (e.g. Integer,
+	 * XSDDateTime, String), null if none or not a literal
+	 */
+	public Object getValue(String subject, String property) {
+		Node n = getNode(subject, property);
+		return n != null && n.isLiteral() ? n.getLiteralValue() : null;
+	}
+
+	/**
+	 * <code>getValues</code>
+	 * @return every value of the subject, grouped per property in column order; empty if none
+	 */
+	public Map<String, List<Node>> getValues(String subject) {
+		int i = indexOf(subject);
+		if (i < 0 || cells[i] == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, List<Node>> values = new LinkedHashMap<String, List<Node>>();
+		Object[] row = cells[i];
+		for (int p = 0; p < row.length; p++) {
+			if (row[p] != null) {
+				values.put(properties.get(p), nodes(row[p]));
+			}
+		}
+		return values;
+	}
+
+	private static List<Node> nodes(Object cell) {
+		if (cell == null) {
+			return Collections.emptyList();
+		}
+		if (cell instanceof Node) {
+			return Collections.singletonList((Node) cell);
+		}
+		if (cell instanceof Node[]) {
+			return Collections.unmodifiableList(Arrays.asList((Node[]) cell));
+		}
+		@SuppressWarnings("unchecked")
+		List<Node> values = (List<Node>) cell;
+		return Collections.unmodifiableList(values);
+	}
+
+	@Override
+	public String toString() {
+		return "ResourceTable[subjects=" + subjects.length + ", properties=" + properties.size()
+				+ ", values=" + valueCount + "]";
+	}
+
+}
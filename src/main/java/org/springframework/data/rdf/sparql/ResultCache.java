@@ -0,0 +1,316 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.data.rdf.jena.ModelVersionTracker;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.QuerySolution;
+
+/**
+ * <code>ResultCache</code>
+ *
+ * Bounded, thread-safe cache of query results for SparqlTemplate, keyed by the query text
+ * and its bindings.  Entries are evicted least-recently-used once there are more than
+ * <code>maximumSize</code> of them or they hold more than <code>maximumWeight</code> RDF
+ * terms (one per cell of a SELECT, three per triple of a CONSTRUCT), and expire after an
+ * optional time to live.
+ *
+ * The cache belongs to one model: it is emptied whenever the model's ModelVersionTracker
+ * moves on, so results are never older than the last change the tracker has seen.  Changes
+ * the tracker cannot see, e.g. of a remote endpoint, are only picked up after the time to live.
+ *
+ * Cached results are shared between callers and threads and are handed out read-only.
+ *
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class ResultCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 100;
+
+	private final ModelVersionTracker versionTracker;
+
+	private final int maximumSize;
+
+	private final long maximumWeight;
+
+	private final long timeToLive;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	private long weight;
+
+	private long version;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public ResultCache(ModelVersionTracker versionTracker) {
+		this(versionTracker, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	public ResultCache(ModelVersionTracker versionTracker, int maximumSize) {
+		this(versionTracker, maximumSize, Long.MAX_VALUE, -1, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Constructor
+	 * @param versionTracker tracker of the model whose results are cached
+	 * @param maximumSize maximum number of results held before evicting
+	 * @param maximumWeight maximum number of RDF terms held before evicting, larger results are not cached
+	 * @param timeToLive time after which a result is executed again even if the model did not change, -1 for none
+	 * @param unit unit of timeToLive
+	 */
+	public ResultCache(ModelVersionTracker versionTracker, int maximumSize, long maximumWeight, long timeToLive, TimeUnit unit) {
+		if (versionTracker == null) {
+			throw new IllegalArgumentException("versionTracker is required");
+		}
+		if (maximumSize <= 0) {
+			throw new IllegalArgumentException("maximumSize must be positive: " + maximumSize);
+		}
+		if (maximumWeight <= 0) {
+			throw new IllegalArgumentException("maximumWeight must be positive: " + maximumWeight);
+		}
+		this.versionTracker = versionTracker;
+		this.maximumSize = maximumSize;
+		this.maximumWeight = maximumWeight;
+		this.timeToLive = timeToLive < 0 ? -1 : unit.toNanos(timeToLive);
+		this.version = versionTracker.getVersion();
+	}
+
+	/**
+	 * <code>getVersion</code>
+	 * @return the model version a result about to be executed is valid for, read before executing it
+	 */
+	long getVersion() {
+		return versionTracker.getVersion();
+	}
+
+	/**
+	 * <code>get</code>
+	 * @param version current model version, see getVersion()
+	 * @return the cached result, null on a miss
+	 */
+	Object get(Key key, long version) {
+		synchronized (entries) {
+			if (sync(version)) {
+				Entry entry = entries.get(key);
+				if (entry != null && (timeToLive < 0 || System.nanoTime() - entry.created < timeToLive)) {
+					hits.incrementAndGet();
+					return entry.value;
+				}
+				if (entry != null) {
+					remove(key);
+				}
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * <code>put</code>
+	 * Caches a result unless the model changed since version was read
+	 * @param weight number of RDF terms the result holds
+	 * @param version model version read before the result was executed
+	 */
+	void put(Key key, Object value, long weight, long version) {
+		if (weight > maximumWeight) {
+			return;
+		}
+		synchronized (entries) {
+			if (!sync(version) || version != versionTracker.getVersion()) {
+				return;
+			}
+			Entry previous = entries.put(key, new Entry(value, weight));
+			this.weight += weight - (previous == null ? 0 : previous.weight);
+			for (Iterator<Entry> it = entries.values().iterator(); it.hasNext() && (entries.size() > maximumSize || this.weight > maximumWeight); ) {
+				this.weight -= it.next().weight;
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * <code>sync</code>
+	 * Drops every entry once the model has moved past the version they were cached at
+	 * @return false if the version given is already outdated
+	 */
+	private boolean sync(long current) {
+		if (current > version) {
+			invalidations.addAndGet(entries.size());
+			entries.clear();
+			weight = 0;
+			version = current;
+		}
+		return current == version;
+	}
+
+	private void remove(Key key) {
+		Entry entry = entries.remove(key);
+		if (entry != null) {
+			weight -= entry.weight;
+		}
+	}
+
+	/**
+	 * <code>clear</code>
+	 * Removes every cached result, statistics are kept
+	 */
+	public void clear() {
+		synchronized (entries) {
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * <code>getWeight</code>
+	 * @return number of RDF terms currently held, a measure of the memory used
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	public ModelVersionTracker getVersionTracker() {
+		return versionTracker;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * <code>getInvalidationCount</code>
+	 * @return number of results dropped because the model changed
+	 */
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+
+	/**
+	 * <code>getHitRate</code>
+	 * @return ratio of hits to lookups, 1.0 when nothing has been looked up yet
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 1.0 : (double) h / total;
+	}
+
+	@Override
+	public String toString() {
+		return "ResultCache[size=" + size() + ", weight=" + getWeight() + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+				+ ", invalidations=" + getInvalidationCount() + "]";
+	}
+
+	/**
+	 * <code>key</code>
+	 * @param form kind of result, queries run for different kinds of result are cached apart
+	 */
+	static Key key(String form, String sparql, QuerySolution bindings) {
+		Map<String, Node> values = null;
+		if (bindings != null) {
+			values = new TreeMap<String, Node>();
+			for (Iterator<String> it = bindings.varNames(); it.hasNext(); ) {
+				String var = it.next();
+				values.put(var, bindings.get(var).asNode());
+			}
+		}
+		return new Key(form, sparql, values);
+	}
+
+	static final class Key {
+		private final String form;
+		private final String sparql;
+		private final Map<String, Node> bindings;
+		private final int hash;
+
+		Key(String form, String sparql, Map<String, Node> bindings) {
+			this.form = form;
+			this.sparql = sparql;
+			this.bindings = bindings;
+			this.hash = 31 * (31 * form.hashCode() + sparql.hashCode()) + (bindings == null ? 0 : bindings.hashCode());
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hash == other.hash && form.equals(other.form) && sparql.equals(other.sparql)
+					&& (bindings == null ? other.bindings == null : bindings.equals(other.bindings));
+		}
+	}
+
+	private static final class Entry {
+		final Object value;
+		final long weight;
+		final long created = System.nanoTime();
+
+		Entry(Object value, long weight) {
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+
+}
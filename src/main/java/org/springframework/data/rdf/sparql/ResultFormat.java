@@ -0,0 +1,58 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+/**
+ * <code>ResultFormat</code>
+ * 
+ * Serializations of SELECT results written by SparqlTemplate.execSelect() to a stream or channel
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public enum ResultFormat {
+
+	/**
+	 * SPARQL 1.1 Query Results JSON Format
+	 */
+	JSON("application/sparql-results+json"),
+
+	/**
+	 * SPARQL 1.1 Query Results CSV Format, values without their type or language
+	 */
+	CSV("text/csv"),
+
+	/**
+	 * SPARQL 1.1 Query Results TSV Format, values in Turtle syntax
+	 */
+	TSV("text/tab-separated-values");
+
+	private final String contentType;
+
+	private ResultFormat(String contentType) {
+		this.contentType = contentType;
+	}
+
+	/**
+	 * <code>getContentType</code>
+	 * @return media type to send the results with, e.g. as an HTTP Content-Type
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+}
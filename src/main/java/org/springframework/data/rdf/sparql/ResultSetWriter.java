@@ -0,0 +1,363 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import org.apache.jena.riot.out.NodeFmtLib;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+
+/**
+ * <code>ResultSetWriter</code>
+ * 
+ * Writes the rows of a ResultSet as they are read, in one of the ResultFormats.  Rows are
+ * taken as ARQ Bindings and their terms encoded to UTF-8 straight into one ByteBuffer, which
+ * is handed to the channel or stream whenever it fills up, so memory does not grow with the
+ * number of rows and no QuerySolution, Map or String is created per row.
+ * 
+ * Not thread-safe, one writer per result set.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+final class ResultSetWriter {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private final OutputStream out;
+
+	private final WritableByteChannel channel;
+
+	ResultSetWriter(OutputStream out) {
+		this.out = out;
+		this.channel = null;
+	}
+
+	ResultSetWriter(WritableByteChannel channel) {
+		this.out = null;
+		this.channel = channel;
+	}
+
+	/**
+	 * <code>write</code>
+	 * Writes every remaining row and flushes, leaving the stream or channel open
+	 * @return number of rows written
+	 */
+	long write(ResultSet rs, ResultFormat format) throws IOException {
+		List<String> names = rs.getResultVars();
+		Var[] vars = new Var[names.size()];
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = Var.alloc(names.get(i));
+		}
+		long rows = 0;
+		switch (format) {
+		case JSON:
+			ascii("{ \"head\": { \"vars\": [");
+			for (int i = 0; i < vars.length; i++) {
+				ascii(i == 0 ? " " : ", ");
+				jsonString(names.get(i));
+			}
+			ascii(" ] },\n  \"results\": { \"bindings\": [");
+			while (rs.hasNext()) {
+				ascii(rows++ == 0 ? "\n    {" : ",\n    {");
+				jsonRow(rs.nextBinding(), vars);
+				put('}');
+			}
+			ascii("\n  ] }\n}\n");
+			break;
+		case CSV:
+			for (int i = 0; i < vars.length; i++) {
+				if (i > 0) {
+					put(',');
+				}
+				csvField(names.get(i));
+			}
+			ascii("\r\n");
+			while (rs.hasNext()) {
+				Binding b = rs.nextBinding();
+				for (int i = 0; i < vars.length; i++) {
+					if (i > 0) {
+						put(',');
+					}
+					Node n = b.get(vars[i]);
+					if (n != null) {
+						csvField(n.isLiteral() ? n.getLiteralLexicalForm() : n.isURI() ? n.getURI() : "_:" + NodeFmtLib.encodeBNodeLabel(n.getBlankNodeLabel()));
+					}
+				}
+				ascii("\r\n");
+				rows++;
+			}
+			break;
+		case TSV:
+			for (int i = 0; i < vars.length; i++) {
+				if (i > 0) {
+					put('\t');
+				}
+				put('?');
+				text(names.get(i));
+			}
+			put('\n');
+			while (rs.hasNext()) {
+				Binding b = rs.nextBinding();
+				for (int i = 0; i < vars.length; i++) {
+					if (i > 0) {
+						put('\t');
+					}
+					Node n = b.get(vars[i]);
+					if (n != null) {
+						tsvTerm(n);
+					}
+				}
+				put('\n');
+				rows++;
+			}
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported format " + format);
+		}
+		drain();
+		if (out != null) {
+			out.flush();
+		}
+		return rows;
+	}
+
+	private void jsonRow(Binding b, Var[] vars) throws IOException {
+		boolean first = true;
+		for (Var var : vars) {
+			Node n = b.get(var);
+			if (n == null) {
+				continue;
+			}
+			ascii(first ? " " : ", ");
+			first = false;
+			jsonString(var.getVarName());
+			if (n.isURI()) {
+				ascii(": { \"type\": \"uri\", \"value\": ");
+				jsonString(n.getURI());
+			} else if (n.isBlank()) {
+				ascii(": { \"type\": \"bnode\", \"value\": ");
+				jsonString(n.getBlankNodeLabel());
+			} else {
+				ascii(": { \"type\": \"literal\", \"value\": ");
+				jsonString(n.getLiteralLexicalForm());
+				String lang = n.getLiteralLanguage();
+				String datatype = n.getLiteralDatatypeURI();
+				if (lang != null && lang.length() > 0) {
+					ascii(", \"xml:lang\": ");
+					jsonString(lang);
+				} else if (datatype != null) {
+					ascii(", \"datatype\": ");
+					jsonString(datatype);
+				}
+			}
+			ascii(" }");
+		}
+		if (!first) {
+			put(' ');
+		}
+	}
+
+	private void ascii(String s) throws IOException {
+		for (int i = 0, n = s.length(); i < n; i++) {
+			put(s.charAt(i));
+		}
+	}
+
+	private void jsonString(String s) throws IOException {
+		put('"');
+		for (int i = 0, n = s.length(); i < n; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				ascii("\\\"");
+				break;
+			case '\\':
+				ascii("\\\\");
+				break;
+			case '\n':
+				ascii("\\n");
+				break;
+			case '\r':
+				ascii("\\r");
+				break;
+			case '\t':
+				ascii("\\t");
+				break;
+			case '\b':
+				ascii("\\b");
+				break;
+			case '\f':
+				ascii("\\f");
+				break;
+			default:
+				if (c < 0x20) {
+					ascii("\\u00");
+					put(HEX[c >> 4]);
+					put(HEX[c & 0xF]);
+				} else {
+					i = encode(s, i);
+				}
+			}
+		}
+		put('"');
+	}
+
+	private void csvField(String s) throws IOException {
+		boolean quote = false;
+		for (int i = 0, n = s.length(); i < n && !quote; i++) {
+			char c = s.charAt(i);
+			quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!quote) {
+			text(s);
+			return;
+		}
+		put('"');
+		for (int i = 0, n = s.length(); i < n; i++) {
+			if (s.charAt(i) == '"') {
+				put('"');
+			}
+			i = encode(s, i);
+		}
+		put('"');
+	}
+
+	private void tsvTerm(Node n) throws IOException {
+		if (n.isURI()) {
+			put('<');
+			text(n.getURI());
+			put('>');
+		} else if (n.isBlank()) {
+			// Jena's own labels are not valid in Turtle
+			ascii("_:");
+			text(NodeFmtLib.encodeBNodeLabel(n.getBlankNodeLabel()));
+		} else {
+			put('"');
+			String lexical = n.getLiteralLexicalForm();
+			for (int i = 0, len = lexical.length(); i < len; i++) {
+				char c = lexical.charAt(i);
+				switch (c) {
+				case '"':
+					ascii("\\\"");
+					break;
+				case '\\':
+					ascii("\\\\");
+					break;
+				case '\n':
+					ascii("\\n");
+					break;
+				case '\r':
+					ascii("\\r");
+					break;
+				case '\t':
+					ascii("\\t");
+					break;
+				default:
+					i = encode(lexical, i);
+				}
+			}
+			put('"');
+			String lang = n.getLiteralLanguage();
+			String datatype = n.getLiteralDatatypeURI();
+			if (lang != null && lang.length() > 0) {
+				put('@');
+				text(lang);
+			} else if (datatype != null) {
+				ascii("^^<");
+				text(datatype);
+				put('>');
+			}
+		}
+	}
+
+	private void text(String s) throws IOException {
+		for (int i = 0, n = s.length(); i < n; i++) {
+			i = encode(s, i);
+		}
+	}
+
+	/**
+	 * <code>encode</code>
+	 * Puts the UTF-8 bytes of the character at i, a surrogate pair taking two chars
+	 * @return index of the last char consumed
+	 */
+	private int encode(String s, int i) throws IOException {
+		char c = s.charAt(i);
+		if (c < 0x80) {
+			put(c);
+			return i;
+		}
+		if (buffer.remaining() < 4) {
+			drain();
+		}
+		if (c < 0x800) {
+			buffer.put((byte) (0xC0 | (c >> 6)));
+			buffer.put((byte) (0x80 | (c & 0x3F)));
+			return i;
+		}
+		if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+			int cp = Character.toCodePoint(c, s.charAt(i + 1));
+			buffer.put((byte) (0xF0 | (cp >> 18)));
+			buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+			buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+			buffer.put((byte) (0x80 | (cp & 0x3F)));
+			return i + 1;
+		}
+		if (Character.isSurrogate(c)) {
+			// unpaired surrogate, not encodable
+			put('?');
+			return i;
+		}
+		buffer.put((byte) (0xE0 | (c >> 12)));
+		buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+		buffer.put((byte) (0x80 | (c & 0x3F)));
+		return i;
+	}
+
+	private void put(char ascii) throws IOException {
+		if (!buffer.hasRemaining()) {
+			drain();
+		}
+		buffer.put((byte) ascii);
+	}
+
+	private void drain() throws IOException {
+		buffer.flip();
+		if (channel != null) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		} else {
+			out.write(buffer.array(), 0, buffer.limit());
+		}
+		buffer.clear();
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import com.hp.hpl.jena.query.ResultSet;
+
+/**
+ * <code>RowMapperAdapter<T></code>
+ * 
+ * Runs a SolutionRowMapper<T> wherever a SolutionMapper<T> is expected, one adapter per query
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+class RowMapperAdapter<T> implements SolutionMapper<T> {
+
+	private final SolutionRowMapper<T> mapper;
+
+	private SolutionRow row;
+
+	RowMapperAdapter(SolutionRowMapper<T> mapper) {
+		this.mapper = mapper;
+	}
+
+	public T mapSelect(ResultSet rs, int rowNum) {
+		if (row == null) {
+			row = new SolutionRow(rs.getResultVars());
+		}
+		row.setBinding(rs.nextBinding());
+		return mapper.mapRow(row, rowNum);
+	}
+
+}
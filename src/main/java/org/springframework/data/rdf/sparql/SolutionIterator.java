@@ -0,0 +1,124 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.NoSuchElementException;
+
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.util.iterator.ClosableIterator;
+
+/**
+ * <code>SolutionIterator<T></code>
+ *
+ * Lazily maps the rows of a SELECT through a SolutionMapper<T>, one row per call to next().
+ *
+ * The underlying QueryExecution is closed when the last row has been read or when
+ * close() is called, whichever comes first.  Callers that stop early must call close().
+ * Until then the model's read lock is held by the thread that started the query, so the
+ * iterator must be closed on that thread and that thread must not write to the model.
+ *
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class SolutionIterator<T> implements ClosableIterator<T> {
+
+	private final QueryExecution qe;
+	private final ResultSet rs;
+	private final SolutionMapper<T> mapper;
+	private final QueryTimer timer;
+	private final SparqlTemplate template;
+	private boolean closed;
+
+	SolutionIterator(QueryExecution qe, SolutionMapper<T> mapper, QueryTimer timer, SparqlTemplate template) {
+		this.qe = qe;
+		this.mapper = mapper;
+		this.timer = timer;
+		this.template = template;
+		try {
+			ResultSet results = qe.execSelect();
+			this.rs = timer == null ? results : timer.executed(results);
+		} catch (RuntimeException e) {
+			failed();
+			close();
+			throw SparqlTemplate.translate(e, template.getCancellation());
+		}
+	}
+
+	public boolean hasNext() {
+		if (closed) {
+			return false;
+		}
+		boolean more;
+		try {
+			more = rs.hasNext();
+		} catch (RuntimeException e) {
+			failed();
+			close();
+			throw SparqlTemplate.translate(e, template.getCancellation());
+		}
+		if (!more) {
+			close();
+		}
+		return more;
+	}
+
+	public T next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		try {
+			return mapper.mapSelect(rs, rs.getRowNumber());
+		} catch (RuntimeException e) {
+			failed();
+			close();
+			throw SparqlTemplate.translate(e, template.getCancellation());
+		}
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("SPARQL results are read-only");
+	}
+
+	/**
+	 * <code>close</code>
+	 * Releases the query execution, further calls to hasNext() return false
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			try {
+				template.release(qe);
+			} finally {
+				if (timer != null) {
+					timer.complete();
+				}
+			}
+		}
+	}
+
+	private void failed() {
+		if (timer != null) {
+			timer.failed();
+		}
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+}
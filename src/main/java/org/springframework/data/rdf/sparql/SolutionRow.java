@@ -0,0 +1,136 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.List;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+
+/**
+ * <code>SolutionRow</code>
+ * 
+ * Cursor over the rows of a SELECT handed to a SolutionRowMapper.  Columns are addressed by
+ * their position in the SELECT clause; indexOf() resolves a name to its position, which a
+ * mapper can look up on the first row and reuse.  Unbound columns are null.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public final class SolutionRow {
+
+	private final Var[] vars;
+
+	private Binding binding;
+
+	SolutionRow(List<String> varNames) {
+		vars = new Var[varNames.size()];
+		for (int i = 0; i < vars.length; i++) {
+			vars[i] = Var.alloc(varNames.get(i));
+		}
+	}
+
+	/**
+	 * Moves to the next row
+	 */
+	void setBinding(Binding binding) {
+		this.binding = binding;
+	}
+
+	/**
+	 * <code>size</code>
+	 * @return number of columns
+	 */
+	public int size() {
+		return vars.length;
+	}
+
+	public String getVarName(int index) {
+		return vars[index].getVarName();
+	}
+
+	/**
+	 * <code>indexOf</code>
+	 * @param varName variable name without the leading ?
+	 * @return position of the column, -1 if the query does not project it
+	 */
+	public int indexOf(String varName) {
+		for (int i = 0; i < vars.length; i++) {
+			if (vars[i].getVarName().equals(varName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * <code>get</code>
+	 * @param index column position
+	 * @return the bound Node, null if unbound
+	 */
+	public Node get(int index) {
+		return binding.get(vars[index]);
+	}
+
+	public boolean isBound(int index) {
+		return binding.get(vars[index]) != null;
+	}
+
+	/**
+	 * <code>getURI</code>
+	 * @return the URI of the column, null if unbound or not a URI
+	 */
+	public String getURI(int index) {
+		Node n = binding.get(vars[index]);
+		return n != null && n.isURI() ? n.getURI() : null;
+	}
+
+	/**
+	 * <code>getLexicalForm</code>
+	 * @return lexical form of a literal, the URI of a resource or the label of a blank node, null if unbound
+	 */
+	public String getLexicalForm(int index) {
+		Node n = binding.get(vars[index]);
+		if (n == null) {
+			return null;
+		}
+		if (n.isLiteral()) {
+			return n.getLiteralLexicalForm();
+		}
+		return n.isURI() ? n.getURI() : n.getBlankNodeLabel();
+	}
+
+	/**
+	 * <code>getValue</code>
+	 * @return Java value of a typed literal (e.g. Integer, XSDDateTime), the lexical form of a plain one,
+	 * null if unbound or not a literal
+	 */
+	public Object getValue(int index) {
+		Node n = binding.get(vars[index]);
+		return n != null && n.isLiteral() ? n.getLiteralValue() : null;
+	}
+
+	/**
+	 * <code>getBinding</code>
+	 * @return ARQ's binding of the current row
+	 */
+	public Binding getBinding() {
+		return binding;
+	}
+
+}
@@ -0,0 +1,43 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+/**
+ * <code>SolutionRowMapper<T></code>
+ * 
+ * Positional counterpart of SolutionMapper<T>.  The projected variables are resolved once per
+ * query and each row is presented through the same SolutionRow, giving index based access to
+ * the bound Nodes with no per-row QuerySolution, map or iterator.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public interface SolutionRowMapper<T> {
+
+	/**
+	 * <code>mapRow</code>
+	 * 
+	 * Maps the current row to an object of type T.  The row object is reused for every row of
+	 * the query, so it must not be kept beyond the call.
+	 * 
+	 * @param row the current row, columns in the order of the SELECT clause
+	 * @param rowNum number of the row, starting at 0
+	 * @return template type T
+	 */
+	T mapRow(SolutionRow row, int rowNum);
+
+}
@@ -0,0 +1,436 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TimeZone;
+
+import com.hp.hpl.jena.datatypes.xsd.XSDDateTime;
+import com.hp.hpl.jena.graph.Node;
+
+/**
+ * <code>SolutionTable</code>
+ * 
+ * Compact, read-only result of a SELECT, returned by SparqlTemplate.execSelectTable.  The
+ * variable names are held once for the whole table and values are stored by column:
+ * integer, floating point, boolean and UTC dateTime literals in primitive arrays, everything
+ * else (URIs and blank nodes as Strings, other literals as their Java values) in an object
+ * array.  A column falls back to objects when its values are of mixed kinds.
+ * 
+ * The table is also a List of read-only Maps with exactly the keys and values
+ * execSelectGenericMap produces, so it can replace that result without changes to callers.
+ * The maps are views created on access and hold no copy of the data.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public final class SolutionTable extends AbstractList<Map<String, Object>> implements RandomAccess {
+
+	private final String[] varNames;
+
+	private final Column[] columns;
+
+	private int rows;
+
+	SolutionTable(List<String> varNames) {
+		this.varNames = varNames.toArray(new String[varNames.size()]);
+		this.columns = new Column[this.varNames.length];
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new Column();
+		}
+	}
+
+	/**
+	 * Appends a row, values in the order of the variable names
+	 */
+	void addRow(SolutionRow row) {
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].add(rows, row.get(i));
+		}
+		rows++;
+	}
+
+	/**
+	 * Releases the spare capacity of the columns once all rows are added
+	 */
+	void trim() {
+		for (Column column : columns) {
+			column.trim(rows);
+		}
+	}
+
+	/**
+	 * <code>size</code>
+	 * @return number of rows
+	 */
+	@Override
+	public int size() {
+		return rows;
+	}
+
+	public int getColumnCount() {
+		return varNames.length;
+	}
+
+	public List<String> getVarNames() {
+		return Collections.unmodifiableList(Arrays.asList(varNames));
+	}
+
+	/**
+	 * <code>indexOf</code>
+	 * @param varName variable name without the leading ?
+	 * @return column position, -1 if the query does not project it
+	 */
+	public int indexOf(String varName) {
+		for (int i = 0; i < varNames.length; i++) {
+			if (varNames[i].equals(varName)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int column(String varName) {
+		int column = indexOf(varName);
+		if (column < 0) {
+			throw new IllegalArgumentException("No such variable: " + varName);
+		}
+		return column;
+	}
+
+	private void check(int row) {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+		}
+	}
+
+	public boolean isBound(int row, int column) {
+		check(row);
+		return columns[column].bound.get(row);
+	}
+
+	/**
+	 * <code>getValue</code>
+	 * @return the value as execSelectGenericMap would return it, null if unbound
+	 */
+	public Object getValue(int row, int column) {
+		check(row);
+		return columns[column].get(row);
+	}
+
+	public Object getValue(int row, String varName) {
+		return getValue(row, column(varName));
+	}
+
+	/**
+	 * <code>getLong</code>
+	 * Reads a numeric column without boxing when it is stored as integers
+	 * @return the value as a long, 0 if unbound
+	 * @throws ClassCastException if the value is not numeric
+	 */
+	public long getLong(int row, int column) {
+		check(row);
+		Column c = columns[column];
+		if (c.kind == Column.LONG) {
+			return c.longs[row];
+		}
+		Object value = c.get(row);
+		return value == null ? 0 : ((Number) value).longValue();
+	}
+
+	/**
+	 * <code>getDouble</code>
+	 * @return the value as a double, 0 if unbound
+	 * @throws ClassCastException if the value is not numeric
+	 */
+	public double getDouble(int row, int column) {
+		check(row);
+		Column c = columns[column];
+		if (c.kind == Column.DOUBLE || c.kind == Column.FLOAT) {
+			return c.doubles[row];
+		}
+		if (c.kind == Column.LONG) {
+			return c.longs[row];
+		}
+		Object value = c.get(row);
+		return value == null ? 0 : ((Number) value).doubleValue();
+	}
+
+	/**
+	 * <code>getDate</code>
+	 * @return the instant of a dateTime value, null if unbound
+	 * @throws ClassCastException if the value is not a dateTime
+	 */
+	public Date getDate(int row, int column) {
+		check(row);
+		Column c = columns[column];
+		if (c.kind == Column.DATETIME) {
+			return c.bound.get(row) ? new Date(c.longs[row]) : null;
+		}
+		Object value = c.get(row);
+		return value == null ? null : ((XSDDateTime) value).asCalendar().getTime();
+	}
+
+	/**
+	 * <code>get</code>
+	 * @return read-only map view of the row, unbound variables are absent
+	 */
+	@Override
+	public Map<String, Object> get(int row) {
+		check(row);
+		return new RowMap(row);
+	}
+
+	/**
+	 * <code>Column</code>
+	 * 
+	 * Values of one variable.  The kind is decided by the first bound value and widened to
+	 * OBJECT, boxing the values stored so far, as soon as a value does not fit it.
+	 */
+	private static final class Column {
+		static final byte EMPTY = 0;
+		static final byte LONG = 1;
+		static final byte DOUBLE = 2;
+		static final byte FLOAT = 3;
+		static final byte BOOLEAN = 4;
+		static final byte DATETIME = 5;
+		static final byte OBJECT = 6;
+
+		private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+		byte kind = EMPTY;
+		long[] longs;
+		double[] doubles;
+		Object[] objects;
+		final BitSet bound = new BitSet();
+		final BitSet booleans = new BitSet();
+
+		void add(int row, Node n) {
+			if (n == null) {
+				ensureCapacity(row);
+				return;
+			}
+			Object value = n.isLiteral() ? n.getLiteralValue() : n.toString(false);
+			if (kind == EMPTY) {
+				kind = kindOf(value);
+			} else if (kind != OBJECT && kindOf(value) != kind) {
+				toObjects(row);
+			}
+			ensureCapacity(row);
+			bound.set(row);
+			switch (kind) {
+			case LONG:
+				longs[row] = ((Number) value).longValue();
+				break;
+			case DOUBLE:
+			case FLOAT:
+				doubles[row] = ((Number) value).doubleValue();
+				break;
+			case BOOLEAN:
+				booleans.set(row, ((Boolean) value).booleanValue());
+				break;
+			case DATETIME:
+				longs[row] = ((XSDDateTime) value).asCalendar().getTimeInMillis();
+				break;
+			default:
+				objects[row] = value;
+			}
+		}
+
+		private static byte kindOf(Object value) {
+			if (value instanceof Integer || value instanceof Long) {
+				return LONG;
+			} else if (value instanceof Double) {
+				return DOUBLE;
+			} else if (value instanceof Float) {
+				return FLOAT;
+			} else if (value instanceof Boolean) {
+				return BOOLEAN;
+			} else if (value instanceof XSDDateTime && value.equals(dateTime(((XSDDateTime) value).asCalendar().getTimeInMillis()))) {
+				// only values that round trip through epoch milliseconds, i.e. with a timezone and at most millisecond precision
+				return DATETIME;
+			}
+			return OBJECT;
+		}
+
+		private static XSDDateTime dateTime(long millis) {
+			Calendar c = new GregorianCalendar(UTC);
+			c.setTimeInMillis(millis);
+			return new XSDDateTime(c);
+		}
+
+		Object get(int row) {
+			if (!bound.get(row)) {
+				return null;
+			}
+			switch (kind) {
+			case LONG:
+				long l = longs[row];
+				// ARQ gives Integer for values in int range, Long beyond
+				return l == (int) l ? (Object) Integer.valueOf((int) l) : (Object) Long.valueOf(l);
+			case DOUBLE:
+				return Double.valueOf(doubles[row]);
+			case FLOAT:
+				return Float.valueOf((float) doubles[row]);
+			case BOOLEAN:
+				return Boolean.valueOf(booleans.get(row));
+			case DATETIME:
+				return dateTime(longs[row]);
+			default:
+				return objects[row];
+			}
+		}
+
+		private void toObjects(int rows) {
+			Object[] boxed = new Object[capacity(rows)];
+			for (int i = 0; i < rows; i++) {
+				boxed[i] = get(i);
+			}
+			kind = OBJECT;
+			objects = boxed;
+			longs = null;
+			doubles = null;
+			booleans.clear();
+		}
+
+		private void ensureCapacity(int row) {
+			switch (kind) {
+			case LONG:
+			case DATETIME:
+				if (longs == null || row >= longs.length) {
+					longs = longs == null ? new long[capacity(row)] : Arrays.copyOf(longs, capacity(row));
+				}
+				break;
+			case DOUBLE:
+			case FLOAT:
+				if (doubles == null || row >= doubles.length) {
+					doubles = doubles == null ? new double[capacity(row)] : Arrays.copyOf(doubles, capacity(row));
+				}
+				break;
+			case OBJECT:
+				if (objects == null || row >= objects.length) {
+					objects = objects == null ? new Object[capacity(row)] : Arrays.copyOf(objects, capacity(row));
+				}
+				break;
+			default:
+				// EMPTY and BOOLEAN use only the bit sets
+			}
+		}
+
+		private static int capacity(int row) {
+			return Math.max(16, row + (row >> 1) + 1);
+		}
+
+		void trim(int rows) {
+			if (longs != null && longs.length > rows) {
+				longs = Arrays.copyOf(longs, rows);
+			}
+			if (doubles != null && doubles.length > rows) {
+				doubles = Arrays.copyOf(doubles, rows);
+			}
+			if (objects != null && objects.length > rows) {
+				objects = Arrays.copyOf(objects, rows);
+			}
+		}
+	}
+
+	/**
+	 * <code>RowMap</code>
+	 * Read-only map view of one row over the columns
+	 */
+	private final class RowMap extends AbstractMap<String, Object> {
+		private final int row;
+
+		RowMap(int row) {
+			this.row = row;
+		}
+
+		@Override
+		public Object get(Object key) {
+			int column = key instanceof String ? indexOf((String) key) : -1;
+			return column < 0 ? null : columns[column].get(row);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			int column = key instanceof String ? indexOf((String) key) : -1;
+			return column >= 0 && columns[column].bound.get(row);
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			return new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					return new Iterator<Map.Entry<String, Object>>() {
+						private int next = advance(0);
+
+						private int advance(int from) {
+							while (from < columns.length && !columns[from].bound.get(row)) {
+								from++;
+							}
+							return from;
+						}
+
+						public boolean hasNext() {
+							return next < columns.length;
+						}
+
+						public Map.Entry<String, Object> next() {
+							if (next >= columns.length) {
+								throw new NoSuchElementException();
+							}
+							int column = next;
+							next = advance(next + 1);
+							return new SimpleImmutableEntry<String, Object>(varNames[column], columns[column].get(row));
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException("SolutionTable is read-only");
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					int size = 0;
+					for (Column column : columns) {
+						if (column.bound.get(row)) {
+							size++;
+						}
+					}
+					return size;
+				}
+			};
+		}
+	}
+
+}
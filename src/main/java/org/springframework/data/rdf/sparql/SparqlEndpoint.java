@@ -0,0 +1,216 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.jena.riot.WebContent;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+
+/**
+ * <code>SparqlEndpoint</code>
+ * 
+ * Remote SPARQL service queried by a SparqlTemplate (setEndpoint) over the SPARQL protocol.
+ * 
+ * All queries share one HttpClient with a pool of keep-alive connections, instead of the
+ * connection per query made by ARQ's QueryEngineHTTP.  Results are requested in compact,
+ * streamable formats, tab-separated values for SELECT and N-Triples for CONSTRUCT and DESCRIBE,
+ * and SELECT rows are parsed as they arrive rather than after the whole response is read.
+ * That holds for TSV and XML results only, see setSelectContentType.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class SparqlEndpoint implements DisposableBean {
+
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	private final String serviceUrl;
+
+	private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+
+	private int connectTimeout = -1;
+
+	private int readTimeout = -1;
+
+	private boolean allowGZip = true;
+
+	private String selectContentType = WebContent.contentTypeTextTSV;
+
+	private String askContentType = WebContent.contentTypeResultsJSON;
+
+	private String modelContentType = WebContent.contentTypeNTriples;
+
+	private HttpClient httpClient;
+
+	private PoolingClientConnectionManager connectionManager;
+
+	/**
+	 * Constructor
+	 * @param serviceUrl URL of the SPARQL query service, e.g. http://localhost:3030/ds/query
+	 */
+	public SparqlEndpoint(String serviceUrl) {
+		if (serviceUrl == null || serviceUrl.equals("")) {
+			throw new IllegalArgumentException("serviceUrl must not be empty");
+		}
+		this.serviceUrl = serviceUrl;
+	}
+
+	public String getServiceUrl() {
+		return serviceUrl;
+	}
+
+	/**
+	 * <code>setMaxConnections</code>
+	 * @param maxConnections size of the connection pool, default 20
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * <code>setConnectTimeout</code>
+	 * @param connectTimeout milliseconds allowed to open a connection, negative for the HttpClient default
+	 */
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * <code>setReadTimeout</code>
+	 * Longest wait for data from the service, used unless the template sets a first result timeout
+	 * @param readTimeout milliseconds, negative for the HttpClient default
+	 */
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * <code>setAllowGZip</code>
+	 * @param allowGZip true (the default) to accept compressed responses
+	 */
+	public void setAllowGZip(boolean allowGZip) {
+		this.allowGZip = allowGZip;
+	}
+
+	public boolean isAllowGZip() {
+		return allowGZip;
+	}
+
+	/**
+	 * <code>setSelectContentType</code>
+	 * TSV and XML results are parsed as the rows arrive.  JSON results are not streamed: Jena
+	 * reads the whole response into a JSON tree before handing out the first row, so memory
+	 * grows with the size of the result.
+	 * @param selectContentType result format for SELECT: text/tab-separated-values (the default),
+	 * application/sparql-results+xml or application/sparql-results+json
+	 */
+	public void setSelectContentType(String selectContentType) {
+		this.selectContentType = selectContentType;
+	}
+
+	public String getSelectContentType() {
+		return selectContentType;
+	}
+
+	public void setAskContentType(String askContentType) {
+		this.askContentType = askContentType;
+	}
+
+	public String getAskContentType() {
+		return askContentType;
+	}
+
+	/**
+	 * <code>setModelContentType</code>
+	 * @param modelContentType RDF syntax for CONSTRUCT and DESCRIBE, N-Triples by default
+	 */
+	public void setModelContentType(String modelContentType) {
+		this.modelContentType = modelContentType;
+	}
+
+	public String getModelContentType() {
+		return modelContentType;
+	}
+
+	/**
+	 * <code>setHttpClient</code>
+	 * Replaces the built-in pooled client, e.g. to share one with other services or to add
+	 * authentication.  The client is not shut down by this endpoint.
+	 * @param httpClient HttpClient, which must be safe for use by several threads
+	 */
+	public synchronized void setHttpClient(HttpClient httpClient) {
+		this.httpClient = httpClient;
+	}
+
+	/**
+	 * <code>getHttpClient</code>
+	 * @return the client queries are sent with, the pooled client is created on first use
+	 */
+	public synchronized HttpClient getHttpClient() {
+		if (httpClient == null) {
+			connectionManager = new PoolingClientConnectionManager();
+			connectionManager.setMaxTotal(maxConnections);
+			connectionManager.setDefaultMaxPerRoute(maxConnections);
+			httpClient = new DefaultHttpClient(connectionManager);
+		}
+		return httpClient;
+	}
+
+	/**
+	 * <code>createQueryExecution</code>
+	 * @param query query to send, bindings are added with setInitialBinding
+	 * @return QueryExecution sending the query to this endpoint
+	 */
+	QueryExecution createQueryExecution(Query query) {
+		return new RemoteQueryExecution(this, query);
+	}
+
+	/**
+	 * <code>destroy</code>
+	 * Closes the pooled connections
+	 */
+	public synchronized void destroy() {
+		if (connectionManager != null) {
+			connectionManager.shutdown();
+			connectionManager = null;
+			httpClient = null;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SparqlEndpoint[" + serviceUrl + "]";
+	}
+
+}
@@ -0,0 +1,41 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import org.springframework.dao.TransientDataAccessException;
+
+/**
+ * <code>SparqlQueryCancelledException</code>
+ * 
+ * Thrown when a query is aborted through its QueryCancellation
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class SparqlQueryCancelledException extends TransientDataAccessException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SparqlQueryCancelledException(String msg) {
+		super(msg);
+	}
+
+	public SparqlQueryCancelledException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+
+}
@@ -0,0 +1,37 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import org.springframework.dao.QueryTimeoutException;
+
+/**
+ * <code>SparqlQueryTimeoutException</code>
+ * 
+ * Thrown when a query exceeds the first result or overall timeout of its SparqlTemplate
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class SparqlQueryTimeoutException extends QueryTimeoutException {
+
+	private static final long serialVersionUID = 1L;
+
+	public SparqlQueryTimeoutException(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+
+}
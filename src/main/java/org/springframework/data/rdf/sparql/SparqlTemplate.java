@@ -15,22 +15,59 @@
 */
 package org.springframework.data.rdf.sparql;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.writer.WriterStreamRDFBlocks;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.rdf.metrics.MetricsSink;
+import org.springframework.data.rdf.store.TripleStoreProvider;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureTask;
+
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.Dataset;
 import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryCancelledException;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
 import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.ReadWrite;
 import com.hp.hpl.jena.query.ResultSet;
 import com.hp.hpl.jena.query.ResultSetFormatter;
 import com.hp.hpl.jena.query.Syntax;
 import com.hp.hpl.jena.rdf.model.Model;
-import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.Lock;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.GraphView;
+import com.hp.hpl.jena.sparql.core.Var;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
+import com.hp.hpl.jena.sparql.engine.binding.BindingFactory;
+import com.hp.hpl.jena.sparql.graph.GraphReadOnly;
+import com.hp.hpl.jena.sparql.syntax.ElementData;
+import com.hp.hpl.jena.sparql.syntax.ElementGroup;
+import com.hp.hpl.jena.sparql.syntax.ElementTriplesBlock;
+import com.hp.hpl.jena.sparql.util.Symbol;
 
 
 
@@ -52,19 +89,71 @@ import com.hp.hpl.jena.rdf.model.RDFNode;
  */
 public class SparqlTemplate {
 
+	public static final int DEFAULT_FETCH_CHUNK_SIZE = 500;
+
 	
 	/**
 	 * Constructor - Jena Model
 	 * @param model
 	 */
-	SparqlTemplate(Model model) {
+	public SparqlTemplate(Model model) {
 		this.model = model;
 	}
 	
-	SparqlTemplate() { }
+	public SparqlTemplate() { }
+
+	/**
+	 * Copy constructor backing withTimeout() and withCancellation()
+	 */
+	private SparqlTemplate(SparqlTemplate template) {
+		this.model = template.model;
+		this.queryCache = template.queryCache;
+		this.resultCache = template.resultCache;
+		this.metricsSink = template.metricsSink;
+		this.firstResultTimeout = template.firstResultTimeout;
+		this.queryTimeout = template.queryTimeout;
+		this.cancellation = template.cancellation;
+		this.asyncExecutor = template.asyncExecutor;
+		this.forkJoinPool = template.forkJoinPool;
+		this.locking = template.locking;
+		this.dataset = template.dataset;
+		this.endpoint = template.endpoint;
+	}
 
 	private Model model;
 
+	private QueryCache queryCache;
+
+	private ResultCache resultCache;
+
+	private MetricsSink metricsSink;
+
+	private long firstResultTimeout = -1;
+
+	private long queryTimeout = -1;
+
+	private QueryCancellation cancellation;
+
+	private volatile Executor asyncExecutor;
+
+	private volatile ForkJoinPool forkJoinPool;
+
+	private boolean locking = true;
+
+	private Dataset dataset;
+
+	private SparqlEndpoint endpoint;
+
+	/**
+	 * Context flag of executions that began their own read transaction
+	 */
+	private static final Symbol AUTOCOMMIT = Symbol.create("urn:x-springjena:autocommit");
+
+	/**
+	 * Context entry holding the read lock an execution entered, released by that execution
+	 */
+	private static final Symbol READ_LOCK = Symbol.create("urn:x-springjena:readlock");
+
 	/**
 	 * <code>setModel</code>
 	 * 
@@ -74,6 +163,7 @@ public class SparqlTemplate {
 	 */
 	public void setModel(Model model) {
 		this.model = model;
+		this.dataset = null;
 	}
 
 	/**
@@ -84,7 +174,439 @@ public class SparqlTemplate {
 	 * @return Model Jena Model interface
 	 */
 	public Model getModel() {
-		return model;
+		return dataset != null ? dataset.getDefaultModel() : model;
+	}
+
+	/**
+	 * <code>setDataset</code>
+	 * 
+	 * Queries the dataset instead of a single model, the default graph being the dataset's
+	 * default model.  When the dataset is transactional (e.g. TDB) queries join the thread's
+	 * current transaction, see JenaTransactionManager, and outside a transaction each query
+	 * runs in a READ transaction of its own.
+	 * 
+	 * @param dataset Jena Dataset
+	 */
+	public void setDataset(Dataset dataset) {
+		this.dataset = dataset;
+		this.model = null;
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * <code>setTripleStoreProvider</code>
+	 * Works on the provider's dataset, see setDataset
+	 * @param provider source of the dataset, e.g. a TdbTripleStoreProvider bean
+	 */
+	public void setTripleStoreProvider(TripleStoreProvider provider) {
+		setDataset(provider.getDataset());
+	}
+
+	/**
+	 * <code>setEndpoint</code>
+	 * 
+	 * Sends every query to a remote SPARQL service instead of the local model or dataset.
+	 * Bindings of prepared queries are sent as a VALUES block joined with the query pattern,
+	 * CONSTRUCT and DESCRIBE results are parsed as they arrive, timeouts and cancellation
+	 * apply to the HTTP request, and no local locks or transactions are taken.
+	 * 
+	 * @param endpoint SparqlEndpoint, null to query the local model again
+	 */
+	public void setEndpoint(SparqlEndpoint endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	public SparqlEndpoint getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * <code>setServiceUrl</code>
+	 * Shortcut for setEndpoint with a default SparqlEndpoint
+	 * @param serviceUrl URL of the SPARQL query service
+	 */
+	public void setServiceUrl(String serviceUrl) {
+		setEndpoint(new SparqlEndpoint(serviceUrl));
+	}
+
+	/**
+	 * <code>setQueryCache</code>
+	 * 
+	 * Setter for an optional cache of parsed queries, shared across templates if desired.
+	 * When no cache is set every call parses its query string again.
+	 * 
+	 * @param queryCache QueryCache or null to disable caching
+	 */
+	public void setQueryCache(QueryCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * <code>setResultCache</code>
+	 * 
+	 * Setter for an optional cache of the results of execSelectGenericMap, execSelectTable and
+	 * execConstruct, for models read far more often than they change.  The cache must track
+	 * the template's model, see ResultCache.  With a cache these methods return read-only
+	 * results shared between callers, execSelectGenericMap a SolutionTable.  Queries run
+	 * inside a transaction bypass the cache, as they may see uncommitted changes.
+	 * 
+	 * @param resultCache ResultCache or null to execute every query
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * <code>setMetricsSink</code>
+	 * 
+	 * Setter for an optional sink receiving the parse, execute, iteration and mapping
+	 * times and row counts of every query.  Without a sink no timing is done.
+	 * 
+	 * @param metricsSink MetricsSink or null to disable instrumentation
+	 */
+	public void setMetricsSink(MetricsSink metricsSink) {
+		this.metricsSink = metricsSink;
+	}
+
+	public MetricsSink getMetricsSink() {
+		return metricsSink;
+	}
+
+	/**
+	 * <code>setLocking</code>
+	 * 
+	 * Every query holds the model's multiple-reader single-writer lock in READ mode while it
+	 * executes, so queries run concurrently with each other but never with a writer such as
+	 * JenaTemplate.  Lazy iterators hold the lock until they are exhausted or closed, on the
+	 * thread that created them.  Turn locking off only for models no one writes to concurrently.
+	 * 
+	 * @param locking true (the default) to read under the model's lock
+	 */
+	public void setLocking(boolean locking) {
+		this.locking = locking;
+	}
+
+	public boolean isLocking() {
+		return locking;
+	}
+
+	/**
+	 * <code>setQueryTimeout</code>
+	 * 
+	 * Setter for the default overall timeout of every query run by this template, measured
+	 * from the start of execution until the last row is read.  Queries running longer are
+	 * aborted with a SparqlQueryTimeoutException.
+	 * 
+	 * @param millis timeout in milliseconds, negative for no timeout (the default)
+	 */
+	public void setQueryTimeout(long millis) {
+		this.queryTimeout = millis;
+	}
+
+	public long getQueryTimeout() {
+		return queryTimeout;
+	}
+
+	/**
+	 * <code>setFirstResultTimeout</code>
+	 * 
+	 * Setter for the default time a query may take to produce its first row.  Once the
+	 * first row is available only the overall query timeout applies.
+	 * 
+	 * @param millis timeout in milliseconds, negative for no timeout (the default)
+	 */
+	public void setFirstResultTimeout(long millis) {
+		this.firstResultTimeout = millis;
+	}
+
+	public long getFirstResultTimeout() {
+		return firstResultTimeout;
+	}
+
+	/**
+	 * <code>withTimeout</code>
+	 * 
+	 * Returns a copy of this template whose queries use the given overall timeout,
+	 * leaving this template's defaults untouched, e.g.
+	 * <code>template.withTimeout(2, TimeUnit.SECONDS).execSelectList(sparql, mapper)</code>
+	 * The copy keeps this template's first result timeout.
+	 * 
+	 * @param timeout overall timeout, negative for none
+	 * @param unit unit of the timeout
+	 * @return configured copy of this template
+	 */
+	public SparqlTemplate withTimeout(long timeout, TimeUnit unit) {
+		SparqlTemplate copy = new SparqlTemplate(this);
+		copy.queryTimeout = timeout < 0 ? -1 : unit.toMillis(timeout);
+		return copy;
+	}
+
+	/**
+	 * <code>withTimeout</code>
+	 * @param firstResultTimeout time allowed until the first row, negative for none
+	 * @param timeout overall timeout, negative for none
+	 * @param unit unit of both timeouts
+	 * @return configured copy of this template
+	 */
+	public SparqlTemplate withTimeout(long firstResultTimeout, long timeout, TimeUnit unit) {
+		SparqlTemplate copy = new SparqlTemplate(this);
+		copy.firstResultTimeout = firstResultTimeout < 0 ? -1 : unit.toMillis(firstResultTimeout);
+		copy.queryTimeout = timeout < 0 ? -1 : unit.toMillis(timeout);
+		return copy;
+	}
+
+	/**
+	 * <code>withCancellation</code>
+	 * 
+	 * Returns a copy of this template whose queries can be aborted from another thread
+	 * through the given handle.  One handle may be shared by several queries and templates.
+	 * 
+	 * @param cancellation handle to register running queries with
+	 * @return configured copy of this template
+	 */
+	public SparqlTemplate withCancellation(QueryCancellation cancellation) {
+		SparqlTemplate copy = new SparqlTemplate(this);
+		copy.cancellation = cancellation;
+		return copy;
+	}
+
+	/**
+	 * <code>setAsyncExecutor</code>
+	 * 
+	 * Setter for the executor running the exec...Async methods, by default a
+	 * SimpleAsyncTaskExecutor starting a thread per query.  Any Executor can be used,
+	 * e.g. a bounded ThreadPoolExecutor, or on JDK 21+ Executors.newVirtualThreadPerTaskExecutor()
+	 * (or a SimpleAsyncTaskExecutor built with Thread.ofVirtual().factory()).
+	 * 
+	 * @param asyncExecutor Executor for asynchronous queries
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	public Executor getAsyncExecutor() {
+		Executor executor = asyncExecutor;
+		if (executor == null) {
+			synchronized (this) {
+				if (asyncExecutor == null) {
+					asyncExecutor = new SimpleAsyncTaskExecutor("sparql-async-");
+				}
+				executor = asyncExecutor;
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * <code>setForkJoinPool</code>
+	 * 
+	 * Setter for the pool running the partitions of the execSelectListParallel methods, by
+	 * default a pool with one thread per available processor.  The pool's parallelism is the
+	 * number of partitions a query is split into.
+	 * 
+	 * @param forkJoinPool ForkJoinPool for partitioned queries
+	 */
+	public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+		this.forkJoinPool = forkJoinPool;
+	}
+
+	public ForkJoinPool getForkJoinPool() {
+		ForkJoinPool pool = forkJoinPool;
+		if (pool == null) {
+			synchronized (this) {
+				if (forkJoinPool == null) {
+					forkJoinPool = new ForkJoinPool();
+				}
+				pool = forkJoinPool;
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * <code>timer</code>
+	 * @return QueryTimer for the call, null when instrumentation is disabled
+	 */
+	private QueryTimer timer(String operation, String sparql) {
+		MetricsSink sink = metricsSink;
+		return sink == null ? null : new QueryTimer(sink, operation, sparql);
+	}
+
+	/**
+	 * <code>createQuery</code>
+	 * Parses the query, going through the query cache when one is configured
+	 */
+	private Query createQuery(String sparql, Syntax syntax, QueryTimer timer) {
+		Query query = queryCache != null ? queryCache.getQuery(sparql, syntax) : QueryFactory.create(sparql, syntax);
+		if (timer != null) {
+			timer.parsed();
+		}
+		return query;
+	}
+
+	/**
+	 * <code>execSelect</code>
+	 * Starts the SELECT, timing it when instrumentation is enabled
+	 */
+	private static ResultSet execSelect(QueryExecution qe, QueryTimer timer) {
+		ResultSet rs = qe.execSelect();
+		return timer == null ? rs : timer.executed(rs);
+	}
+
+	private static void failed(QueryTimer timer) {
+		if (timer != null) {
+			timer.failed();
+		}
+	}
+
+	private static void complete(QueryTimer timer) {
+		if (timer != null) {
+			timer.complete();
+		}
+	}
+
+	/**
+	 * <code>prepare</code>
+	 * 
+	 * Parses a query once so that it can be executed many times with different bindings,
+	 * the SPARQL equivalent of a JDBC PreparedStatement.  Values are supplied at execution
+	 * time through a QuerySolution (e.g. QuerySolutionMap or Bindings) and substituted into
+	 * the query algebra by ARQ, so they are never concatenated into the query string.
+	 * 
+	 * @param sparql the String representing the SPARQL query, with unbound ?variables
+	 * @return PreparedQuery usable with any of the exec methods taking one
+	 */
+	public PreparedQuery prepare(String sparql) {
+		if (sparql == null || sparql.equals(""))
+			throw new IllegalArgumentException("sparql must not be empty");
+		return new PreparedQuery(sparql, createQuery(sparql, Syntax.syntaxARQ, null));
+	}
+
+	/**
+	 * <code>createQueryExecution</code>
+	 * Creates the execution for a parsed query against the model, applying any initial bindings
+	 */
+	QueryExecution createQueryExecution(Query query, QuerySolution bindings) {
+		// a transaction is begun first, graphs of transactional datasets are bound to the active transaction
+		boolean autocommit = endpoint == null && isTransactional() && !dataset.isInTransaction();
+		if (autocommit) {
+			dataset.begin(ReadWrite.READ);
+		}
+		QueryExecution qe;
+		try {
+			if (endpoint != null) {
+				qe = endpoint.createQueryExecution(query);
+				if (bindings != null) {
+					qe.setInitialBinding(bindings);
+				}
+			} else if (dataset != null) {
+				qe = bindings == null ? QueryExecutionFactory.create(query, dataset)
+						: QueryExecutionFactory.create(query, dataset, bindings);
+			} else {
+				qe = bindings == null ? QueryExecutionFactory.create(query, model)
+						: QueryExecutionFactory.create(query, model, bindings);
+			}
+			if (firstResultTimeout >= 0 || queryTimeout >= 0) {
+				qe.setTimeout(firstResultTimeout, TimeUnit.MILLISECONDS, queryTimeout, TimeUnit.MILLISECONDS);
+			}
+			if (cancellation != null && !cancellation.register(qe)) {
+				qe.close();
+				throw new SparqlQueryCancelledException("Query cancelled before execution");
+			}
+		} catch (RuntimeException e) {
+			if (autocommit) {
+				dataset.end();
+			}
+			throw e;
+		}
+		if (autocommit) {
+			qe.getContext().set(AUTOCOMMIT, true);
+		} else if (readsUnderLock()) {
+			Lock lock = lock();
+			lock.enterCriticalSection(Lock.READ);
+			qe.getContext().set(READ_LOCK, lock);
+		}
+		return qe;
+	}
+
+	/**
+	 * <code>readsUnderLock</code>
+	 * @return true when queries read under the model's lock, local queries without transactions
+	 */
+	private boolean readsUnderLock() {
+		return locking && endpoint == null && !isTransactional();
+	}
+
+	private Lock lock() {
+		return dataset != null ? dataset.getLock() : model.getLock();
+	}
+
+	/**
+	 * <code>resultCache</code>
+	 * @return the result cache, null when there is none or the thread is in a transaction
+	 */
+	private ResultCache resultCache() {
+		ResultCache cache = resultCache;
+		return cache != null && isTransactional() && dataset.isInTransaction() ? null : cache;
+	}
+
+	/**
+	 * <code>isTransactional</code>
+	 * @return true when queries run in dataset transactions rather than under the model's lock
+	 */
+	private boolean isTransactional() {
+		return dataset != null && dataset.supportsTransactions();
+	}
+
+	/**
+	 * <code>release</code>
+	 * Closes the execution, removes it from the cancellation handle and leaves the read lock
+	 * or the transaction begun for it
+	 */
+	void release(QueryExecution qe) {
+		try {
+			if (cancellation != null) {
+				cancellation.unregister(qe);
+			}
+			qe.close();
+		} finally {
+			Lock lock = (Lock) qe.getContext().get(READ_LOCK);
+			if (qe.getContext().isTrue(AUTOCOMMIT)) {
+				dataset.end();
+			} else if (lock != null) {
+				lock.leaveCriticalSection();
+			}
+		}
+	}
+
+	QueryCancellation getCancellation() {
+		return cancellation;
+	}
+
+	/**
+	 * <code>translate</code>
+	 * Maps ARQ's QueryCancelledException, raised for both timeouts and aborts, onto the
+	 * exception matching its cause; anything else is returned as is
+	 */
+	static RuntimeException translate(RuntimeException e, QueryCancellation cancellation) {
+		if (!(e instanceof QueryCancelledException)) {
+			return e;
+		}
+		if (cancellation != null && cancellation.isCancelled()) {
+			return new SparqlQueryCancelledException("Query cancelled", e);
+		}
+		return new SparqlQueryTimeoutException("Query timed out", e);
 	}
 
 	/**
@@ -95,13 +617,12 @@ public class SparqlTemplate {
 	 * Differs the mapping algorithm to the SolutionMapper<T> interface
 	 * 
 	 * Additional comments:
-	 *   - This implementation generates the list at this point, a more advanced design 
-	 *     would be to return an iterator and not iterate through the results until the client
-	 *     of this code was invoked, i.e. lazy-loading the results until they were absolutely needed
+	 *   - This implementation generates the list at this point, see execSelectIterator for
+	 *     lazily loading the results until they are absolutely needed
 	 *     
 	 *   - The sparql query string is just a string, presumably with the right parameters already populated. 
-	 *     To avoid SPARQL-Injection, we should consider some automatic way of cleansing this string similar
-	 *     to the JDBC PreparedStatement object
+	 *     To avoid SPARQL-Injection, use prepare() and pass the parameters as bindings, 
+	 *     similar to the JDBC PreparedStatement object
 	 * 
 	 * @param <T> Template for the List of objects to be returned
 	 * @param sparql the String representing the SPARQL query
@@ -111,33 +632,301 @@ public class SparqlTemplate {
 	public <T> List<T> execSelectList(String sparql, SolutionMapper<T> mapper) {
 		if (sparql == null || sparql.equals(""))
 			return null;
-		QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparql, Syntax.syntaxARQ), model);
-		ArrayList<T> list = new ArrayList<T>();
+		QueryTimer timer = timer("execSelectList", sparql);
+		return selectList(createQuery(sparql, Syntax.syntaxARQ, timer), null, mapper, timer);
+	}
+
+	/**
+	 * <code>execSelectList</code>
+	 * @param query prepared query
+	 * @param bindings values for the query variables, may be null
+	 * @param mapper the Implementation of SolutionMapper<T>
+	 * @return List<T> which is mapped to the results of the query
+	 */
+	public <T> List<T> execSelectList(PreparedQuery query, QuerySolution bindings, SolutionMapper<T> mapper) {
+		return selectList(query.getQuery(), bindings, mapper, timer("execSelectList", query.getSparql()));
+	}
+
+	/**
+	 * <code>execSelectRows</code>
+	 * 
+	 * execSelectList with positional row mapping: variables are resolved once for the query
+	 * and the mapper reads Nodes by column index, with no per-row QuerySolution or map
+	 * 
+	 * @param <T> Template for the List of objects to be returned
+	 * @param sparql the String representing the SPARQL query
+	 * @param mapper the Implementation of SolutionRowMapper<T>
+	 * @return List<T> which is mapped to the results of the query
+	 */
+	public <T> List<T> execSelectRows(String sparql, SolutionRowMapper<T> mapper) {
+		return execSelectList(sparql, new RowMapperAdapter<T>(mapper));
+	}
+
+	public <T> List<T> execSelectRows(PreparedQuery query, QuerySolution bindings, SolutionRowMapper<T> mapper) {
+		return execSelectList(query, bindings, new RowMapperAdapter<T>(mapper));
+	}
+
+	private <T> List<T> selectList(Query query, QuerySolution bindings, SolutionMapper<T> mapper, QueryTimer timer) {
+		QueryExecution qe = createQueryExecution(query, bindings);
+		ArrayList<T> list = new ArrayList<T>();
+		try {
+			for (ResultSet rs = execSelect(qe, timer); rs.hasNext() ; ) {
+				list.add(mapper.mapSelect(rs, rs.getRowNumber()));
+			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
+		} finally {
+			release(qe);
+			complete(timer);
+		}
+		return list;
+	}
+
+	/**
+	 * <code>execSelectListParallel</code>
+	 * 
+	 * Parallel execSelectList for large scans: the values of one of the query's variables are
+	 * read from a triple pattern of the WHERE clause and split into one range per thread of the
+	 * ForkJoinPool, each sub-query evaluates only its range, and the partitions are mapped
+	 * concurrently and their results merged, in ORDER BY order when the query has one.  Choose
+	 * a variable with many distinct values, typically the subject, for an even split.  A
+	 * variable that is in no top-level triple pattern leaves the query in one partition.
+	 * 
+	 * The mapper is called from several threads at once and must be thread-safe; row numbers
+	 * passed to it count within a partition.  The values and each partition are read under
+	 * read locks or transactions of their own, so the partitions are not one snapshot when
+	 * writers run concurrently.
+	 * Queries sent to a remote endpoint run as a single execSelectList.
+	 * 
+	 * @param <T> Template for the List of objects to be returned
+	 * @param sparql the String representing the SPARQL query
+	 * @param partitionVar variable to partition the solutions by
+	 * @param mapper the thread-safe Implementation of SolutionMapper<T>
+	 * @return List<T> of the mapped results of the query
+	 * @throws IllegalArgumentException if the query cannot be partitioned by the variable,
+	 * e.g. aggregates not grouped by it or an ORDER BY over variables not projected
+	 */
+	public <T> List<T> execSelectListParallel(String sparql, String partitionVar, SolutionMapper<T> mapper) {
+		if (sparql == null || sparql.equals(""))
+			return null;
+		QueryTimer timer = timer("execSelectListParallel", sparql);
+		return selectListParallel(createQuery(sparql, Syntax.syntaxARQ, timer), null, partitionVar, mapper, null, timer);
+	}
+
+	public <T> List<T> execSelectListParallel(PreparedQuery query, QuerySolution bindings, String partitionVar,
+			SolutionMapper<T> mapper) {
+		return selectListParallel(query.getQuery(), bindings, partitionVar, mapper, null,
+				timer("execSelectListParallel", query.getSparql()));
+	}
+
+	/**
+	 * <code>execSelectRowsParallel</code>
+	 * Row mapper variant of execSelectListParallel, the mapper is adapted once per partition but still called concurrently
+	 */
+	public <T> List<T> execSelectRowsParallel(String sparql, String partitionVar, SolutionRowMapper<T> mapper) {
+		if (sparql == null || sparql.equals(""))
+			return null;
+		QueryTimer timer = timer("execSelectListParallel", sparql);
+		return selectListParallel(createQuery(sparql, Syntax.syntaxARQ, timer), null, partitionVar, null, mapper, timer);
+	}
+
+	public <T> List<T> execSelectRowsParallel(PreparedQuery query, QuerySolution bindings, String partitionVar,
+			SolutionRowMapper<T> mapper) {
+		return selectListParallel(query.getQuery(), bindings, partitionVar, null, mapper,
+				timer("execSelectListParallel", query.getSparql()));
+	}
+
+	private <T> List<T> selectListParallel(Query query, QuerySolution bindings, String partitionVar,
+			SolutionMapper<T> mapper, SolutionRowMapper<T> rowMapper, QueryTimer timer) {
+		if (endpoint != null) {
+			return selectList(query, bindings, mapper != null ? mapper : new RowMapperAdapter<T>(rowMapper), timer);
+		}
+		ForkJoinPool pool = getForkJoinPool();
+		try {
+			// the partitions share a handle of their own, cancelled when one of them fails
+			PartitionedSelect<T> select = new PartitionedSelect<T>(withCancellation(new QueryCancellation(cancellation)),
+					query, bindings, partitionVar, pool.getParallelism());
+			return select.execute(pool, mapper, rowMapper);
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw e;
+		} finally {
+			complete(timer);
+		}
+	}
+
+	/**
+	 * <code>execSelectIterator</code>
+	 * 
+	 * Lazy counterpart of execSelectList: rows are pulled from ARQ and mapped only as the
+	 * returned iterator is advanced, so large results are never held in memory at once.
+	 * The QueryExecution is closed when the iterator is exhausted or closed; callers that
+	 * stop early must call close() on it.
+	 * 
+	 * @param <T> Template for the objects to be returned
+	 * @param sparql the String representing the SPARQL query
+	 * @param mapper the Implementation of SolutionMapper<T>
+	 * @return SolutionIterator<T> over the mapped results of the query
+	 */
+	public <T> SolutionIterator<T> execSelectIterator(String sparql, SolutionMapper<T> mapper) {
+		if (sparql == null || sparql.equals(""))
+			return null;
+		QueryTimer timer = timer("execSelectIterator", sparql);
+		return new SolutionIterator<T>(createQueryExecution(createQuery(sparql, Syntax.syntaxARQ, timer), null), mapper, timer, this);
+	}
+
+	public <T> SolutionIterator<T> execSelectIterator(PreparedQuery query, QuerySolution bindings, SolutionMapper<T> mapper) {
+		return new SolutionIterator<T>(createQueryExecution(query.getQuery(), bindings), mapper,
+				timer("execSelectIterator", query.getSparql()), this);
+	}
+
+	/**
+	 * <code>execSelectRowIterator</code>
+	 * execSelectIterator with positional row mapping, see execSelectRows
+	 */
+	public <T> SolutionIterator<T> execSelectRowIterator(String sparql, SolutionRowMapper<T> mapper) {
+		return execSelectIterator(sparql, new RowMapperAdapter<T>(mapper));
+	}
+
+	public <T> SolutionIterator<T> execSelectRowIterator(PreparedQuery query, QuerySolution bindings, SolutionRowMapper<T> mapper) {
+		return execSelectIterator(query, bindings, new RowMapperAdapter<T>(mapper));
+	}
+
+	/**
+	 * <code>execSelectPage</code>
+	 * 
+	 * Reads one page of a SELECT, for results handed out a page per request.  The returned
+	 * Page carries an opaque continuation, pass it back to get the page after; null starts at
+	 * the first page.  The LIMIT and OFFSET of the query bound the whole paged result.
+	 * 
+	 * Queries with an ORDER BY over projected variables are paged by keyset: the continuation
+	 * holds the sort key of the last row and the next page only evaluates the rows after it, so
+	 * a deep page costs about as much as the first.  Give such queries a unique ORDER BY, e.g.
+	 * ending with the subject, for a result that stays stable while the model changes.  Other
+	 * queries, and every query sent to a remote endpoint, are paged by OFFSET.
+	 * 
+	 * Each page runs under its own read lock or transaction, pages are not one snapshot.
+	 * 
+	 * @param <T> Template for the objects to be returned
+	 * @param sparql the String representing the SPARQL query
+	 * @param pageSize maximum number of rows of the page
+	 * @param continuation token of the previous page, null for the first page
+	 * @param mapper the Implementation of SolutionRowMapper<T>
+	 * @return Page<T> of the mapped rows with the continuation of the next page
+	 * @throws IllegalArgumentException if the query is not a SELECT, or the continuation is
+	 * malformed or was issued for another query
+	 */
+	public <T> Page<T> execSelectPage(String sparql, int pageSize, String continuation, SolutionRowMapper<T> mapper) {
+		if (sparql == null || sparql.equals(""))
+			return null;
+		QueryTimer timer = timer("execSelectPage", sparql);
+		return selectPage(createQuery(sparql, Syntax.syntaxARQ, timer), sparql, null, pageSize, continuation, mapper, timer);
+	}
+
+	public <T> Page<T> execSelectPage(PreparedQuery query, QuerySolution bindings, int pageSize, String continuation,
+			SolutionRowMapper<T> mapper) {
+		return selectPage(query.getQuery(), query.getSparql(), bindings, pageSize, continuation, mapper,
+				timer("execSelectPage", query.getSparql()));
+	}
+
+	private <T> Page<T> selectPage(Query query, String sparql, QuerySolution bindings, int pageSize, String continuation,
+			SolutionRowMapper<T> mapper, QueryTimer timer) {
+		if (pageSize <= 0) {
+			failed(timer);
+			complete(timer);
+			throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+		}
+		PagedSelect select;
+		PagedSelect.Continuation from;
+		Query page;
 		try {
-			for (ResultSet rs = qe.execSelect(); rs.hasNext() ; ) {
-				list.add(mapper.mapSelect(rs, rs.getRowNumber()));
+			select = new PagedSelect(query, sparql, bindings, endpoint == null);
+			from = select.parse(continuation);
+			page = select.page(from, pageSize);
+		} catch (IllegalArgumentException e) {
+			failed(timer);
+			complete(timer);
+			throw e;
+		}
+		if (page == null) {
+			complete(timer);
+			return new Page<T>(new ArrayList<T>(0), null);
+		}
+		List<Binding> rows = new ArrayList<Binding>(pageSize + 1);
+		QueryExecution qe = createQueryExecution(page, bindings);
+		try {
+			for (ResultSet rs = execSelect(qe, timer); rs.hasNext() && rows.size() <= pageSize; ) {
+				rows.add(rs.nextBinding());
+			}
+			boolean more = rows.size() > pageSize;
+			int size = more ? pageSize : rows.size();
+			SolutionRow row = new SolutionRow(page.getResultVars());
+			List<T> content = new ArrayList<T>(size);
+			for (int i = 0; i < size; i++) {
+				row.setBinding(rows.get(i));
+				content.add(mapper.mapRow(row, (int) from.delivered + i));
+			}
+			String next = null;
+			if (more) {
+				Binding last = rows.get(size - 1);
+				long ties = 1;
+				if (select.isKeyset()) {
+					while (ties < size && select.sameKey(rows.get(size - 1 - (int) ties), last)) {
+						ties++;
+					}
+				}
+				next = select.next(from, size, last, ties);
 			}
+			return new Page<T>(content, next);
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
 		} finally {
-			qe.close();
+			release(qe);
+			complete(timer);
 		}
-		return list;
 	}
 
 	public <T> T execSelectOne(String sparql, SolutionMapper<T> mapper) {
 		if (sparql == null || sparql.equals("")) {
 			return null;
 		}
+		QueryTimer timer = timer("execSelectOne", sparql);
+		return selectOne(createQuery(sparql, Syntax.syntaxARQ, timer), null, mapper, timer);
+	}
 
-		QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparql, Syntax.syntaxARQ), model);
+	public <T> T execSelectOne(PreparedQuery query, QuerySolution bindings, SolutionMapper<T> mapper) {
+		return selectOne(query.getQuery(), bindings, mapper, timer("execSelectOne", query.getSparql()));
+	}
+
+	/**
+	 * <code>execSelectOneRow</code>
+	 * execSelectOne with positional row mapping, see execSelectRows
+	 */
+	public <T> T execSelectOneRow(String sparql, SolutionRowMapper<T> mapper) {
+		return execSelectOne(sparql, new RowMapperAdapter<T>(mapper));
+	}
+
+	public <T> T execSelectOneRow(PreparedQuery query, QuerySolution bindings, SolutionRowMapper<T> mapper) {
+		return execSelectOne(query, bindings, new RowMapperAdapter<T>(mapper));
+	}
+
+	private <T> T selectOne(Query query, QuerySolution bindings, SolutionMapper<T> mapper, QueryTimer timer) {
+		QueryExecution qe = createQueryExecution(query, bindings);
 		try {
-			ResultSet rs = qe.execSelect();
+			ResultSet rs = execSelect(qe, timer);
 			if (rs.hasNext()) {
 				return mapper.mapSelect(rs, rs.getRowNumber());
 			} else {
 				return null;
 			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
 		} finally {
-			qe.close();
+			release(qe);
+			complete(timer);
 		}
 
 	}
@@ -151,15 +940,28 @@ public class SparqlTemplate {
 	 * @return combined map of all the results (HashMap)
 	 */
 	public <T, V> Map<T, V> execSelectMap(String sparql, SolutionDimensionalMapper<T, V> mapper) {
-		Query query = QueryFactory.create(sparql, Syntax.syntaxARQ);
-		QueryExecution qe = QueryExecutionFactory.create(query, model);
+		QueryTimer timer = timer("execSelectMap", sparql);
+		return selectMap(createQuery(sparql, Syntax.syntaxARQ, timer), null, mapper, timer);
+	}
+
+	public <T, V> Map<T, V> execSelectMap(PreparedQuery query, QuerySolution bindings, SolutionDimensionalMapper<T, V> mapper) {
+		return selectMap(query.getQuery(), bindings, mapper, timer("execSelectMap", query.getSparql()));
+	}
+
+	private <T, V> Map<T, V> selectMap(Query query, QuerySolution bindings, SolutionDimensionalMapper<T, V> mapper,
+			QueryTimer timer) {
+		QueryExecution qe = createQueryExecution(query, bindings);
 		Map<T, V> list = new HashMap<T, V>();
 		try {
-			for (ResultSet rs = qe.execSelect(); rs.hasNext() ; ) {
+			for (ResultSet rs = execSelect(qe, timer); rs.hasNext() ; ) {
 				list.putAll(mapper.mapSelect(rs, rs.getRowNumber()));
 			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
 		} finally {
-			qe.close();
+			release(qe);
+			complete(timer);
 		}
 		return list;
 	}
@@ -174,11 +976,276 @@ public class SparqlTemplate {
 	 * @return new Model
 	 */
 	public Model execConstruct(String sparql) {
-		Query query = QueryFactory.create(sparql);
-		QueryExecution qe = QueryExecutionFactory.create(query, model);
-		Model m = qe.execConstruct();
-		qe.close();
-		return m;
+		ResultCache cache = resultCache();
+		if (cache != null) {
+			return cachedConstruct(cache, sparql, null, null);
+		}
+		QueryTimer timer = timer("execConstruct", sparql);
+		return construct(createQuery(sparql, Syntax.syntaxARQ, timer), null, timer);
+	}
+
+	public Model execConstruct(PreparedQuery query, QuerySolution bindings) {
+		ResultCache cache = resultCache();
+		if (cache != null) {
+			return cachedConstruct(cache, query.getSparql(), query.getQuery(), bindings);
+		}
+		return construct(query.getQuery(), bindings, timer("execConstruct", query.getSparql()));
+	}
+
+	/**
+	 * <code>cachedConstruct</code>
+	 * Looks the CONSTRUCT up in the result cache, callers get read-only views of the cached model
+	 */
+	private Model cachedConstruct(ResultCache cache, String sparql, Query query, QuerySolution bindings) {
+		ResultCache.Key key = ResultCache.key("CONSTRUCT", sparql, bindings);
+		long version = cache.getVersion();
+		Model m = (Model) cache.get(key, version);
+		if (m == null) {
+			QueryTimer timer = timer("execConstruct", sparql);
+			m = construct(query != null ? query : createQuery(sparql, Syntax.syntaxARQ, timer), bindings, timer);
+			cache.put(key, m, 3 * m.size(), version);
+		}
+		return ModelFactory.createModelForGraph(new GraphReadOnly(m.getGraph()));
+	}
+
+	private Model construct(Query query, QuerySolution bindings, QueryTimer timer) {
+		QueryExecution qe = createQueryExecution(query, bindings);
+		try {
+			Model m = qe.execConstruct();
+			if (timer != null) {
+				timer.executed();
+				timer.rows(m.size());
+			}
+			return m;
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
+		} finally {
+			release(qe);
+			complete(timer);
+		}
+	}
+
+	/**
+	 * <code>execConstruct</code>
+	 * 
+	 * Streams the triples of a CONSTRUCT or DESCRIBE to the sink as they are produced, without
+	 * building a Model: memory stays bounded whatever the size of the result, except that ARQ
+	 * builds the description of a DESCRIBE before handing it out.  Unlike a Model, the stream
+	 * is not deduplicated, a CONSTRUCT may send the same triple more than once.
+	 * 
+	 * The sink is called on this thread while the query holds the model's read lock, so it
+	 * must not write to the queried model.
+	 * 
+	 * @param sparql CONSTRUCT or DESCRIBE query
+	 * @param sink receiver of the prefixes of the query and the triples, started and finished by this call
+	 * @return number of triples sent
+	 */
+	public long execConstruct(String sparql, StreamRDF sink) {
+		QueryTimer timer = timer("execConstruct", sparql);
+		return construct(createQuery(sparql, Syntax.syntaxARQ, timer), null, sink, timer);
+	}
+
+	public long execConstruct(PreparedQuery query, QuerySolution bindings, StreamRDF sink) {
+		return construct(query.getQuery(), bindings, sink, timer("execConstruct", query.getSparql()));
+	}
+
+	/**
+	 * <code>execConstruct</code>
+	 * Writes the triples of a CONSTRUCT or DESCRIBE to the stream as they are produced
+	 * @param sparql CONSTRUCT or DESCRIBE query
+	 * @param out stream to write to, flushed but not closed
+	 * @param lang Lang.NTRIPLES or Lang.TURTLE, the languages with streaming writers
+	 * @return number of triples written
+	 */
+	public long execConstruct(String sparql, OutputStream out, Lang lang) {
+		return execConstruct(sparql, writer(out, lang));
+	}
+
+	public long execConstruct(PreparedQuery query, QuerySolution bindings, OutputStream out, Lang lang) {
+		return execConstruct(query, bindings, writer(out, lang));
+	}
+
+	/**
+	 * <code>execConstruct</code>
+	 * Adds the triples of a CONSTRUCT or DESCRIBE to an existing model, holding its write lock.
+	 * The queried model's read lock and the target's write lock are taken in a fixed order, the
+	 * order of their identity hash codes, so that templates constructing into each other's models
+	 * cannot deadlock.
+	 * @param sparql CONSTRUCT or DESCRIBE query
+	 * @param target model to add to, not a model over any graph of the queried model or dataset
+	 * @return number of triples sent, including those the target already held
+	 * @throws IllegalArgumentException if the target is backed by a queried graph
+	 */
+	public long execConstruct(String sparql, Model target) {
+		QueryTimer timer = timer("execConstruct", sparql);
+		return construct(createQuery(sparql, Syntax.syntaxARQ, timer), null, target, timer);
+	}
+
+	public long execConstruct(PreparedQuery query, QuerySolution bindings, Model target) {
+		return construct(query.getQuery(), bindings, target, timer("execConstruct", query.getSparql()));
+	}
+
+	private long construct(Query query, QuerySolution bindings, Model target, QueryTimer timer) {
+		Lock sourceLock = readsUnderLock() ? lock() : null;
+		Lock targetLock = locking ? target.getLock() : null;
+		if (endpoint == null && (isQueried(target.getGraph()) || (sourceLock != null && sourceLock == targetLock))) {
+			failed(timer);
+			complete(timer);
+			throw new IllegalArgumentException("Cannot construct into a graph of the queried model");
+		}
+		// the query takes the read lock again, reentrantly, when it is taken first here
+		boolean sourceFirst = sourceLock != null && targetLock != null
+				&& System.identityHashCode(sourceLock) < System.identityHashCode(targetLock);
+		if (sourceFirst) {
+			sourceLock.enterCriticalSection(Lock.READ);
+		}
+		try {
+			if (targetLock != null) {
+				targetLock.enterCriticalSection(Lock.WRITE);
+			}
+			try {
+				return construct(query, bindings, StreamRDFLib.graph(target.getGraph()), timer);
+			} finally {
+				if (targetLock != null) {
+					targetLock.leaveCriticalSection();
+				}
+			}
+		} finally {
+			if (sourceFirst) {
+				sourceLock.leaveCriticalSection();
+			}
+		}
+	}
+
+	/**
+	 * <code>isQueried</code>
+	 * @return true if the graph is, or is a view of, a graph the queries of this template read
+	 */
+	private boolean isQueried(Graph graph) {
+		if (dataset == null) {
+			return dependent(graph, model.getGraph());
+		}
+		DatasetGraph dsg = dataset.asDatasetGraph();
+		if (graph instanceof GraphView && ((GraphView) graph).getDataset() == dsg) {
+			return true;
+		}
+		if (dependent(graph, dsg.getDefaultGraph())) {
+			return true;
+		}
+		if (!isTransactional()) {
+			for (Iterator<Node> names = dsg.listGraphNodes(); names.hasNext(); ) {
+				if (dependent(graph, dsg.getGraph(names.next()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean dependent(Graph a, Graph b) {
+		return a == b || a.dependsOn(b) || b.dependsOn(a);
+	}
+
+	private static StreamRDF writer(OutputStream out, Lang lang) {
+		if (Lang.NTRIPLES.equals(lang)) {
+			return StreamRDFLib.writer(out);
+		}
+		if (Lang.TURTLE.equals(lang)) {
+			return new WriterStreamRDFBlocks(out);
+		}
+		throw new IllegalArgumentException("No streaming writer for " + lang + ", use N-Triples or Turtle");
+	}
+
+	private long construct(Query query, QuerySolution bindings, StreamRDF sink, QueryTimer timer) {
+		StreamRDFCounting counting = StreamRDFLib.count(sink);
+		QueryExecution qe = createQueryExecution(query, bindings);
+		try {
+			if (qe instanceof RemoteQueryExecution) {
+				// the parser starts and finishes the sink itself
+				((RemoteQueryExecution) qe).execTriples(counting);
+			} else {
+				Iterator<Triple> triples = query.isDescribeType() ? qe.execDescribeTriples() : qe.execConstructTriples();
+				if (timer != null) {
+					timer.executed();
+				}
+				counting.start();
+				for (Map.Entry<String, String> prefix : query.getPrefixMapping().getNsPrefixMap().entrySet()) {
+					counting.prefix(prefix.getKey(), prefix.getValue());
+				}
+				while (triples.hasNext()) {
+					counting.triple(triples.next());
+				}
+				counting.finish();
+			}
+			if (timer != null) {
+				timer.rows(counting.countTriples());
+			}
+			return counting.countTriples();
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
+		} finally {
+			release(qe);
+			complete(timer);
+		}
+	}
+
+	/**
+	 * <code>execSelect</code>
+	 * 
+	 * Writes the results of a SELECT to the stream as they are read, e.g. as the body of an
+	 * HTTP response.  Rows go from ARQ's bindings to UTF-8 bytes in a fixed buffer, memory
+	 * stays constant whatever the number of rows.
+	 * 
+	 * @param sparql SELECT query
+	 * @param out stream to write to, flushed but not closed
+	 * @param format serialization, see ResultFormat.getContentType() for its media type
+	 * @return number of rows written
+	 * @throws IOException if the stream cannot be written, the query is then abandoned
+	 */
+	public long execSelect(String sparql, OutputStream out, ResultFormat format) throws IOException {
+		QueryTimer timer = timer("execSelect", sparql);
+		return write(createQuery(sparql, Syntax.syntaxARQ, timer), null, new ResultSetWriter(out), format, timer);
+	}
+
+	public long execSelect(PreparedQuery query, QuerySolution bindings, OutputStream out, ResultFormat format) throws IOException {
+		return write(query.getQuery(), bindings, new ResultSetWriter(out), format, timer("execSelect", query.getSparql()));
+	}
+
+	/**
+	 * <code>execSelect</code>
+	 * Writes the results of a SELECT to the channel as they are read
+	 * @see #execSelect(String, OutputStream, ResultFormat)
+	 */
+	public long execSelect(String sparql, WritableByteChannel channel, ResultFormat format) throws IOException {
+		QueryTimer timer = timer("execSelect", sparql);
+		return write(createQuery(sparql, Syntax.syntaxARQ, timer), null, new ResultSetWriter(channel), format, timer);
+	}
+
+	public long execSelect(PreparedQuery query, QuerySolution bindings, WritableByteChannel channel, ResultFormat format) throws IOException {
+		return write(query.getQuery(), bindings, new ResultSetWriter(channel), format, timer("execSelect", query.getSparql()));
+	}
+
+	private long write(Query query, QuerySolution bindings, ResultSetWriter writer, ResultFormat format, QueryTimer timer)
+			throws IOException {
+		QueryExecution qe = createQueryExecution(query, bindings);
+		try {
+			long rows = writer.write(execSelect(qe, timer), format);
+			if (timer != null) {
+				timer.rows(rows);
+			}
+			return rows;
+		} catch (IOException e) {
+			failed(timer);
+			throw e;
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
+		} finally {
+			release(qe);
+			complete(timer);
+		}
 	}
 
 
@@ -187,15 +1254,17 @@ public class SparqlTemplate {
 	 * whose keys are variable names and values are the String values for those variables
 	 * @return Map<String, String> of variable names and values for the solution
 	 */
-	class mapSolutionMapper implements SolutionMapper<Map<String, String>> {
-		public Map<String, String> mapSelect(ResultSet rs, int number) {
-			QuerySolution sol = rs.nextSolution();
-			Map<String, String> row = new HashMap<String, String>();
-			for (Iterator<String> varNames = sol.varNames(); varNames.hasNext(); ) {
-				String varName = varNames.next();
-				row.put(varName, sol.get(varName).toString());
+	class mapSolutionMapper implements SolutionRowMapper<Map<String, String>> {
+		public Map<String, String> mapRow(SolutionRow row, int number) {
+			Map<String, String> map = new HashMap<String, String>(capacity(row.size()));
+			for (int i = 0; i < row.size(); i++) {
+				Node n = row.get(i);
+				if (n != null) {
+					// same text as RDFNode.toString()
+					map.put(row.getVarName(i), n.toString(false));
+				}
 			}
-			return row;
+			return map;
 		}
 	}
 
@@ -204,18 +1273,25 @@ public class SparqlTemplate {
 	 * whose keys are variable names and values are the (possibly typed) values for those variables
 	 * @return Map<String, Object> of variable names and values for the solution
 	 */
-	class genericMapSolutionMapper implements SolutionMapper<Map<String, Object>> {
-		public Map<String, Object> mapSelect(ResultSet rs, int number) {
-			QuerySolution sol = rs.nextSolution();
-			Map<String, Object> row = new HashMap<String, Object>();
-			for (Iterator<String> varNames = sol.varNames(); varNames.hasNext(); ) {
-				String varName = varNames.next();
-				RDFNode varNode = sol.get(varName);
-				row.put(varName, (varNode.isLiteral() ? varNode.asLiteral().getValue() : varNode.toString()));
+	class genericMapSolutionMapper implements SolutionRowMapper<Map<String, Object>> {
+		public Map<String, Object> mapRow(SolutionRow row, int number) {
+			Map<String, Object> map = new HashMap<String, Object>(capacity(row.size()));
+			for (int i = 0; i < row.size(); i++) {
+				Node n = row.get(i);
+				if (n != null) {
+					map.put(row.getVarName(i), n.isLiteral() ? n.getLiteralValue() : n.toString(false));
+				}
 			}
-			return row;
+			return map;
 		}
 	}
+
+	/**
+	 * HashMap capacity holding the given number of entries without rehashing
+	 */
+	private static int capacity(int entries) {
+		return entries * 4 / 3 + 1;
+	}
 	
 	/**
 	 * <code>execSelect(String query)</code>
@@ -223,11 +1299,226 @@ public class SparqlTemplate {
 	 * @return map of parameters in the result set
 	 */
 	public List<Map<String, Object>> execSelectGenericMap(String sparql) {
-		return execSelectList(sparql, new genericMapSolutionMapper());
+		if (sparql == null || sparql.equals(""))
+			return null;
+		ResultCache cache = resultCache();
+		if (cache != null) {
+			return cachedTable(cache, "execSelectGenericMap", sparql, null, null);
+		}
+		QueryTimer timer = timer("execSelectGenericMap", sparql);
+		return selectList(createQuery(sparql, Syntax.syntaxARQ, timer), null, new RowMapperAdapter<Map<String, Object>>(new genericMapSolutionMapper()), timer);
+	}
+
+	public List<Map<String, Object>> execSelectGenericMap(PreparedQuery query, QuerySolution bindings) {
+		ResultCache cache = resultCache();
+		if (cache != null) {
+			return cachedTable(cache, "execSelectGenericMap", query.getSparql(), query.getQuery(), bindings);
+		}
+		return selectList(query.getQuery(), bindings, new RowMapperAdapter<Map<String, Object>>(new genericMapSolutionMapper()),
+				timer("execSelectGenericMap", query.getSparql()));
 	}
 	
 	public Map<String, Object> execSelectSingleGenericMap(String sparql) {
-		return execSelectOne(sparql, new genericMapSolutionMapper());
+		if (sparql == null || sparql.equals(""))
+			return null;
+		QueryTimer timer = timer("execSelectSingleGenericMap", sparql);
+		return selectOne(createQuery(sparql, Syntax.syntaxARQ, timer), null, new RowMapperAdapter<Map<String, Object>>(new genericMapSolutionMapper()), timer);
+	}
+
+	public Map<String, Object> execSelectSingleGenericMap(PreparedQuery query, QuerySolution bindings) {
+		return selectOne(query.getQuery(), bindings, new RowMapperAdapter<Map<String, Object>>(new genericMapSolutionMapper()),
+				timer("execSelectSingleGenericMap", query.getSparql()));
+	}
+
+	/**
+	 * <code>execSelectTable</code>
+	 *
+	 * Compact alternative to execSelectGenericMap: the same values, held by column with one
+	 * shared header instead of a HashMap per row
+	 *
+	 * @param sparql - SELECT based SPARQL to execute
+	 * @return SolutionTable of the results, also readable as a List of Maps
+	 */
+	public SolutionTable execSelectTable(String sparql) {
+		if (sparql == null || sparql.equals(""))
+			return null;
+		ResultCache cache = resultCache();
+		if (cache != null) {
+			return cachedTable(cache, "execSelectTable", sparql, null, null);
+		}
+		QueryTimer timer = timer("execSelectTable", sparql);
+		return selectTable(createQuery(sparql, Syntax.syntaxARQ, timer), null, timer);
+	}
+
+	public SolutionTable execSelectTable(PreparedQuery query, QuerySolution bindings) {
+		ResultCache cache = resultCache();
+		if (cache != null) {
+			return cachedTable(cache, "execSelectTable", query.getSparql(), query.getQuery(), bindings);
+		}
+		return selectTable(query.getQuery(), bindings, timer("execSelectTable", query.getSparql()));
+	}
+
+	/**
+	 * <code>cachedTable</code>
+	 * Looks the SELECT up in the result cache, executing and caching it on a miss
+	 * @param query parsed query, null to parse sparql on a miss only
+	 */
+	private SolutionTable cachedTable(ResultCache cache, String operation, String sparql, Query query, QuerySolution bindings) {
+		ResultCache.Key key = ResultCache.key("SELECT", sparql, bindings);
+		// read before executing, a change during the query keeps its result out of the cache
+		long version = cache.getVersion();
+		SolutionTable table = (SolutionTable) cache.get(key, version);
+		if (table == null) {
+			QueryTimer timer = timer(operation, sparql);
+			table = selectTable(query != null ? query : createQuery(sparql, Syntax.syntaxARQ, timer), bindings, timer);
+			cache.put(key, table, (long) table.size() * table.getColumnCount(), version);
+		}
+		return table;
+	}
+
+	private SolutionTable selectTable(Query query, QuerySolution bindings, QueryTimer timer) {
+		QueryExecution qe = createQueryExecution(query, bindings);
+		try {
+			ResultSet rs = execSelect(qe, timer);
+			SolutionTable table = new SolutionTable(rs.getResultVars());
+			SolutionRow row = new SolutionRow(rs.getResultVars());
+			while (rs.hasNext()) {
+				row.setBinding(rs.nextBinding());
+				table.addRow(row);
+			}
+			table.trim();
+			return table;
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
+		} finally {
+			release(qe);
+			complete(timer);
+		}
+	}
+
+	/**
+	 * <code>execFetch</code>
+	 * @see #execFetch(Collection, List, int)
+	 */
+	public ResourceTable execFetch(Collection<String> subjects, List<String> properties) {
+		return execFetch(subjects, properties, DEFAULT_FETCH_CHUNK_SIZE);
+	}
+
+	/**
+	 * <code>execFetch</code>
+	 * 
+	 * Fetches the values of the properties of many resources at once, rather than running
+	 * one query per resource.  A plain local model is probed directly through its graph,
+	 * under a single read lock.  Datasets and endpoints get one SELECT per chunk of subjects,
+	 * with the subjects and the properties in VALUES blocks, so a chunk is one round trip.
+	 * 
+	 * @param subjects URIs of the resources, duplicates are fetched once
+	 * @param properties URIs of the properties, null or empty to fetch every property
+	 * @param chunkSize maximum number of subjects per query
+	 * @return the values grouped per subject, in the order of the subjects
+	 */
+	public ResourceTable execFetch(Collection<String> subjects, List<String> properties, int chunkSize) {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+		}
+		ResourceTable table = new ResourceTable(subjects, properties);
+		if (endpoint == null && dataset == null) {
+			probe(table);
+		} else {
+			for (int start = 0; start < table.size(); start += chunkSize) {
+				fetchChunk(table, start, Math.min(start + chunkSize, table.size()));
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * <code>probe</code>
+	 * Fills the table with Graph.find() lookups on the subject, or on the subject and each property
+	 */
+	private void probe(ResourceTable table) {
+		QueryTimer timer = timer("execFetch", null);
+		if (locking) {
+			model.getLock().enterCriticalSection(Lock.READ);
+		}
+		try {
+			Graph graph = model.getGraph();
+			List<Node> properties = table.isAllProperties() ? Collections.singletonList(Node.ANY) : table.getPropertyNodes();
+			for (int i = 0; i < table.size(); i++) {
+				Node subject = table.getSubjectNode(i);
+				for (Node property : properties) {
+					Iterator<Triple> it = graph.find(subject, property, Node.ANY);
+					while (it.hasNext()) {
+						Triple t = it.next();
+						table.add(i, t.getPredicate(), t.getObject());
+					}
+				}
+			}
+			if (timer != null) {
+				timer.executed();
+				timer.rows(table.getValueCount());
+			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw e;
+		} finally {
+			if (locking) {
+				model.getLock().leaveCriticalSection();
+			}
+			complete(timer);
+		}
+	}
+
+	/**
+	 * <code>fetchChunk</code>
+	 * Runs SELECT ?s ?p ?o WHERE { VALUES ?s {...} VALUES ?p {...} ?s ?p ?o } for the subjects
+	 * from start to end, built as a Query so that nothing is parsed or cached per chunk
+	 */
+	private void fetchChunk(ResourceTable table, int start, int end) {
+		Var s = Var.alloc("s");
+		Var p = Var.alloc("p");
+		Var o = Var.alloc("o");
+		ElementGroup pattern = new ElementGroup();
+		ElementData subjects = new ElementData();
+		subjects.add(s);
+		for (int i = start; i < end; i++) {
+			subjects.add(BindingFactory.binding(s, table.getSubjectNode(i)));
+		}
+		pattern.addElement(subjects);
+		if (!table.isAllProperties()) {
+			ElementData properties = new ElementData();
+			properties.add(p);
+			for (Node property : table.getPropertyNodes()) {
+				properties.add(BindingFactory.binding(p, property));
+			}
+			pattern.addElement(properties);
+		}
+		ElementTriplesBlock triples = new ElementTriplesBlock();
+		triples.addTriple(Triple.create(s, p, o));
+		pattern.addElement(triples);
+		Query query = new Query();
+		query.setQuerySelectType();
+		query.addResultVar(s);
+		query.addResultVar(p);
+		query.addResultVar(o);
+		query.setQueryPattern(pattern);
+		
+		QueryTimer timer = metricsSink == null ? null : timer("execFetch", query.toString());
+		QueryExecution qe = createQueryExecution(query, null);
+		try {
+			ResultSet rs = execSelect(qe, timer);
+			while (rs.hasNext()) {
+				Binding b = rs.nextBinding();
+				table.add(b.get(s), b.get(p), b.get(o));
+			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
+		} finally {
+			release(qe);
+			complete(timer);
+		}
 	}
 
 
@@ -240,10 +1531,19 @@ public class SparqlTemplate {
 	public Map<String, String> execSelectStringMap(String sparql) {
 		if (sparql == null || sparql.equals(""))
 			return null;
+		QueryTimer timer = timer("execSelectStringMap", sparql);
+		return selectStringMap(createQuery(sparql, Syntax.defaultQuerySyntax, timer), null, timer);
+	}
+
+	public Map<String, String> execSelectStringMap(PreparedQuery query, QuerySolution bindings) {
+		return selectStringMap(query.getQuery(), bindings, timer("execSelectStringMap", query.getSparql()));
+	}
+
+	private Map<String, String> selectStringMap(Query query, QuerySolution bindings, QueryTimer timer) {
 		Map<String, String> result = new HashMap<String, String>();
-		QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparql), model);
+		QueryExecution qe = createQueryExecution(query, bindings);
 		try {
-			ResultSet rs = qe.execSelect();
+			ResultSet rs = execSelect(qe, timer);
 			while (rs.hasNext()) {
 				QuerySolution sol = rs.nextSolution();
 				for (Iterator<String> varNames = sol.varNames(); varNames.hasNext(); ) {
@@ -251,8 +1551,12 @@ public class SparqlTemplate {
 					result.put(varName, sol.get(varName).toString());
 				}
 			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
 		} finally {
-			qe.close();
+			release(qe);
+			complete(timer);
 		}
 		return result;
 	}
@@ -265,10 +1569,19 @@ public class SparqlTemplate {
 	public String execSelectString(String sparql) {
 		if (sparql == null || sparql.equals(""))
 			return null;
+		QueryTimer timer = timer("execSelectString", sparql);
+		return selectString(createQuery(sparql, Syntax.syntaxARQ, timer), null, timer);
+	}
+
+	public String execSelectString(PreparedQuery query, QuerySolution bindings) {
+		return selectString(query.getQuery(), bindings, timer("execSelectString", query.getSparql()));
+	}
+
+	private String selectString(Query query, QuerySolution bindings, QueryTimer timer) {
 		String result = null;
-		QueryExecution qe = QueryExecutionFactory.create(QueryFactory.create(sparql, Syntax.syntaxARQ), model);
+		QueryExecution qe = createQueryExecution(query, bindings);
 		try {
-			ResultSet rs = qe.execSelect();
+			ResultSet rs = execSelect(qe, timer);
 			while (rs.hasNext()) {
 				QuerySolution sol = rs.nextSolution();
 				for (Iterator<String> varNames = sol.varNames(); varNames.hasNext(); ) {
@@ -276,12 +1589,119 @@ public class SparqlTemplate {
 					result = sol.get(varName).toString();
 				}
 			}
+		} catch (RuntimeException e) {
+			failed(timer);
+			throw translate(e, cancellation);
 		} finally {
-			qe.close();
+			release(qe);
+			complete(timer);
 		}
 		return result;
 	}
 
+	/**
+	 * <code>AsyncQuery</code>
+	 * Unit of work run by submit() against a template bound to the future's cancellation
+	 */
+	private interface AsyncQuery<T> {
+		T run(SparqlTemplate template);
+	}
+
+	/**
+	 * <code>submit</code>
+	 * 
+	 * Runs the query on the async executor.  Like any other query it reads under the model's
+	 * read lock, so asynchronous queries read the model concurrently while writers wait.
+	 * Cancelling the returned future aborts the running query.
+	 */
+	private <T> ListenableFuture<T> submit(final AsyncQuery<T> query) {
+		final QueryCancellation futureCancellation = new QueryCancellation(cancellation);
+		final SparqlTemplate template = withCancellation(futureCancellation);
+		ListenableFutureTask<T> task = new ListenableFutureTask<T>(new Callable<T>() {
+			public T call() {
+				return query.run(template);
+			}
+		}) {
+			@Override
+			public boolean cancel(boolean mayInterruptIfRunning) {
+				futureCancellation.cancel();
+				return super.cancel(mayInterruptIfRunning);
+			}
+		};
+		getAsyncExecutor().execute(task);
+		return task;
+	}
+
+	/**
+	 * <code>execSelectListAsync</code>
+	 * 
+	 * Asynchronous execSelectList, running on the async executor.  Independent queries
+	 * submitted together run in parallel, so waiting on all of them takes about as long
+	 * as the slowest one.
+	 * 
+	 * @param <T> Template for the List of objects to be returned
+	 * @param sparql the String representing the SPARQL query
+	 * @param mapper the Implementation of SolutionMapper<T>
+	 * @return ListenableFuture of the mapped results, cancelling it aborts the query
+	 */
+	public <T> ListenableFuture<List<T>> execSelectListAsync(final String sparql, final SolutionMapper<T> mapper) {
+		return submit(new AsyncQuery<List<T>>() {
+			public List<T> run(SparqlTemplate template) {
+				return template.execSelectList(sparql, mapper);
+			}
+		});
+	}
+
+	public <T> ListenableFuture<List<T>> execSelectListAsync(final PreparedQuery query, final QuerySolution bindings,
+			final SolutionMapper<T> mapper) {
+		return submit(new AsyncQuery<List<T>>() {
+			public List<T> run(SparqlTemplate template) {
+				return template.execSelectList(query, bindings, mapper);
+			}
+		});
+	}
+
+	public <T> ListenableFuture<T> execSelectOneAsync(final String sparql, final SolutionMapper<T> mapper) {
+		return submit(new AsyncQuery<T>() {
+			public T run(SparqlTemplate template) {
+				return template.execSelectOne(sparql, mapper);
+			}
+		});
+	}
+
+	public <T> ListenableFuture<T> execSelectOneAsync(final PreparedQuery query, final QuerySolution bindings,
+			final SolutionMapper<T> mapper) {
+		return submit(new AsyncQuery<T>() {
+			public T run(SparqlTemplate template) {
+				return template.execSelectOne(query, bindings, mapper);
+			}
+		});
+	}
+
+	public ListenableFuture<List<Map<String, Object>>> execSelectGenericMapAsync(final String sparql) {
+		return submit(new AsyncQuery<List<Map<String, Object>>>() {
+			public List<Map<String, Object>> run(SparqlTemplate template) {
+				return template.execSelectGenericMap(sparql);
+			}
+		});
+	}
+
+	public ListenableFuture<Model> execConstructAsync(final String sparql) {
+		return submit(new AsyncQuery<Model>() {
+			public Model run(SparqlTemplate template) {
+				return template.execConstruct(sparql);
+			}
+		});
+	}
+
+	public ListenableFuture<Model> execConstructAsync(final PreparedQuery query, final QuerySolution bindings) {
+		return submit(new AsyncQuery<Model>() {
+			public Model run(SparqlTemplate template) {
+				return template.execConstruct(query, bindings);
+			}
+		});
+	}
+
 
 	/**
 	 * <code>debug</code>
@@ -291,14 +1711,13 @@ public class SparqlTemplate {
 	public void debug() {
 		String sparql = "SELECT ?x ?y ?z WHERE { ?x ?y ?z} ";
 
-		Query query = QueryFactory.create(sparql);
-		QueryExecution qe = QueryExecutionFactory.create(query, model);
+		QueryExecution qe = createQueryExecution(createQuery(sparql, Syntax.defaultQuerySyntax, null), null);
 
 		try {
 			ResultSet rs = qe.execSelect();
 			ResultSetFormatter.out(System.out, rs);
 		} finally {
-			qe.close();
+			release(qe);
 		}
 
 	}
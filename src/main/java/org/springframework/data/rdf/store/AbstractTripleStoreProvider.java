@@ -0,0 +1,122 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.store;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.data.rdf.jena.JenaTemplate;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.ReadWrite;
+
+/**
+ * <code>AbstractTripleStoreProvider</code>
+ * 
+ * Base class for providers: opens the Dataset once, loads the initial data into an empty
+ * store and closes the Dataset when the Spring context shuts down.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public abstract class AbstractTripleStoreProvider implements TripleStoreProvider, InitializingBean, DisposableBean {
+
+	private Resource[] initialData;
+
+	private Dataset dataset;
+
+	/**
+	 * <code>setInitialData</code>
+	 * RDF files imported into the default graph when the store is opened empty, the syntax
+	 * is taken from each file name
+	 * @param initialData Spring resources, e.g. classpath:data.ttl
+	 */
+	public void setInitialData(Resource... initialData) {
+		this.initialData = initialData;
+	}
+
+	public Resource[] getInitialData() {
+		return initialData;
+	}
+
+	public synchronized Dataset getDataset() {
+		if (dataset == null) {
+			Dataset opened = createDataset();
+			if (initialData != null && initialData.length > 0 && isEmpty(opened)) {
+				load(opened);
+			}
+			dataset = opened;
+		}
+		return dataset;
+	}
+
+	/**
+	 * <code>createDataset</code>
+	 * @return newly opened Dataset
+	 */
+	protected abstract Dataset createDataset();
+
+	private static boolean isEmpty(Dataset dataset) {
+		if (!dataset.supportsTransactions()) {
+			return dataset.getDefaultModel().isEmpty() && !dataset.listNames().hasNext();
+		}
+		dataset.begin(ReadWrite.READ);
+		try {
+			return dataset.getDefaultModel().isEmpty() && !dataset.listNames().hasNext();
+		} finally {
+			dataset.end();
+		}
+	}
+
+	private void load(Dataset opened) {
+		JenaTemplate template = new JenaTemplate();
+		template.setDataset(opened);
+		for (Resource resource : initialData) {
+			try {
+				template.importResource(resource);
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not load initial data from " + resource, e);
+			}
+		}
+	}
+
+	public void afterPropertiesSet() {
+		getDataset();
+	}
+
+	public void destroy() {
+		close();
+	}
+
+	public synchronized void close() {
+		if (dataset != null) {
+			closeDataset(dataset);
+			dataset = null;
+		}
+	}
+
+	/**
+	 * <code>closeDataset</code>
+	 * @param dataset the open Dataset, closed by default
+	 */
+	protected void closeDataset(Dataset dataset) {
+		dataset.close();
+	}
+
+}
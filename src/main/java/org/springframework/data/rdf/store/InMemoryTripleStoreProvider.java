@@ -0,0 +1,54 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.store;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+/**
+ * <code>InMemoryTripleStoreProvider</code>
+ * 
+ * Heap-based store, rebuilt from its initial data on every start.  With
+ * <code>transactional</code> set an in-memory TDB dataset is used, which supports
+ * JenaTransactionManager, otherwise a plain in-memory dataset guarded by the templates' locks.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class InMemoryTripleStoreProvider extends AbstractTripleStoreProvider {
+
+	private boolean transactional;
+
+	public void setTransactional(boolean transactional) {
+		this.transactional = transactional;
+	}
+
+	public boolean isTransactional() {
+		return transactional;
+	}
+
+	@Override
+	protected Dataset createDataset() {
+		return transactional ? TDBFactory.createDataset() : DatasetFactory.createMem();
+	}
+
+	public boolean isPersistent() {
+		return false;
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.store;
+
+import java.io.File;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.tdb.TDB;
+import com.hp.hpl.jena.tdb.TDBFactory;
+import com.hp.hpl.jena.tdb.base.block.FileMode;
+import com.hp.hpl.jena.tdb.sys.SystemTDB;
+
+/**
+ * <code>TdbTripleStoreProvider</code>
+ * 
+ * Persistent store in a TDB directory.  Opening an existing store takes seconds whatever its
+ * size, since TDB pages its indexes in from disk on demand instead of loading the graph into
+ * the heap.  Initial data is only imported when the directory is new or empty.
+ * 
+ * The dataset is transactional, use it with JenaTransactionManager or let the templates
+ * commit each operation.
+ * 
+ * Spring XML example:
+ * <pre>
+ * &lt;bean id="store" class="org.springframework.data.rdf.store.TdbTripleStoreProvider"&gt;
+ *     &lt;property name="location" value="/var/data/tdb"/&gt;
+ *     &lt;property name="initialData" value="classpath:seed.ttl"/&gt;
+ * &lt;/bean&gt;
+ * </pre>
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class TdbTripleStoreProvider extends AbstractTripleStoreProvider {
+
+	private String location;
+
+	private FileMode fileMode;
+
+	private boolean unionDefaultGraph;
+
+	public TdbTripleStoreProvider() { }
+
+	/**
+	 * Constructor - TDB directory
+	 * @param location directory of the store, created if missing
+	 */
+	public TdbTripleStoreProvider(String location) {
+		this.location = location;
+	}
+
+	public void setLocation(String location) {
+		this.location = location;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * <code>setFileMode</code>
+	 * TDB file access, <code>mapped</code> (memory-mapped, the default on 64 bit JVMs) or
+	 * <code>direct</code> (TDB's own block cache).  The setting is JVM wide and only takes
+	 * effect when set before the first TDB dataset is opened.
+	 * @param fileMode FileMode, null to keep TDB's default
+	 */
+	public void setFileMode(FileMode fileMode) {
+		this.fileMode = fileMode;
+	}
+
+	public FileMode getFileMode() {
+		return fileMode;
+	}
+
+	/**
+	 * <code>setUnionDefaultGraph</code>
+	 * @param unionDefaultGraph true to query the union of the named graphs as the default graph
+	 */
+	public void setUnionDefaultGraph(boolean unionDefaultGraph) {
+		this.unionDefaultGraph = unionDefaultGraph;
+	}
+
+	public boolean isUnionDefaultGraph() {
+		return unionDefaultGraph;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		if (location == null || location.equals("")) {
+			throw new IllegalArgumentException("Property 'location' is required");
+		}
+		super.afterPropertiesSet();
+	}
+
+	@Override
+	protected Dataset createDataset() {
+		if (fileMode != null && SystemTDB.fileMode() != fileMode) {
+			SystemTDB.setFileMode(fileMode);
+		}
+		File dir = new File(location);
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IllegalStateException("Could not create TDB directory " + location);
+		}
+		Dataset dataset = TDBFactory.createDataset(location);
+		if (unionDefaultGraph) {
+			dataset.getContext().set(TDB.symUnionDefaultGraph, true);
+		}
+		return dataset;
+	}
+
+	@Override
+	protected void closeDataset(Dataset dataset) {
+		if (!dataset.supportsTransactions() || !dataset.isInTransaction()) {
+			TDB.sync(dataset);
+		}
+		dataset.close();
+	}
+
+	public boolean isPersistent() {
+		return true;
+	}
+
+}
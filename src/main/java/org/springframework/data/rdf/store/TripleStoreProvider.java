@@ -0,0 +1,50 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.store;
+
+import com.hp.hpl.jena.query.Dataset;
+
+/**
+ * <code>TripleStoreProvider</code>
+ * 
+ * Source of the Dataset the templates work on, so that the store behind JenaTemplate and
+ * SparqlTemplate (setTripleStoreProvider) is chosen in Spring configuration rather than code.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public interface TripleStoreProvider {
+
+	/**
+	 * <code>getDataset</code>
+	 * @return the store's Dataset, opened on first use
+	 */
+	Dataset getDataset();
+
+	/**
+	 * <code>isPersistent</code>
+	 * @return true if the data outlives the provider
+	 */
+	boolean isPersistent();
+
+	/**
+	 * <code>close</code>
+	 * Releases the Dataset, persistent stores are flushed to disk first
+	 */
+	void close();
+
+}
@@ -0,0 +1,191 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.transaction;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.rdf.jena.ModelVersionTracker;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.ResourceHolderSupport;
+import org.springframework.transaction.support.SmartTransactionObject;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.query.ReadWrite;
+
+/**
+ * <code>JenaTransactionManager</code>
+ * 
+ * PlatformTransactionManager for a transactional Jena Dataset, e.g. one created with
+ * TDBFactory.  A Spring transaction maps onto a Dataset transaction on the current thread:
+ * read-only transactions (<code>@Transactional(readOnly = true)</code>) begin a READ
+ * transaction, which never blocks or is blocked by writers, all others a WRITE transaction
+ * that is committed, and made durable, once when the Spring transaction completes.
+ * 
+ * JenaTemplate and SparqlTemplate configured with the same Dataset (setDataset) join the
+ * current transaction, so any number of template calls share one commit.  Outside a
+ * transaction they commit each operation on their own.
+ * 
+ * Dataset transactions are bound to their thread and cannot be suspended, so REQUIRES_NEW
+ * and NOT_SUPPORTED fail while a transaction is active; nested transactions are not supported.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class JenaTransactionManager extends AbstractPlatformTransactionManager implements InitializingBean {
+
+	private static final long serialVersionUID = 1L;
+
+	private Dataset dataset;
+
+	private ModelVersionTracker versionTracker;
+
+	public JenaTransactionManager() { }
+
+	/**
+	 * Constructor - transactional Dataset
+	 * @param dataset
+	 */
+	public JenaTransactionManager(Dataset dataset) {
+		this.dataset = dataset;
+		afterPropertiesSet();
+	}
+
+	public void setDataset(Dataset dataset) {
+		this.dataset = dataset;
+	}
+
+	public Dataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * <code>setVersionTracker</code>
+	 * @param versionTracker tracker to notify when a write transaction commits
+	 */
+	public void setVersionTracker(ModelVersionTracker versionTracker) {
+		this.versionTracker = versionTracker;
+	}
+
+	public ModelVersionTracker getVersionTracker() {
+		return versionTracker;
+	}
+
+	public void afterPropertiesSet() {
+		if (dataset == null) {
+			throw new IllegalArgumentException("Property 'dataset' is required");
+		}
+		if (!dataset.supportsTransactions()) {
+			throw new IllegalArgumentException("Dataset does not support transactions: " + dataset);
+		}
+	}
+
+	@Override
+	protected Object doGetTransaction() {
+		return new JenaTransactionObject((DatasetHolder) TransactionSynchronizationManager.getResource(dataset));
+	}
+
+	@Override
+	protected boolean isExistingTransaction(Object transaction) {
+		return ((JenaTransactionObject) transaction).holder != null;
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+		JenaTransactionObject txObject = (JenaTransactionObject) transaction;
+		ReadWrite mode = definition.isReadOnly() ? ReadWrite.READ : ReadWrite.WRITE;
+		try {
+			dataset.begin(mode);
+		} catch (RuntimeException e) {
+			throw new CannotCreateTransactionException("Could not begin " + mode + " transaction on " + dataset, e);
+		}
+		txObject.holder = new DatasetHolder(mode);
+		txObject.holder.setSynchronizedWithTransaction(true);
+		TransactionSynchronizationManager.bindResource(dataset, txObject.holder);
+	}
+
+	@Override
+	protected void doCommit(DefaultTransactionStatus status) throws TransactionException {
+		JenaTransactionObject txObject = (JenaTransactionObject) status.getTransaction();
+		if (txObject.holder.mode == ReadWrite.WRITE) {
+			try {
+				dataset.commit();
+			} catch (RuntimeException e) {
+				throw new TransactionSystemException("Could not commit transaction on " + dataset, e);
+			}
+			if (versionTracker != null) {
+				versionTracker.changed();
+			}
+		}
+	}
+
+	@Override
+	protected void doRollback(DefaultTransactionStatus status) throws TransactionException {
+		JenaTransactionObject txObject = (JenaTransactionObject) status.getTransaction();
+		if (txObject.holder.mode == ReadWrite.WRITE) {
+			try {
+				dataset.abort();
+			} catch (RuntimeException e) {
+				throw new TransactionSystemException("Could not roll back transaction on " + dataset, e);
+			}
+		}
+	}
+
+	@Override
+	protected void doSetRollbackOnly(DefaultTransactionStatus status) throws TransactionException {
+		((JenaTransactionObject) status.getTransaction()).holder.setRollbackOnly();
+	}
+
+	@Override
+	protected void doCleanupAfterCompletion(Object transaction) {
+		TransactionSynchronizationManager.unbindResource(dataset);
+		if (dataset.isInTransaction()) {
+			dataset.end();
+		}
+	}
+
+	/**
+	 * <code>DatasetHolder</code>
+	 * Thread-bound marker of the active transaction and its mode
+	 */
+	private static class DatasetHolder extends ResourceHolderSupport {
+		private final ReadWrite mode;
+
+		DatasetHolder(ReadWrite mode) {
+			this.mode = mode;
+		}
+	}
+
+	private static class JenaTransactionObject implements SmartTransactionObject {
+		private DatasetHolder holder;
+
+		JenaTransactionObject(DatasetHolder holder) {
+			this.holder = holder;
+		}
+
+		public boolean isRollbackOnly() {
+			return holder != null && holder.isRollbackOnly();
+		}
+
+		public void flush() { }
+	}
+
+}
@@ -17,14 +17,32 @@ package org.springframework.data.rdf.jena;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.rdf.metrics.SimpleMetricsSink;
 
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Property;
+import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.rdf.model.ResourceFactory;
+import com.hp.hpl.jena.shared.AddDeniedException;
+import com.hp.hpl.jena.sparql.graph.GraphReadOnly;
+import com.hp.hpl.jena.vocabulary.RDF;
 
 
 /**
@@ -160,4 +178,259 @@ public class TestJenaTemplate {
 		assertEquals(template.getModel().size(), (long) 2 );
 	}
 
+	@Test
+	public void testBatchWriter() {
+		BatchWriter writer = template.batchWriter(2);
+		writer.add(resource, property, value);
+		assertEquals(writer.getPendingCount(), 1);
+		assertEquals(model.size(), 0);
+		
+		writer.add(resource, property2, date);
+		assertEquals(writer.getPendingCount(), 0);
+		assertEquals(model.size(), 2);
+		
+		writer.connect(resource, connect, resource2);
+		writer.close();
+		assertEquals(model.size(), 3);
+		assertEquals(writer.getTripleCount(), 3);
+		assertTrue(template.exists(resource, property, value));
+		assertTrue(template.exists(resource, connect, resource2));
+	}
+
+	@Test
+	public void testBatchWriterFailedFlush() {
+		template.setModel(ModelFactory.createModelForGraph(new GraphReadOnly(model.getGraph())));
+		BatchWriter writer = template.batchWriter(2);
+		writer.add(resource, property, value);
+		try {
+			writer.add(resource, property2, value2);
+			fail("read-only model");
+		} catch (AddDeniedException e) {
+		}
+		// the chunk is kept for the next flush
+		assertEquals(2, writer.getPendingCount());
+		assertEquals(0, writer.getTripleCount());
+		
+		template.setModel(model);
+		writer.connect(resource, connect, resource2);
+		writer.close();
+		assertEquals(3, model.size());
+		assertEquals(3, writer.getTripleCount());
+	}
+
+	@Test
+	public void testImportResource() throws Exception {
+		StringBuilder nt = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			nt.append("<" + resource + i + "> <" + property + "> \"" + value + i + "\" .\n");
+			nt.append("<" + resource + i + "> <" + connect + "> _:b" + (i % 10) + " .\n");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+		gzip.write(nt.toString().getBytes("UTF-8"));
+		gzip.close();
+		
+		final List<ImportStatistics> progress = new ArrayList<ImportStatistics>();
+		ImportStatistics stats = template.importer()
+				.setThreads(4)
+				.setChunkLines(7)
+				.setListener(new ImportListener() {
+					public void progress(ImportStatistics statistics) {
+						progress.add(statistics);
+					}
+				}, 50)
+				.importResource(new ByteArrayResource(bytes.toByteArray()) {
+					@Override
+					public String getFilename() {
+						return "data.nt.gz";
+					}
+				});
+		
+		assertEquals(stats.getTriples(), 200);
+		assertTrue(stats.isFinished());
+		assertTrue(progress.size() > 1);
+		assertEquals(model.size(), 200);
+		assertTrue(template.exists(resource + 42, property, value + 42));
+		// blank nodes with the same label are the same node, whichever chunk they were parsed in
+		assertEquals(model.listObjectsOfProperty(model.createProperty(connect)).toList().size(), 10);
+		
+		template.importResource(new ClassPathResource("org/springframework/data/rdf/jena/test.ttl"));
+		assertTrue(template.exists("http://www.test.com/imported", property, "turtle"));
+	}
+
+	@Test
+	public void testMetricsSink() {
+		SimpleMetricsSink sink = new SimpleMetricsSink();
+		template.setMetricsSink(sink);
+		template.add(resource, property, value);
+		template.add(resource, property2, value2);
+		template.exists(resource, property, value);
+		template.removeResource(resource);
+		
+		assertEquals(sink.getOperationStatistics("add").getCount(), 2);
+		assertEquals(sink.getOperationStatistics("exists").getCount(), 1);
+		assertEquals(sink.getOperationStatistics("removeResource").getCount(), 1);
+		assertEquals(sink.getOperationStatistics("removeResource").getFailures(), 0);
+	}
+
+	@Test
+	public void testSetSingletonAtomic() throws Exception {
+		template.setSingleton(resource, property, "v0");
+		final Resource r = model.createResource(resource);
+		final Property p = model.createProperty(property);
+		final List<Integer> counts = new ArrayList<Integer>();
+		Thread reader = new Thread() {
+			public void run() {
+				for (int i = 0; i < 2000; i++) {
+					int count = template.executeRead(new ModelCallback<Integer>() {
+						public Integer doInModel(Model model) {
+							return model.listObjectsOfProperty(r, p).toList().size();
+						}
+					});
+					if (count != 1) {
+						synchronized (counts) {
+							counts.add(count);
+						}
+					}
+				}
+			}
+		};
+		reader.start();
+		for (int i = 1; i <= 2000; i++) {
+			template.setSingleton(resource, property, "v" + i);
+		}
+		reader.join();
+		assertTrue("readers saw a partial setSingleton: " + counts, counts.isEmpty());
+		assertEquals("v2000", model.getProperty(r, p).getString());
+	}
+
+	@Test
+	public void testVersionTracker() {
+		ModelVersionTracker tracker = new ModelVersionTracker();
+		template.setVersionTracker(tracker);
+		template.add(resource, property, value);
+		assertEquals(1, tracker.getVersion());
+		template.exists(resource, property, value);
+		assertEquals(1, tracker.getVersion());
+
+		tracker.track(model);
+		model.createResource(resource2).addProperty(model.createProperty(property2), value2);
+		assertEquals(2, tracker.getVersion());
+	}
+
+	@Test
+	public void testExistsTyped() {
+		template.add(resource, property, value);
+		template.add(resource, property2, date);
+		template.connect(resource, connect, resource2);
+		
+		assertTrue(template.exists(resource, property, ResourceFactory.createPlainLiteral(value)));
+		assertFalse(template.exists(resource, property, ResourceFactory.createResource(value)));
+		assertTrue(template.exists(resource, connect, ResourceFactory.createResource(resource2)));
+		assertTrue(template.exists(resource, property2, (RDFNode) null));
+		assertTrue(template.exists(connect));
+		template.add(uri, property, uri2);
+		assertTrue(template.exists(uri, property, uri2));
+		assertFalse(template.exists(uri2, property, uri));
+		
+		List<Triple> probes = new ArrayList<Triple>();
+		probes.add(Triple.create(NodeFactory.createURI(resource), NodeFactory.createURI(property), NodeFactory.createLiteral(value)));
+		probes.add(Triple.create(NodeFactory.createURI(resource2), Node.ANY, Node.ANY));
+		probes.add(Triple.create(Node.ANY, NodeFactory.createURI(connect), NodeFactory.createURI(resource2)));
+		boolean[] found = template.existsAll(probes);
+		assertTrue(found[0]);
+		assertFalse(found[1]);
+		assertTrue(found[2]);
+	}
+
+	@Test
+	public void testNodeCache() {
+		NodeCache cache = new NodeCache(64);
+		cache.register(RDF.class);
+		assertSame(RDF.type.asNode(), cache.createURI(RDF.type.getURI()));
+		
+		template.setNodeCache(cache);
+		template.add(resource, property, value);
+		template.add(resource2, property, value2);
+		template.connect(resource, RDF.type.getURI(), resource2);
+		List<Triple> triples = model.getGraph().find(Node.ANY, NodeFactory.createURI(property), Node.ANY).toList();
+		assertEquals(2, triples.size());
+		// both triples hold the one interned predicate node
+		assertSame(triples.get(0).getPredicate(), triples.get(1).getPredicate());
+		assertSame(RDF.type.asNode(), model.getGraph().find(Node.ANY, RDF.type.asNode(), Node.ANY).next().getPredicate());
+		assertTrue(cache.getHitCount() >= 3);
+		assertEquals(64, cache.getCapacity());
+		
+		template.setSingleton(resource, property, "changed");
+		template.removePropertyValue(resource2, property, value2);
+		assertTrue(template.exists(resource, property, "changed"));
+		assertFalse(template.exists(resource2, property));
+	}
+
+	@Test
+	public void testChangeFeed() throws Exception {
+		ChangeFeed feed = new ChangeFeed(2, 10);
+		final List<ChangeSet> received = new ArrayList<ChangeSet>();
+		feed.subscribe(new ChangeListener() {
+			public void changed(List<ChangeSet> changes) {
+				received.addAll(changes);
+			}
+		});
+		template.setChangeFeed(feed);
+		
+		template.add(resource, property, value);
+		template.add(resource, property, value);
+		template.setSingleton(resource, property, value2);
+		template.connect(resource, connect, resource2);
+		template.disconnect(resource, connect, resource2);
+		BatchWriter writer = template.batchWriter();
+		writer.add(resource, property2, value);
+		writer.add(resource, property, value2);
+		writer.close();
+		template.removeResource(resource);
+		feed.close();
+		
+		assertEquals(6, received.size());
+		assertEquals(6, feed.getSequence());
+		for (int i = 0; i < received.size(); i++) {
+			assertEquals(i + 1, received.get(i).getSequence());
+		}
+		ChangeSet singleton = received.get(1);
+		assertEquals("setSingleton", singleton.getOperation());
+		assertEquals(value, singleton.getRemoved().get(0).getObject().getLiteralLexicalForm());
+		assertEquals(value2, singleton.getAdded().get(0).getObject().getLiteralLexicalForm());
+		assertEquals("disconnect", received.get(3).getOperation());
+		assertEquals(1, received.get(3).getRemoved().size());
+		assertEquals(1, received.get(4).getAdded().size());
+		assertEquals(2, received.get(5).getRemoved().size());
+		assertEquals(0, model.size());
+	}
+
+	@Test
+	public void testChangeFeedListenerReadingModel() throws Exception {
+		ChangeFeed feed = new ChangeFeed(1, 1);
+		final List<Long> received = new ArrayList<Long>();
+		feed.subscribe(new ChangeListener() {
+			public void changed(List<ChangeSet> changes) {
+				// reads the model while writers wait for room in the buffer
+				assertTrue(template.exists(resource));
+				if (changes.get(0).getSequence() == 1) {
+					throw new Error("listener failure");
+				}
+				received.add(changes.get(0).getSequence());
+			}
+		});
+		template.setChangeFeed(feed);
+		
+		for (int i = 0; i < 5; i++) {
+			template.add(resource, property, value + i);
+		}
+		feed.close();
+		
+		// the delivery thread survives the failing listener
+		assertEquals(Arrays.asList(2L, 3L, 4L, 5L), received);
+		assertEquals(5, feed.getDeliveredCount());
+		assertEquals(0, feed.getDroppedCount());
+	}
+
 }
@@ -0,0 +1,218 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.mapping;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.TypeMismatchDataAccessException;
+import org.springframework.data.rdf.jena.ChangeFeed;
+import org.springframework.data.rdf.jena.ChangeListener;
+import org.springframework.data.rdf.jena.ChangeSet;
+import org.springframework.data.rdf.jena.JenaTemplate;
+import org.springframework.data.rdf.sparql.SparqlTemplate;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.vocabulary.RDF;
+
+/**
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class TestRdfMappingTemplate {
+
+	private static final String NS = "http://www.test.com/";
+
+	private Model model;
+	private JenaTemplate jenaTemplate;
+	private RdfMappingTemplate template;
+
+	@RdfType(NS + "Person")
+	public static class Person {
+		@RdfId
+		private String id;
+		@RdfProperty(NS + "name")
+		private String name;
+		@RdfProperty(NS + "age")
+		private int age;
+		@RdfProperty(NS + "height")
+		private Double height;
+		@RdfProperty(NS + "born")
+		private Date born;
+		@RdfProperty(NS + "homepage")
+		private URI homepage;
+		@RdfProperty(NS + "active")
+		private boolean active;
+
+		public String getId() { return id; }
+		public void setId(String id) { this.id = id; }
+		public String getName() { return name; }
+		public void setName(String name) { this.name = name; }
+		public int getAge() { return age; }
+		public void setAge(int age) { this.age = age; }
+		public Double getHeight() { return height; }
+		public void setHeight(Double height) { this.height = height; }
+		public Date getBorn() { return born; }
+		public void setBorn(Date born) { this.born = born; }
+		public URI getHomepage() { return homepage; }
+		public void setHomepage(URI homepage) { this.homepage = homepage; }
+		public boolean isActive() { return active; }
+		public void setActive(boolean active) { this.active = active; }
+	}
+
+	public static class Unsupported {
+		@RdfId
+		private String id;
+		@RdfProperty(NS + "list")
+		private List<String> list;
+
+		public String getId() { return id; }
+		public void setId(String id) { this.id = id; }
+		public List<String> getList() { return list; }
+		public void setList(List<String> list) { this.list = list; }
+	}
+
+	@Before
+	public void setUp() {
+		model = ModelFactory.createDefaultModel();
+		jenaTemplate = new JenaTemplate();
+		jenaTemplate.setModel(model);
+		template = new RdfMappingTemplate(jenaTemplate, new SparqlTemplate(model));
+	}
+
+	private Person person(String id, String name, int age) {
+		Person p = new Person();
+		p.setId(NS + id);
+		p.setName(name);
+		p.setAge(age);
+		return p;
+	}
+
+	@Test
+	public void testSaveAndFind() throws Exception {
+		Person alice = person("alice", "Alice", 42);
+		alice.setHeight(1.7);
+		alice.setBorn(new Date(1000000000000L));
+		alice.setHomepage(new URI("http://alice.example.org/"));
+		alice.setActive(true);
+		template.save(alice);
+		assertEquals(7, model.size());
+		Resource r = model.createResource(NS + "alice");
+		assertTrue(model.contains(r, RDF.type, model.createResource(NS + "Person")));
+		
+		Person found = template.findById(Person.class, NS + "alice");
+		assertEquals(NS + "alice", found.getId());
+		assertEquals("Alice", found.getName());
+		assertEquals(42, found.getAge());
+		assertEquals(Double.valueOf(1.7), found.getHeight());
+		assertEquals(alice.getBorn(), found.getBorn());
+		assertEquals(alice.getHomepage(), found.getHomepage());
+		assertTrue(found.isActive());
+		assertNull(template.findById(Person.class, NS + "nobody"));
+		// mapped properties without the RdfType do not make a Person
+		model.add(model.createResource(NS + "bob"), model.createProperty(NS + "name"), "Bob");
+		assertNull(template.findById(Person.class, NS + "bob"));
+		model.removeAll(model.createResource(NS + "bob"), null, null);
+		
+		// unmapped properties are neither loaded nor touched by saving
+		model.add(r, model.createProperty(NS + "nickname"), "Al");
+		found.setHeight(null);
+		template.save(found);
+		assertFalse(model.contains(r, model.createProperty(NS + "height")));
+		assertTrue(model.contains(r, model.createProperty(NS + "nickname")));
+		assertNull(template.findById(Person.class, NS + "alice").getHeight());
+		
+		template.delete(found);
+		assertEquals(1, model.size());
+		assertNull(template.findById(Person.class, NS + "alice"));
+	}
+
+	@Test
+	public void testFindAll() {
+		template.saveAll(Arrays.asList(person("a", "A", 1), person("b", "B", 2), person("c", null, 3)));
+		List<Person> all = template.findAll(Person.class);
+		assertEquals(3, all.size());
+		int ages = 0;
+		for (Person p : all) {
+			ages += p.getAge();
+		}
+		assertEquals(6, ages);
+		assertEquals(1, template.getMappingContext().size());
+	}
+
+	@Test
+	public void testSaveDiff() throws Exception {
+		ChangeFeed feed = new ChangeFeed();
+		final List<ChangeSet> received = new ArrayList<ChangeSet>();
+		feed.subscribe(new ChangeListener() {
+			public void changed(List<ChangeSet> changes) {
+				received.addAll(changes);
+			}
+		});
+		jenaTemplate.setChangeFeed(feed);
+		Person bob = person("bob", "Bob", 30);
+		template.save(bob);
+		bob.setAge(31);
+		template.save(bob);
+		template.save(bob);
+		feed.close();
+		
+		assertEquals(4, received.get(0).getAdded().size());
+		ChangeSet update = received.get(1);
+		assertEquals("replace", update.getOperation());
+		assertEquals(1, update.getRemoved().size());
+		assertEquals(1, update.getAdded().size());
+		assertEquals(31, update.getAdded().get(0).getObject().getLiteralValue());
+		// saving an unchanged entity publishes nothing
+		assertEquals(2, received.size());
+	}
+
+	@Test
+	public void testConversion() {
+		model.createResource(NS + "carol")
+				.addProperty(RDF.type, model.createResource(NS + "Person"))
+				.addProperty(model.createProperty(NS + "age"), "57")
+				.addProperty(model.createProperty(NS + "name"), model.createResource(NS + "named"));
+		Person carol = template.findById(Person.class, NS + "carol");
+		assertEquals(57, carol.getAge());
+		assertEquals(NS + "named", carol.getName());
+		
+		model.createResource(NS + "carol").addProperty(model.createProperty(NS + "homepage"), "not a uri");
+		try {
+			template.findById(Person.class, NS + "carol");
+			fail();
+		} catch (TypeMismatchDataAccessException e) {
+			assertTrue(e.getMessage().contains("homepage"));
+		}
+		try {
+			template.findById(Unsupported.class, NS + "carol");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("list"));
+		}
+	}
+
+}
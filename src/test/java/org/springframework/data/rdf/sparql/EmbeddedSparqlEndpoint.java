@@ -0,0 +1,150 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.sparql;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hp.hpl.jena.query.Query;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFormatter;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <code>EmbeddedSparqlEndpoint</code>
+ * 
+ * Minimal SPARQL protocol server over a local model for the remote endpoint tests.
+ * Records the client ports it is called from, so tests can check connection reuse.
+ * 
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+class EmbeddedSparqlEndpoint {
+
+	private final Model model;
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+	final AtomicInteger requests = new AtomicInteger();
+	volatile long delayMillis;
+
+	EmbeddedSparqlEndpoint(Model model) throws IOException {
+		this.model = model;
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/sparql", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					respond(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/sparql";
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		clientPorts.add(exchange.getRemoteAddress().getPort());
+		requests.incrementAndGet();
+		String params = exchange.getRequestMethod().equals("POST") ? read(exchange.getRequestBody())
+				: exchange.getRequestURI().getRawQuery();
+		String sparql = null;
+		for (String param : params.split("&")) {
+			if (param.startsWith("query=")) {
+				sparql = URLDecoder.decode(param.substring(6), "UTF-8");
+			}
+		}
+		if (delayMillis > 0) {
+			try {
+				Thread.sleep(delayMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+		Query query = QueryFactory.create(sparql);
+		String accept = exchange.getRequestHeaders().getFirst("Accept");
+		QueryExecution qe = QueryExecutionFactory.create(query, model);
+		try {
+			OutputStream out = exchange.getResponseBody();
+			if (query.isSelectType()) {
+				ResultSet rs = qe.execSelect();
+				if (accept.contains("tab-separated-values")) {
+					send(exchange, "text/tab-separated-values");
+					ResultSetFormatter.outputAsTSV(out, rs);
+				} else if (accept.contains("json")) {
+					send(exchange, "application/sparql-results+json");
+					ResultSetFormatter.outputAsJSON(out, rs);
+				} else {
+					send(exchange, "application/sparql-results+xml");
+					ResultSetFormatter.outputAsXML(out, rs);
+				}
+			} else if (query.isAskType()) {
+				send(exchange, "application/sparql-results+json");
+				ResultSetFormatter.outputAsJSON(out, qe.execAsk());
+			} else {
+				Model result = query.isConstructType() ? qe.execConstruct() : qe.execDescribe();
+				send(exchange, "application/n-triples");
+				result.write(out, "N-TRIPLES");
+			}
+			out.close();
+		} finally {
+			qe.close();
+		}
+	}
+
+	private static void send(HttpExchange exchange, String contentType) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(200, 0);
+	}
+
+	private static String read(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n; (n = in.read(buffer)) > 0; ) {
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toString("UTF-8");
+	}
+
+}
@@ -17,19 +17,49 @@ package org.springframework.data.rdf.sparql;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.lang.StreamRDFCounting;
+import org.apache.jena.riot.system.StreamRDFLib;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.data.rdf.jena.ModelVersionTracker;
+import org.springframework.data.rdf.metrics.QueryFingerprint;
+import org.springframework.data.rdf.metrics.SimpleMetricsSink;
+import org.springframework.data.rdf.metrics.SimpleMetricsSink.QueryStatistics;
+import org.springframework.util.concurrent.ListenableFuture;
 
+import com.hp.hpl.jena.datatypes.xsd.XSDDatatype;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.query.DatasetFactory;
+import com.hp.hpl.jena.query.QueryExecution;
+import com.hp.hpl.jena.query.QueryExecutionFactory;
+import com.hp.hpl.jena.query.QueryFactory;
 import com.hp.hpl.jena.query.QuerySolution;
+import com.hp.hpl.jena.query.QuerySolutionMap;
 import com.hp.hpl.jena.query.ResultSet;
+import com.hp.hpl.jena.query.ResultSetFactory;
+import com.hp.hpl.jena.query.Syntax;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.rdf.model.RDFNode;
+import com.hp.hpl.jena.rdf.model.Resource;
+import com.hp.hpl.jena.shared.AddDeniedException;
+import com.hp.hpl.jena.shared.Lock;
+import com.hp.hpl.jena.sparql.engine.binding.Binding;
 
 
 
@@ -73,6 +103,34 @@ public class TestSparqlTemplate {
 		assertTrue(list.size() == 2);
 	}
 
+	/**
+	 * Test method for {@link org.springframework.data.rdf.sparql.SparqlTemplate#execSelectIterator(java.lang.String, org.springframework.data.rdf.sparql.SolutionMapper)}.
+	 */
+	@Test
+	public void testExecSelectIterator() {
+		
+		String sparql = "SELECT ?x ?y ?z WHERE { ?x ?y ?z }";
+		SolutionMapper<String> mapper = new SolutionMapper<String>() {
+
+			public String mapSelect(ResultSet rs, int rowNum) {
+				return rs.nextSolution().get("x").toString();
+			} };
+		
+		SolutionIterator<String> it = tmp.execSelectIterator(sparql, mapper);
+		int count = 0;
+		while (it.hasNext()) {
+			assertNotNull(it.next());
+			count++;
+		}
+		assertEquals(count, 2);
+		assertTrue(it.isClosed());
+		
+		it = tmp.execSelectIterator(sparql, mapper);
+		assertNotNull(it.next());
+		it.close();
+		assertFalse(it.hasNext());
+	}
+
 	/**
 	 * Test method for {@link org.springframework.data.rdf.sparql.SparqlTemplate#execSelectOne(java.lang.String, org.springframework.data.rdf.sparql.SolutionMapper)}.
 	 */
@@ -167,4 +225,693 @@ public class TestSparqlTemplate {
 	}
 
 
+	/**
+	 * Test method for {@link org.springframework.data.rdf.sparql.SparqlTemplate#setQueryCache(org.springframework.data.rdf.sparql.QueryCache)}.
+	 */
+	@Test
+	public void testQueryCache() {
+		QueryCache cache = new QueryCache(1);
+		tmp.setQueryCache(cache);
+		
+		String sparql = "SELECT ?z WHERE { <urn:something> ?y ?z }";
+		assertEquals(tmp.execSelectString(sparql), "testval");
+		assertEquals(tmp.execSelectString(sparql), "testval");
+		assertEquals(cache.getMissCount(), 1);
+		assertEquals(cache.getHitCount(), 1);
+		assertNotNull(cache.getQuery(sparql, Syntax.syntaxARQ));
+		
+		tmp.execSelectGenericMap("SELECT ?x ?y ?z WHERE { ?x ?y ?z }");
+		assertEquals(cache.size(), 1);
+		assertEquals(cache.getEvictionCount(), 1);
+	}
+
+	/**
+	 * Test method for {@link org.springframework.data.rdf.sparql.SparqlTemplate#prepare(java.lang.String)}.
+	 */
+	@Test
+	public void testPreparedQuery() {
+		PreparedQuery query = tmp.prepare("SELECT ?s ?z WHERE { ?s ?y ?z }");
+		assertTrue(query.getVarNames().contains("s"));
+		
+		assertEquals(tmp.execSelectString(query, new Bindings().uri("s", "urn:something")), "testval");
+		assertEquals(tmp.execSelectString(query, new Bindings().uri("s", "urn:something2")), "testval2");
+		assertNull(tmp.execSelectString(query, new Bindings().uri("s", "urn:nothing")));
+		
+		List<Map<String, Object>> rows = tmp.execSelectGenericMap(query, new Bindings().literal("z", "testval2"));
+		assertEquals(rows.size(), 1);
+		assertEquals(rows.get(0).get("s"), "urn:something2");
+		assertEquals(tmp.execSelectGenericMap(query, null).size(), 2);
+		
+		PreparedQuery construct = tmp.prepare("CONSTRUCT { ?s ?y ?z } WHERE { ?s ?y ?z }");
+		assertEquals(tmp.execConstruct(construct, new Bindings().uri("s", "urn:something")).size(), 1);
+	}
+
+	/**
+	 * Test method for {@link org.springframework.data.rdf.sparql.SparqlTemplate#setMetricsSink(org.springframework.data.rdf.metrics.MetricsSink)}.
+	 */
+	@Test
+	public void testMetricsSink() {
+		SimpleMetricsSink sink = new SimpleMetricsSink();
+		tmp.setMetricsSink(sink);
+		
+		tmp.execSelectString("SELECT ?z WHERE { <urn:something> ?y ?z }");
+		tmp.execSelectString("SELECT ?z WHERE { <urn:something2> ?y ?z }");
+		tmp.execSelectGenericMap("SELECT ?x ?y ?z WHERE { ?x ?y ?z }");
+		SolutionIterator<Map<String, Object>> it = tmp.execSelectRowIterator("SELECT ?x WHERE { ?x ?y ?z }", tmp.new genericMapSolutionMapper());
+		it.next();
+		it.close();
+		
+		List<QueryStatistics> top = sink.getTopQueries(10);
+		assertEquals(top.size(), 3);
+		assertEquals(sink.getOperationStatistics("execSelectString").getCount(), 2);
+		assertEquals(sink.getOperationStatistics("execSelectGenericMap").getCount(), 1);
+		assertEquals(sink.getOperationStatistics("execSelectIterator").getCount(), 1);
+		for (QueryStatistics stats : top) {
+			if (stats.getOperation().equals("execSelectString")) {
+				assertEquals(stats.getFingerprint(), "SELECT ?z WHERE { <?> ?y ?z }");
+				assertEquals(stats.getCount(), 2);
+				assertEquals(stats.getRows(), 2);
+			} else if (stats.getOperation().equals("execSelectGenericMap")) {
+				assertEquals(stats.getRows(), 2);
+			} else {
+				assertEquals(stats.getRows(), 1);
+			}
+		}
+		
+		assertEquals(QueryFingerprint.of("SELECT * { ?s <urn:p> 'a' ; ex:q \"b\\\"c\"@en FILTER(?n < 10.5) } # comment\n LIMIT 10"),
+				"SELECT * { ?s <?> '?' ; ex:q '?'@en FILTER(?n < ?) } LIMIT ?");
+	}
+
+	@Test
+	public void testQueryTimeout() {
+		for (int i = 0; i < 300; i++) {
+			m.createResource("urn:s" + i).addProperty(m.createProperty("urn:p"), "v" + i);
+		}
+		// cross product of three patterns, far more rows than can be read in the timeout
+		String sparql = "SELECT * WHERE { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }";
+		try {
+			tmp.withTimeout(100, TimeUnit.MILLISECONDS).execSelectString(sparql);
+			fail("expected timeout");
+		} catch (SparqlQueryTimeoutException e) {
+			// expected
+		}
+		assertEquals(-1, tmp.getQueryTimeout());
+		assertEquals("testval", tmp.withTimeout(10, TimeUnit.SECONDS).execSelectString("SELECT ?z WHERE { ?x <urn:test> ?z }"));
+		
+		// the copy keeps a stricter first result timeout
+		tmp.setFirstResultTimeout(50);
+		SparqlTemplate copy = tmp.withTimeout(10, TimeUnit.SECONDS);
+		assertEquals(50, copy.getFirstResultTimeout());
+		assertEquals(10000, copy.getQueryTimeout());
+		try {
+			// the count is only known once every row has been evaluated
+			copy.execSelectString("SELECT (COUNT(*) AS ?n) WHERE { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }");
+			fail("expected first result timeout");
+		} catch (SparqlQueryTimeoutException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testQueryCancellation() throws Exception {
+		for (int i = 0; i < 300; i++) {
+			m.createResource("urn:s" + i).addProperty(m.createProperty("urn:p"), "v" + i);
+		}
+		final QueryCancellation cancellation = new QueryCancellation();
+		Thread canceller = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				cancellation.cancel();
+			}
+		};
+		canceller.start();
+		SparqlTemplate cancellable = tmp.withCancellation(cancellation);
+		try {
+			cancellable.execSelectString("SELECT * WHERE { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }");
+			fail("expected cancellation");
+		} catch (SparqlQueryCancelledException e) {
+			// expected
+		}
+		canceller.join();
+		try {
+			cancellable.execSelectString("SELECT ?z WHERE { ?x <urn:test> ?z }");
+			fail("expected cancellation");
+		} catch (SparqlQueryCancelledException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testAsyncQueries() throws Exception {
+		List<ListenableFuture<String>> futures = new ArrayList<ListenableFuture<String>>();
+		for (int i = 0; i < 8; i++) {
+			String predicate = i % 2 == 0 ? "urn:test" : "urn:test2";
+			futures.add(tmp.execSelectOneAsync("SELECT ?z WHERE { ?x <" + predicate + "> ?z }", new SolutionMapper<String>() {
+				public String mapSelect(ResultSet rs, int rowNum) {
+					return rs.nextSolution().getLiteral("z").getString();
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			assertEquals(i % 2 == 0 ? "testval" : "testval2", futures.get(i).get(10, TimeUnit.SECONDS));
+		}
+		assertEquals(2, tmp.execSelectGenericMapAsync("SELECT ?x ?y ?z WHERE { ?x ?y ?z }").get().size());
+	}
+
+	@Test
+	public void testAsyncQueryCancel() throws Exception {
+		for (int i = 0; i < 300; i++) {
+			m.createResource("urn:s" + i).addProperty(m.createProperty("urn:p"), "v" + i);
+		}
+		ListenableFuture<List<Map<String, Object>>> future =
+				tmp.execSelectGenericMapAsync("SELECT * WHERE { ?a ?b ?c . ?d ?e ?f . ?g ?h ?i }");
+		Thread.sleep(50);
+		assertTrue(future.cancel(true));
+		assertTrue(future.isCancelled());
+		// the aborted query releases its read lock
+		m.enterCriticalSection(Lock.WRITE);
+		m.leaveCriticalSection();
+	}
+
+	@Test
+	public void testRemoteEndpoint() throws Exception {
+		EmbeddedSparqlEndpoint server = new EmbeddedSparqlEndpoint(m);
+		SparqlEndpoint endpoint = new SparqlEndpoint(server.getUrl());
+		SparqlTemplate remote = new SparqlTemplate();
+		remote.setEndpoint(endpoint);
+		try {
+			for (int i = 0; i < 10; i++) {
+				assertEquals(2, remote.execSelectGenericMap("SELECT ?x ?y ?z WHERE { ?x ?y ?z }").size());
+			}
+			// keep-alive connections are reused from the pool
+			assertEquals(1, server.clientPorts.size());
+
+			assertEquals("testval", remote.execSelectString("SELECT ?z WHERE { ?x <urn:test> ?z }"));
+			PreparedQuery query = remote.prepare("SELECT ?z WHERE { ?x ?p ?z }");
+			assertEquals("testval2", remote.execSelectOne(query, new Bindings().uri("p", "urn:test2"), new SolutionMapper<String>() {
+				public String mapSelect(ResultSet rs, int rowNum) {
+					return rs.nextSolution().getLiteral("z").getString();
+				}
+			}));
+			assertEquals(2, remote.execConstruct("CONSTRUCT { ?x ?y ?z } WHERE { ?x ?y ?z }").size());
+			Model target = ModelFactory.createDefaultModel();
+			assertEquals(2, remote.execConstruct("CONSTRUCT { ?x ?y ?z } WHERE { ?x ?y ?z }", target));
+			assertEquals(2, target.size());
+			
+			// bindings of projected variables are sent as VALUES, not substituted into the projection
+			PreparedQuery projected = remote.prepare("SELECT ?x ?z WHERE { ?x <urn:test> ?z }");
+			assertEquals("testval", remote.execSelectOne(projected, new Bindings().uri("x", "urn:something"), new SolutionMapper<String>() {
+				public String mapSelect(ResultSet rs, int rowNum) {
+					QuerySolution solution = rs.nextSolution();
+					assertEquals("urn:something", solution.getResource("x").getURI());
+					return solution.getLiteral("z").getString();
+				}
+			}));
+			
+			// CONSTRUCT triples are parsed as the iterator is advanced
+			QueryExecution qe = endpoint.createQueryExecution(QueryFactory.create("CONSTRUCT { ?x ?y ?z } WHERE { ?x ?y ?z }"));
+			qe.setInitialBinding(new Bindings().uri("y", "urn:test2"));
+			try {
+				Iterator<Triple> triples = qe.execConstructTriples();
+				assertTrue(triples.hasNext());
+				assertEquals("testval2", triples.next().getObject().getLiteralLexicalForm());
+				assertFalse(triples.hasNext());
+			} finally {
+				qe.close();
+			}
+
+			endpoint.setSelectContentType("application/sparql-results+json");
+			assertEquals(2, remote.execSelectGenericMap("SELECT ?x ?y ?z WHERE { ?x ?y ?z }").size());
+		} finally {
+			endpoint.destroy();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testRemoteEndpointTimeout() throws Exception {
+		EmbeddedSparqlEndpoint server = new EmbeddedSparqlEndpoint(m);
+		server.delayMillis = 2000;
+		SparqlEndpoint endpoint = new SparqlEndpoint(server.getUrl());
+		SparqlTemplate remote = new SparqlTemplate();
+		remote.setEndpoint(endpoint);
+		try {
+			long start = System.currentTimeMillis();
+			try {
+				remote.withTimeout(200, TimeUnit.MILLISECONDS).execSelectGenericMap("SELECT ?x ?y ?z WHERE { ?x ?y ?z }");
+				fail("expected timeout");
+			} catch (SparqlQueryTimeoutException e) {
+				// expected
+			}
+			assertTrue(System.currentTimeMillis() - start < 1500);
+		} finally {
+			endpoint.destroy();
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testSolutionRowMapper() {
+		m.createResource("urn:something").addLiteral(m.createProperty("urn:count"), 42L);
+		List<String> rows = tmp.execSelectRows("SELECT ?x ?z WHERE { ?x ?y ?z } ORDER BY ?x ?z", new SolutionRowMapper<String>() {
+			public String mapRow(SolutionRow row, int rowNum) {
+				assertEquals(2, row.size());
+				assertEquals(1, row.indexOf("z"));
+				return row.getURI(0) + "|" + row.getLexicalForm(1);
+			}
+		});
+		assertEquals(3, rows.size());
+		assertEquals("urn:something|42", rows.get(0));
+		assertEquals("urn:something2|testval2", rows.get(2));
+
+		Object value = tmp.execSelectOneRow("SELECT ?v WHERE { ?x <urn:count> ?v }", new SolutionRowMapper<Object>() {
+			public Object mapRow(SolutionRow row, int rowNum) {
+				return row.getValue(0);
+			}
+		});
+		assertEquals(42L, ((Number) value).longValue());
+
+		SolutionIterator<String> it = tmp.execSelectRowIterator("SELECT ?x ?unbound WHERE { ?x <urn:test> ?z }", new SolutionRowMapper<String>() {
+			public String mapRow(SolutionRow row, int rowNum) {
+				assertFalse(row.isBound(1));
+				return row.get(0).getURI();
+			}
+		});
+		assertEquals("urn:something", it.next());
+		assertFalse(it.hasNext());
+
+		Map<String, Object> map = tmp.execSelectSingleGenericMap("SELECT ?x ?z ?unbound WHERE { ?x <urn:test> ?z }");
+		assertEquals(2, map.size());
+		assertEquals("urn:something", map.get("x"));
+		assertEquals("testval", map.get("z"));
+	}
+
+	@Test
+	public void testSolutionTable() {
+		for (int i = 0; i < 40; i++) {
+			Resource r = m.createResource("urn:row" + i);
+			r.addLiteral(m.createProperty("urn:count"), i == 39 ? 5000000000L : i);
+			r.addLiteral(m.createProperty("urn:score"), i / 4.0);
+			r.addProperty(m.createProperty("urn:at"), "2014-01-01T10:11:" + (10 + i) + "Z", XSDDatatype.XSDdateTime);
+			if (i % 2 == 0) {
+				r.addProperty(m.createProperty("urn:mixed"), "even");
+			} else {
+				r.addProperty(m.createProperty("urn:mixed"), "" + i, XSDDatatype.XSDint);
+			}
+		}
+		String sparql = "SELECT ?s ?c ?d ?at ?mixed ?unbound WHERE { ?s <urn:count> ?c ; <urn:score> ?d ; <urn:at> ?at ; <urn:mixed> ?mixed } ORDER BY ?c";
+		List<Map<String, Object>> expected = tmp.execSelectGenericMap(sparql);
+		SolutionTable table = tmp.execSelectTable(sparql);
+
+		assertEquals(40, table.size());
+		assertEquals(6, table.getColumnCount());
+		assertEquals(2, table.indexOf("d"));
+		// the same values as execSelectGenericMap, including unbound variables being absent
+		assertEquals(expected, table);
+		assertEquals(expected.get(3).hashCode(), table.get(3).hashCode());
+		assertFalse(table.get(0).containsKey("unbound"));
+		assertFalse(table.isBound(0, 5));
+
+		assertEquals(5000000000L, table.getLong(39, 1));
+		assertEquals(Long.valueOf(5000000000L), table.getValue(39, "c"));
+		assertEquals(Integer.valueOf(7), table.getValue(7, "c"));
+		assertEquals(1.75, table.getDouble(7, 2), 0);
+		assertEquals(Integer.valueOf(3), table.getValue(3, "mixed"));
+		assertEquals("even", table.getValue(4, "mixed"));
+		assertEquals("urn:row0", table.getValue(0, "s"));
+		assertEquals(1388571070000L + 7000, table.getDate(7, 3).getTime());
+
+		try {
+			table.get(0).put("s", "x");
+			fail("rows must be read-only");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParallelSelect() {
+		for (int i = 0; i < 500; i++) {
+			m.createResource("urn:s" + i).addLiteral(m.createProperty("urn:n"), i % 97).addProperty(m.createProperty("urn:p"), "v" + i);
+		}
+		tmp.setForkJoinPool(new ForkJoinPool(4));
+		SolutionMapper<String> mapper = new SolutionMapper<String>() {
+			public String mapSelect(ResultSet rs, int rowNum) {
+				QuerySolution sln = rs.next();
+				return sln.getResource("s").getURI() + "|" + sln.getLiteral("n").getInt();
+			}
+		};
+
+		String scan = "SELECT ?s ?n WHERE { ?s <urn:n> ?n }";
+		List<String> expected = tmp.execSelectList(scan, mapper);
+		List<String> parallel = tmp.execSelectListParallel(scan, "s", mapper);
+		assertEquals(500, parallel.size());
+		assertEquals(new HashSet<String>(expected), new HashSet<String>(parallel));
+		// the pattern's solutions are dealt into one VALUES block per partition
+		PartitionedSelect<String> select = new PartitionedSelect<String>(tmp, QueryFactory.create(scan), null, "s", 4);
+		int dealt = 0;
+		for (List<Binding> bucket : select.split(select.splitPattern())) {
+			dealt += bucket.size();
+		}
+		assertEquals(500, dealt);
+		// a pattern after an OPTIONAL is not moved ahead of it
+		String optional = "SELECT ?s ?n WHERE { ?x <urn:n> ?n OPTIONAL { ?x <urn:p> ?o } ?s <urn:n> ?n FILTER(?x = ?s) }";
+		assertNull(new PartitionedSelect<String>(tmp, QueryFactory.create(optional), null, "s", 4).splitPattern());
+		assertEquals(500, tmp.execSelectListParallel(optional, "s", mapper).size());
+		// with bindings the values are read by a query
+		QuerySolutionMap n5 = new QuerySolutionMap();
+		n5.add("n", m.createTypedLiteral(5));
+		assertEquals(6, tmp.execSelectRowsParallel(tmp.prepare(scan), n5, "s", new SolutionRowMapper<String>() {
+			public String mapRow(SolutionRow row, int rowNum) {
+				return row.getURI(0);
+			}
+		}).size());
+		// the model matches "1" and "01" by value, each solution must still be evaluated once
+		for (int i = 0; i < 20; i++) {
+			m.createResource("urn:s" + i).addProperty(m.createProperty("urn:v"),
+					m.createTypedLiteral(i % 2 == 0 ? "1" : "01", XSDDatatype.XSDint));
+		}
+		assertEquals(20, tmp.execSelectListParallel("SELECT ?s ?n WHERE { ?s <urn:v> ?v ; <urn:n> ?n }", "v", mapper).size());
+
+		// ordered merge, with OFFSET and LIMIT applied to the merged result
+		String ordered = "SELECT ?s ?n WHERE { ?s <urn:n> ?n } ORDER BY DESC(?n) ?s OFFSET 10 LIMIT 120";
+		assertEquals(tmp.execSelectList(ordered, mapper), tmp.execSelectListParallel(ordered, "?s", mapper));
+
+		List<String> rows = tmp.execSelectRowsParallel("SELECT ?s ?o WHERE { ?s <urn:p> ?o } ORDER BY ?o", "s", new SolutionRowMapper<String>() {
+			public String mapRow(SolutionRow row, int rowNum) {
+				return row.getLexicalForm(1);
+			}
+		});
+		assertEquals(500, rows.size());
+		assertEquals("v0", rows.get(0));
+		assertEquals("v99", rows.get(499));
+
+		String grouped = "SELECT ?n (COUNT(?s) AS ?c) WHERE { ?s <urn:n> ?n } GROUP BY ?n ORDER BY ?n";
+		assertEquals(97, tmp.execSelectRowsParallel(grouped, "n", new SolutionRowMapper<Object>() {
+			public Object mapRow(SolutionRow row, int rowNum) {
+				return row.getValue(1);
+			}
+		}).size());
+		try {
+			tmp.execSelectListParallel("SELECT (COUNT(?s) AS ?c) WHERE { ?s <urn:n> ?n }", "s", mapper);
+			fail("aggregates not grouped by the partition variable cannot be partitioned");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testResultCache() {
+		ResultCache cache = new ResultCache(new ModelVersionTracker(m), 10, 12, -1, TimeUnit.SECONDS);
+		tmp.setResultCache(cache);
+		String sparql = "SELECT ?x ?z WHERE { ?x ?y ?z }";
+		List<Map<String, Object>> first = tmp.execSelectGenericMap(sparql);
+		assertEquals(2, first.size());
+		assertSame(first, tmp.execSelectGenericMap(sparql));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(4, cache.getWeight());
+
+		// a write through the Jena API invalidates
+		m.createResource("urn:something3").addProperty(m.createProperty("urn:test"), "testval3");
+		List<Map<String, Object>> second = tmp.execSelectGenericMap(sparql);
+		assertNotSame(first, second);
+		assertEquals(3, second.size());
+		assertEquals(1, cache.getInvalidationCount());
+
+		PreparedQuery query = tmp.prepare("SELECT ?z WHERE { ?x <urn:test> ?z }");
+		QuerySolutionMap bindings = new QuerySolutionMap();
+		bindings.add("x", m.createResource("urn:something"));
+		assertEquals("testval", tmp.execSelectTable(query, bindings).getValue(0, "z"));
+		bindings.add("x", m.createResource("urn:something3"));
+		assertEquals("testval3", tmp.execSelectTable(query, bindings).getValue(0, "z"));
+		assertEquals(3, cache.size());
+
+		Model constructed = tmp.execConstruct("CONSTRUCT { ?x <urn:test> ?z } WHERE { ?x <urn:test> ?z }");
+		assertEquals(2, constructed.size());
+		assertEquals(constructed.getGraph().size(), tmp.execConstruct("CONSTRUCT { ?x <urn:test> ?z } WHERE { ?x <urn:test> ?z }").getGraph().size());
+		try {
+			constructed.add(m.createResource("urn:x"), m.createProperty("urn:y"), "z");
+			fail("cached results must be read-only");
+		} catch (AddDeniedException e) {
+			// expected
+		}
+		// its 6 terms pushed the cache past its maximum weight of 12, evicting the 6 of the second SELECT
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(8, cache.getWeight());
+
+		// 5 triples are too heavy to be cached at all
+		m.createResource("urn:something4").addProperty(m.createProperty("urn:test"), "testval4");
+		m.createResource("urn:something5").addProperty(m.createProperty("urn:test"), "testval5");
+		assertEquals(5, tmp.execConstruct("CONSTRUCT { ?x ?y ?z } WHERE { ?x ?y ?z }").size());
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testFetch() {
+		Model data = ModelFactory.createDefaultModel();
+		List<String> subjects = new ArrayList<String>();
+		for (int i = 0; i < 10; i++) {
+			Resource r = data.createResource("urn:s" + i);
+			r.addProperty(data.createProperty("urn:p1"), "a" + i);
+			r.addLiteral(data.createProperty("urn:p2"), i);
+			r.addProperty(data.createProperty("urn:p3"), "ignored");
+			subjects.add(r.getURI());
+		}
+		data.createResource("urn:s3").addProperty(data.createProperty("urn:p1"), "b3");
+		subjects.add("urn:missing");
+		subjects.add("urn:s0");
+		List<String> properties = new ArrayList<String>();
+		properties.add("urn:p1");
+		properties.add("urn:p2");
+		
+		SimpleMetricsSink sink = new SimpleMetricsSink();
+		SparqlTemplate local = new SparqlTemplate(data);
+		SparqlTemplate queried = new SparqlTemplate();
+		queried.setDataset(DatasetFactory.create(data));
+		queried.setMetricsSink(sink);
+		for (ResourceTable table : new ResourceTable[] { local.execFetch(subjects, properties),
+				queried.execFetch(subjects, properties, 4) }) {
+			assertEquals(11, table.size());
+			assertEquals(21, table.getValueCount());
+			assertEquals(properties, table.getProperties());
+			assertEquals("a5", table.getNode("urn:s5", "urn:p1").getLiteralLexicalForm());
+			assertEquals(5, table.getValue("urn:s5", "urn:p2"));
+			assertEquals(2, table.getNodes("urn:s3", "urn:p1").size());
+			assertNull(table.getNode("urn:s5", "urn:p3"));
+			assertFalse(table.contains("urn:missing"));
+			assertTrue(table.getValues("urn:missing").isEmpty());
+			assertEquals(2, table.getValues("urn:s0").size());
+		}
+		assertEquals(3, sink.getOperationStatistics("execFetch").getCount());
+		
+		ResourceTable all = local.execFetch(subjects.subList(0, 2), null);
+		assertEquals(3, all.getProperties().size());
+		assertEquals(6, all.getValueCount());
+		assertEquals(3, queried.execFetch(subjects.subList(0, 1), null).getValueCount());
+		
+		// many values of one property
+		Resource many = data.createResource("urn:many");
+		for (int i = 0; i < 100; i++) {
+			many.addLiteral(data.createProperty("urn:p1"), i);
+		}
+		ResourceTable table = local.execFetch(Collections.singletonList("urn:many"), properties);
+		assertEquals(100, table.getNodes("urn:many", "urn:p1").size());
+		assertNotNull(table.getNode("urn:many", "urn:p1"));
+	}
+
+	@Test
+	public void testConstructStream() throws Exception {
+		for (int i = 0; i < 100; i++) {
+			m.createResource("urn:s" + i).addProperty(m.createProperty("urn:p"), "v" + i);
+		}
+		String construct = "PREFIX ex: <urn:x:> CONSTRUCT { ?x ex:copy ?z } WHERE { ?x <urn:p> ?z }";
+		StreamRDFCounting sink = StreamRDFLib.count();
+		assertEquals(100, tmp.execConstruct(construct, sink));
+		assertEquals(100, sink.countTriples());
+		
+		ByteArrayOutputStream nt = new ByteArrayOutputStream();
+		assertEquals(100, tmp.execConstruct(construct, nt, Lang.NTRIPLES));
+		Model parsed = ModelFactory.createDefaultModel();
+		RDFDataMgr.read(parsed, new ByteArrayInputStream(nt.toByteArray()), Lang.NTRIPLES);
+		assertEquals(100, parsed.size());
+		
+		ByteArrayOutputStream ttl = new ByteArrayOutputStream();
+		PreparedQuery query = tmp.prepare(construct);
+		assertEquals(1, tmp.execConstruct(query, new Bindings().uri("x", "urn:s7"), ttl, Lang.TURTLE));
+		assertTrue(ttl.toString("UTF-8").contains("ex:copy"));
+		try {
+			tmp.execConstruct(construct, new ByteArrayOutputStream(), Lang.RDFXML);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		
+		Model target = ModelFactory.createDefaultModel();
+		target.createResource("urn:kept").addProperty(target.createProperty("urn:p"), "kept");
+		assertEquals(100, tmp.execConstruct(construct, target));
+		assertEquals(101, target.size());
+		assertEquals(1, tmp.execConstruct("DESCRIBE <urn:s3>", target));
+		assertEquals(102, target.size());
+		try {
+			tmp.execConstruct(construct, m);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			tmp.execConstruct(construct, ModelFactory.createModelForGraph(m.getGraph()));
+			fail("another model over the queried graph");
+		} catch (IllegalArgumentException e) {
+		}
+		// the read lock is released after streaming
+		m.enterCriticalSection(Lock.WRITE);
+		m.leaveCriticalSection();
+	}
+
+	@Test(timeout = 30000)
+	public void testConstructIntoEachOther() throws Exception {
+		final Model other = ModelFactory.createDefaultModel();
+		for (int i = 0; i < 100; i++) {
+			m.createResource("urn:s" + i).addProperty(m.createProperty("urn:p"), "v" + i);
+			other.createResource("urn:t" + i).addProperty(other.createProperty("urn:p"), "w" + i);
+		}
+		final SparqlTemplate otherTemplate = new SparqlTemplate();
+		otherTemplate.setModel(other);
+		final String construct = "CONSTRUCT { ?x <urn:copy> ?z } WHERE { ?x <urn:p> ?z }";
+		// opposite directions at once, the locks are taken in the same order by both
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				for (int i = 0; i < 200; i++) {
+					otherTemplate.execConstruct(construct, m);
+				}
+			}
+		});
+		thread.start();
+		for (int i = 0; i < 200; i++) {
+			tmp.execConstruct(construct, other);
+		}
+		thread.join();
+		assertTrue(other.contains(m.createResource("urn:s0"), m.createProperty("urn:copy")));
+		assertTrue(m.contains(other.createResource("urn:t0"), other.createProperty("urn:copy")));
+	}
+
+	@Test
+	public void testSelectWrite() throws Exception {
+		Resource r = m.createResource("urn:write");
+		r.addProperty(m.createProperty("urn:w"), "quote \" comma, tab\t line\n snow \u2603 \uD83D\uDE00");
+		r.addProperty(m.createProperty("urn:w"), "hallo", "de");
+		r.addLiteral(m.createProperty("urn:w"), 42L);
+		r.addProperty(m.createProperty("urn:w"), m.createResource());
+		String sparql = "SELECT ?o ?missing WHERE { <urn:write> <urn:w> ?o OPTIONAL { ?o <urn:none> ?missing } } ORDER BY ?o";
+		List<Map<String, Object>> expected = toMaps(QueryExecutionFactory.create(sparql, m).execSelect());
+		assertEquals(4, expected.size());
+		
+		ByteArrayOutputStream json = new ByteArrayOutputStream();
+		assertEquals(4, tmp.execSelect(sparql, json, ResultFormat.JSON));
+		ResultSet parsed = ResultSetFactory.fromJSON(new ByteArrayInputStream(json.toByteArray()));
+		assertEquals(expected, toMaps(parsed));
+		
+		ByteArrayOutputStream tsv = new ByteArrayOutputStream();
+		assertEquals(4, tmp.execSelect(tmp.prepare(sparql), null, Channels.newChannel(tsv), ResultFormat.TSV));
+		parsed = ResultSetFactory.fromTSV(new ByteArrayInputStream(tsv.toByteArray()));
+		assertEquals(expected, toMaps(parsed));
+		
+		ByteArrayOutputStream csv = new ByteArrayOutputStream();
+		assertEquals(4, tmp.execSelect(sparql, csv, ResultFormat.CSV));
+		String text = csv.toString("UTF-8");
+		assertTrue(text.startsWith("o,missing\r\n"));
+		assertTrue(text.contains("\"quote \"\" comma, tab\t line\n snow \u2603 \uD83D\uDE00\","));
+		assertTrue(text.contains("\r\nhallo,\r\n"));
+		assertEquals("text/csv", ResultFormat.CSV.getContentType());
+	}
+
+	@Test
+	public void testSelectPage() {
+		for (int i = 0; i < 25; i++) {
+			m.createResource("urn:page" + i).addLiteral(m.createProperty("urn:rank"), (long) (i % 4));
+		}
+		SolutionRowMapper<String> mapper = new SolutionRowMapper<String>() {
+			public String mapRow(SolutionRow row, int rowNum) {
+				return rowNum + " " + row.getURI(0);
+			}
+		};
+		// keys repeat across pages, ties are skipped by count
+		String sparql = "SELECT ?s ?rank WHERE { ?s <urn:rank> ?rank } ORDER BY ?rank";
+		assertTrue(new PagedSelect(QueryFactory.create(sparql), sparql, null, true).isKeyset());
+		assertEquals(tmp.execSelectRows(sparql, mapper), pages(sparql, 3, mapper));
+		
+		sparql = "SELECT ?s ?rank WHERE { ?s <urn:rank> ?rank } ORDER BY DESC(?rank) ?s";
+		assertEquals(tmp.execSelectRows(sparql, mapper), pages(sparql, 4, mapper));
+		
+		// the LIMIT and OFFSET bound the whole paged result
+		sparql = "SELECT ?s ?rank WHERE { ?s <urn:rank> ?rank } ORDER BY ?rank ?s LIMIT 10 OFFSET 2";
+		List<String> all = tmp.execSelectRows(sparql, mapper);
+		assertEquals(10, all.size());
+		assertEquals(all, pages(sparql, 3, mapper));
+		assertEquals(all, pages(sparql, 10, mapper));
+		
+		sparql = "SELECT ?s WHERE { ?s <urn:rank> ?rank }";
+		assertFalse(new PagedSelect(QueryFactory.create(sparql), sparql, null, true).isKeyset());
+		assertEquals(tmp.execSelectRows(sparql, mapper), pages(sparql, 7, mapper));
+		
+		PreparedQuery prepared = tmp.prepare("SELECT ?s ?rank WHERE { ?s <urn:rank> ?rank } ORDER BY ?s");
+		QuerySolutionMap bindings = new QuerySolutionMap();
+		bindings.add("rank", m.createTypedLiteral(2L));
+		Page<String> page = tmp.execSelectPage(prepared, bindings, 5, null, mapper);
+		assertEquals(5, page.size());
+		page = tmp.execSelectPage(prepared, bindings, 5, page.getContinuation(), mapper);
+		assertEquals(1, page.size());
+		assertEquals("5 urn:page6", page.getContent().get(0));
+		assertFalse(page.hasNext());
+		assertNull(page.getContinuation());
+		
+		String token = tmp.execSelectPage(sparql, 5, null, mapper).getContinuation();
+		try {
+			tmp.execSelectPage("SELECT ?s WHERE { ?s ?p ?o }", 5, token, mapper);
+			fail("continuation of another query");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			tmp.execSelectPage(sparql, 5, "not a token", mapper);
+			fail("malformed continuation");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			tmp.execSelectPage("CONSTRUCT WHERE { ?s ?p ?o }", 5, null, mapper);
+			fail("not a SELECT");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	private List<String> pages(String sparql, int pageSize, SolutionRowMapper<String> mapper) {
+		List<String> rows = new ArrayList<String>();
+		String continuation = null;
+		do {
+			Page<String> page = tmp.execSelectPage(sparql, pageSize, continuation, mapper);
+			assertTrue(page.size() <= pageSize);
+			rows.addAll(page.getContent());
+			continuation = page.getContinuation();
+		} while (continuation != null);
+		return rows;
+	}
+
+	private static List<Map<String, Object>> toMaps(ResultSet rs) {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		while (rs.hasNext()) {
+			QuerySolution sol = rs.nextSolution();
+			Map<String, Object> row = new HashMap<String, Object>();
+			for (String var : rs.getResultVars()) {
+				RDFNode n = sol.get(var);
+				// blank node labels are not kept by the readers
+				row.put(var, n == null ? null : n.isAnon() ? "bnode" : n.asNode().toString());
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
 }
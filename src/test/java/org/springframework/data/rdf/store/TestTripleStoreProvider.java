@@ -0,0 +1,98 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.store;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.rdf.jena.JenaTemplate;
+import org.springframework.data.rdf.sparql.SparqlTemplate;
+
+
+/**
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class TestTripleStoreProvider {
+
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception {
+		dir = File.createTempFile("tdb", "");
+		dir.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File f : files) {
+				f.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testInMemory() {
+		InMemoryTripleStoreProvider provider = new InMemoryTripleStoreProvider();
+		provider.setInitialData(new ClassPathResource("org/springframework/data/rdf/jena/test.ttl"));
+		provider.afterPropertiesSet();
+		assertFalse(provider.isPersistent());
+		SparqlTemplate sparqlTemplate = new SparqlTemplate();
+		sparqlTemplate.setTripleStoreProvider(provider);
+		assertTrue(sparqlTemplate.execSelectGenericMap("SELECT * WHERE { ?s ?p ?o }").size() > 0);
+		provider.destroy();
+	}
+
+	@Test
+	public void testTdbPersistence() {
+		TdbTripleStoreProvider provider = new TdbTripleStoreProvider(dir.getAbsolutePath());
+		provider.setInitialData(new ClassPathResource("org/springframework/data/rdf/jena/test.ttl"));
+		provider.afterPropertiesSet();
+		JenaTemplate template = new JenaTemplate();
+		template.setTripleStoreProvider(provider);
+		int loaded = count(provider);
+		assertTrue(loaded > 0);
+		template.add("urn:added", "urn:p", "v");
+		provider.destroy();
+
+		// reopened, the data is still there and the initial data is not imported again
+		TdbTripleStoreProvider reopened = new TdbTripleStoreProvider(dir.getAbsolutePath());
+		reopened.setInitialData(new ClassPathResource("org/springframework/data/rdf/jena/test.ttl"));
+		reopened.afterPropertiesSet();
+		assertTrue(reopened.isPersistent());
+		assertEquals(loaded + 1, count(reopened));
+		JenaTemplate template2 = new JenaTemplate();
+		template2.setTripleStoreProvider(reopened);
+		assertTrue(template2.exists("urn:added", "urn:p", "v"));
+		reopened.destroy();
+	}
+
+	private static int count(TripleStoreProvider provider) {
+		SparqlTemplate sparqlTemplate = new SparqlTemplate();
+		sparqlTemplate.setTripleStoreProvider(provider);
+		return sparqlTemplate.execSelectGenericMap("SELECT * WHERE { ?s ?p ?o }").size();
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+* Copyright (c) 2011 by Al Baker, Michael Soren
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package org.springframework.data.rdf.transaction;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.rdf.jena.BatchWriter;
+import org.springframework.data.rdf.jena.ChangeFeed;
+import org.springframework.data.rdf.jena.JenaTemplate;
+import org.springframework.data.rdf.sparql.SparqlTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.hp.hpl.jena.query.Dataset;
+import com.hp.hpl.jena.tdb.TDBFactory;
+
+
+/**
+ * @author Al Baker
+ * @author Michael Soren
+ *
+ */
+public class TestJenaTransactionManager {
+
+	private static final String COUNT = "SELECT (COUNT(*) AS ?c) WHERE { ?s ?p ?o }";
+
+	private Dataset dataset;
+	private JenaTemplate jenaTemplate;
+	private SparqlTemplate sparqlTemplate;
+	private TransactionTemplate tx;
+	private TransactionTemplate readTx;
+
+	@Before
+	public void setUp() {
+		dataset = TDBFactory.createDataset();
+		jenaTemplate = new JenaTemplate();
+		jenaTemplate.setDataset(dataset);
+		sparqlTemplate = new SparqlTemplate();
+		sparqlTemplate.setDataset(dataset);
+		JenaTransactionManager transactionManager = new JenaTransactionManager(dataset);
+		tx = new TransactionTemplate(transactionManager);
+		readTx = new TransactionTemplate(transactionManager);
+		readTx.setReadOnly(true);
+	}
+
+	@After
+	public void tearDown() {
+		dataset.close();
+	}
+
+	private int count() {
+		return Integer.parseInt(sparqlTemplate.execSelectString(COUNT).replaceAll("\\^\\^.*", ""));
+	}
+
+	@Test
+	public void testCommit() {
+		tx.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				for (int i = 0; i < 10; i++) {
+					jenaTemplate.add("urn:s" + i, "urn:p", "v" + i);
+				}
+				// reads inside the transaction see its own writes
+				assertEquals(10, count());
+				jenaTemplate.setSingleton("urn:s0", "urn:p", "changed");
+			}
+		});
+		assertFalse(dataset.isInTransaction());
+		assertEquals(10, count());
+		assertTrue(jenaTemplate.exists("urn:s0", "urn:p", "changed"));
+	}
+
+	@Test
+	public void testRollback() throws Exception {
+		ChangeFeed feed = new ChangeFeed();
+		jenaTemplate.setChangeFeed(feed);
+		jenaTemplate.add("urn:kept", "urn:p", "v");
+		try {
+			tx.execute(new TransactionCallbackWithoutResult() {
+				protected void doInTransactionWithoutResult(TransactionStatus status) {
+					jenaTemplate.add("urn:s", "urn:p", "v");
+					jenaTemplate.removeResource("urn:kept");
+					throw new IllegalStateException("rollback");
+				}
+			});
+			fail("expected exception");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, count());
+		assertTrue(jenaTemplate.exists("urn:kept"));
+
+		tx.execute(new TransactionCallbackWithoutResult() {
+			protected void doInTransactionWithoutResult(TransactionStatus status) {
+				jenaTemplate.add("urn:s", "urn:p", "v");
+				status.setRollbackOnly();
+			}
+		});
+		assertEquals(1, count());
+		// changes of rolled back transactions are never published
+		feed.close();
+		assertEquals(1, feed.getSequence());
+	}
+
+	@Test
+	public void testReadOnly() {
+		BatchWriter writer = jenaTemplate.batchWriter(3);
+		for (int i = 0; i < 10; i++) {
+			writer.add("urn:s" + i, "urn:p", "v" + i);
+		}
+		writer.close();
+		int count = readTx.execute(new TransactionCallback<Integer>() {
+			public Integer doInTransaction(TransactionStatus status) {
+				assertTrue(jenaTemplate.exists("urn:s9"));
+				return count();
+			}
+		});
+		assertEquals(10, count);
+	}
+
+}